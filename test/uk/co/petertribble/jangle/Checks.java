@@ -0,0 +1,93 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+/**
+ * The checks made by the tests, which are run by "./build test". Each
+ * test is a class with a main method, in the same package as the code it
+ * tests so that it can see package-private classes, that makes its checks
+ * and then calls done(), which exits with a non-zero status if any of them
+ * failed.
+ *
+ * @author Peter Tribble
+ */
+final class Checks {
+
+    private static int passed;
+    private static int failed;
+
+    private Checks() {
+    }
+
+    /*
+     * Check that a condition holds.
+     */
+    static void check(final String what, final boolean ok) {
+	if (ok) {
+	    passed++;
+	} else {
+	    failed++;
+	    System.out.println("FAIL: " + what);
+	}
+    }
+
+    /*
+     * Check that a value is as expected, comparing with equals().
+     */
+    static void equal(final String what, final Object expected,
+		      final Object actual) {
+	check(what + ": expected " + expected + ", got " + actual,
+	      expected == null ? actual == null : expected.equals(actual));
+    }
+
+    /*
+     * Check that some code throws an SnmpException.
+     */
+    static void fails(final String what, final Failing code) {
+	try {
+	    code.run();
+	    check(what + ": no SnmpException", false);
+	} catch (SnmpException sne) {
+	    passed++;
+	} catch (RuntimeException re) {
+	    check(what + ": threw " + re, false);
+	}
+    }
+
+    /*
+     * Code that's expected to throw an SnmpException.
+     */
+    interface Failing {
+	void run() throws SnmpException;
+    }
+
+    /*
+     * Report the results, and exit with a non-zero status if any check
+     * failed.
+     */
+    static void done(final String name) {
+	System.out.println(name + ": " + passed + " passed, " + failed
+			+ " failed");
+	if (failed > 0) {
+	    System.exit(1);
+	}
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import snmp.SNMPCounter64;
+
+/**
+ * Tests of the BER encoding and decoding in SnmpMessage. The expected
+ * encodings are built independently here, and responses are built the
+ * same way, as we never encode a response ourselves.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpMessageTest {
+
+    private static final SnmpOid SYSDESCR = oidOf("1.3.6.1.2.1.1.1.0");
+
+    private SnmpMessageTest() {
+    }
+
+    public static void main(final String[] args) throws SnmpException {
+	testLengths();
+	testRequestIDs();
+	testGetBulk();
+	testIntegers();
+	testUnsigned();
+	testVarbinds();
+	testMalformed();
+	Checks.done("SnmpMessageTest");
+    }
+
+    /*
+     * A length below 128 takes one byte, and a longer one takes an extra
+     * byte for each byte of the length, so check either side of 128 and
+     * 256, both in the requests we encode and the responses we decode.
+     */
+    private static void testLengths() throws SnmpException {
+	for (int n : new int[] {0, 1, 126, 127, 128, 129, 255, 256, 1000}) {
+	    byte[] comm = new byte[n];
+	    Arrays.fill(comm, (byte) 'c');
+	    String community = new String(comm, StandardCharsets.UTF_8);
+	    ByteBuffer buf = SnmpMessage.get(null, 1, community, 42,
+				Collections.singletonList(SYSDESCR));
+	    Checks.equal("request size, community " + n, buf.capacity(),
+			buf.position());
+	    byte[] expected = request(0xa0, 1, comm, integer(42), integer(0),
+				integer(0), oid(SYSDESCR));
+	    Checks.check("request encoding, community " + n,
+			Arrays.equals(expected, buf.array()));
+	    buf.flip();
+	    SnmpMessage msg = decode(buf);
+	    Checks.equal("request id, community " + n, 42,
+			msg.getRequestID());
+	    Checks.equal("varbinds, community " + n, 1, msg.size());
+	    Checks.equal("oid, community " + n, SYSDESCR,
+			msg.get(0).getOID());
+
+	    // and a response with a value of that length
+	    byte[] value = new byte[n];
+	    Arrays.fill(value, (byte) n);
+	    msg = decode(response(7, 0, 0,
+			varbind(oid(SYSDESCR), 0x04, value)));
+	    Checks.equal("varbinds, value " + n, 1, msg.size());
+	    Checks.check("value " + n, Arrays.equals(value,
+			(byte[]) msg.get(0).getValue().getValue()));
+	}
+    }
+
+    /*
+     * Request ids are encoded in the fewest bytes that hold them in two's
+     * complement, so check each side of the boundaries.
+     */
+    private static void testRequestIDs() throws SnmpException {
+	int[] ids = {0, 1, 127, 128, 255, 256, 32767, 32768, 8388607,
+		     8388608, Integer.MAX_VALUE, -1, -128, -129, -32768,
+		     -32769, Integer.MIN_VALUE};
+	for (int id : ids) {
+	    ByteBuffer buf = SnmpMessage.getNext(null, 0, "public", id,
+						SYSDESCR);
+	    byte[] expected = request(0xa1, 0, bytes("public"), integer(id),
+				integer(0), integer(0), oid(SYSDESCR));
+	    Checks.check("encoding of request id " + id,
+			Arrays.equals(expected, buf.array()));
+	    buf.flip();
+	    Checks.equal("request id", id, decode(buf).getRequestID());
+	}
+    }
+
+    private static void testGetBulk() {
+	ByteBuffer buf = SnmpMessage.getBulk(null, 1, "public", 3, 200,
+					SYSDESCR);
+	byte[] expected = request(0xa5, 1, bytes("public"), integer(3),
+				integer(0), integer(200), oid(SYSDESCR));
+	Checks.check("GETBULK encoding", Arrays.equals(expected, buf.array()));
+
+	// an oversized buffer is left positioned after the message
+	ByteBuffer big = ByteBuffer.allocate(1500);
+	SnmpMessage.getBulk(big, 1, "public", 3, 200, SYSDESCR);
+	Checks.equal("position in a reused buffer", expected.length,
+		big.position());
+    }
+
+    /*
+     * INTEGER values are signed, of any length up to 8 bytes as a long,
+     * and longer ones can only be held by the library object.
+     */
+    private static void testIntegers() throws SnmpException {
+	long[] values = {0, 1, -1, 127, 128, -128, -129, 255, 256,
+			 Integer.MAX_VALUE, Integer.MIN_VALUE,
+			 Integer.MIN_VALUE - 1L, Long.MAX_VALUE,
+			 Long.MIN_VALUE};
+	for (long v : values) {
+	    SnmpObject sno = decodeValue(0x02, integer(v));
+	    Checks.check("INTEGER " + v + " is a long", sno.isLong());
+	    Checks.equal("INTEGER", v, sno.getLong());
+	    Checks.equal("INTEGER string", Long.toString(v),
+			sno.valueString());
+	    Checks.equal("INTEGER number", BigInteger.valueOf(v),
+			sno.getNumber());
+	    Checks.equal("INTEGER value", BigInteger.valueOf(v),
+			sno.getValue().getValue());
+	}
+	Checks.equal("empty INTEGER", 0L,
+		decodeValue(0x02, new byte[0]).getLong());
+
+	BigInteger huge = BigInteger.ONE.shiftLeft(64).add(BigInteger.TEN);
+	SnmpObject sno = decodeValue(0x02, huge.toByteArray());
+	Checks.check("9 byte INTEGER isn't a long", !sno.isLong());
+	Checks.equal("9 byte INTEGER", huge, sno.getNumber());
+	huge = huge.negate();
+	Checks.equal("negative 9 byte INTEGER", huge,
+		decodeValue(0x02, huge.toByteArray()).getNumber());
+    }
+
+    /*
+     * The other integer types are unsigned, so their encoding has a
+     * leading zero byte if the top bit is set, and a Counter64 can exceed
+     * Long.MAX_VALUE, when it's held as its bit pattern.
+     */
+    private static void testUnsigned() throws SnmpException {
+	long[] values = {0, 1, 127, 128, Long.MAX_VALUE, Long.MIN_VALUE,
+			 Long.MIN_VALUE + 1, -5, -1};
+	for (long v : values) {
+	    String s = Long.toUnsignedString(v);
+	    BigInteger big = new BigInteger(s);
+	    SnmpObject sno = decodeValue(0x46, unsigned(v));
+	    Checks.equal("Counter64 " + s, v, sno.getLong());
+	    Checks.equal("Counter64 string", s, sno.valueString());
+	    Checks.equal("Counter64 number", big, sno.getNumber());
+	    Checks.equal("Counter64 double", big.doubleValue(),
+			sno.getDouble());
+	    Checks.equal("Counter64 value", big, sno.getValue().getValue());
+	    Checks.equal("Counter64 library value", big,
+		SnmpMessage.unsigned(new SNMPCounter64(), v).getValue());
+	}
+	for (int tag : new int[] {0x41, 0x42, 0x43, 0x47}) {
+	    SnmpObject sno = decodeValue(tag, unsigned(0xffffffffL));
+	    Checks.equal("32 bit maximum, tag " + tag, 0xffffffffL,
+			sno.getLong());
+	    Checks.equal("32 bit value, tag " + tag,
+			BigInteger.valueOf(0xffffffffL),
+			sno.getValue().getValue());
+	    Checks.equal("32 bit zero, tag " + tag, 0L,
+			decodeValue(tag, unsigned(0)).getLong());
+	}
+    }
+
+    /*
+     * More varbinds than the decoder starts with room for, and the
+     * comparisons made on the encoded oids.
+     */
+    private static void testVarbinds() throws SnmpException {
+	List<byte[]> vbs = new ArrayList<>();
+	SnmpOid table = oidOf("1.3.6.1.2.1.2.2.1.10");
+	for (int i = 1; i <= 40; i++) {
+	    vbs.add(varbind(oid(table.getChild(i)), 0x41, unsigned(i)));
+	}
+	SnmpMessage msg = decode(response(9, 0, 0,
+				vbs.toArray(new byte[0][])));
+	Checks.equal("number of varbinds", 40, msg.size());
+	for (int i = 0; i < 40; i++) {
+	    SnmpOid oid = table.getChild(i + 1);
+	    SnmpMessage.VarBind vb = msg.get(i);
+	    Checks.equal("varbind oid", oid, vb.getOID());
+	    Checks.equal("varbind value", i + 1L,
+			vb.toSnmpObject(0L).getLong());
+	    Checks.equal("compare with itself", 0, vb.compareOID(oid));
+	    Checks.check("compare with later",
+			vb.compareOID(table.getChild(i + 2)) < 0);
+	    Checks.check("compare with earlier",
+			vb.compareOID(table.getChild(i)) > 0);
+	    Checks.check("compare with parent", vb.compareOID(table) > 0);
+	    Checks.check("compare with child",
+			vb.compareOID(oid.getChild(0)) < 0);
+	    Checks.check("in table", vb.isInSubtree(table));
+	    Checks.check("in itself", vb.isInSubtree(oid));
+	    Checks.check("not in next column",
+			!vb.isInSubtree(table.getSibling(11)));
+	    Checks.check("not an exception", !vb.isException());
+	}
+
+	// the exceptions are recognised by their tag
+	msg = decode(response(9, 0, 0,
+			varbind(oid(SYSDESCR), 0x80, new byte[0]),
+			varbind(oid(SYSDESCR), 0x81, new byte[0]),
+			varbind(oid(SYSDESCR), 0x82, new byte[0]),
+			varbind(oid(SYSDESCR), 0x05, new byte[0])));
+	Checks.check("noSuchObject", msg.get(0).isException());
+	Checks.check("noSuchInstance", msg.get(1).isException());
+	Checks.check("endOfMibView", msg.get(2).isException());
+	Checks.check("NULL", !msg.get(3).isException());
+
+	msg = decode(response(-5, 2, 1, varbind(oid(SYSDESCR), 0x05,
+						new byte[0])));
+	Checks.equal("response request id", -5, msg.getRequestID());
+	Checks.equal("error status", 2, msg.getErrorStatus());
+	Checks.equal("error index", 1, msg.getErrorIndex());
+    }
+
+    /*
+     * Anything malformed must be reported as an SnmpException, never
+     * as a runtime exception.
+     */
+    private static void testMalformed() {
+	byte[] good = response(1, 0, 0, varbind(oid(SYSDESCR), 0x04,
+						bytes("a string")));
+	for (int n = 0; n < good.length; n++) {
+	    final byte[] b = Arrays.copyOf(good, n);
+	    Checks.fails("truncated to " + n, () -> decode(b));
+	}
+	byte[] b = good.clone();
+	b[1] = (byte) 0x80;
+	Checks.fails("indefinite length", () -> decode(b));
+	byte[] b2 = good.clone();
+	b2[1] = (byte) 0x84;
+	Checks.fails("4 byte length", () -> decode(b2));
+	byte[] b3 = good.clone();
+	b3[0] = 0x31;
+	Checks.fails("wrong tag", () -> decode(b3));
+	Checks.fails("empty oid", () -> decode(response(1, 0, 0,
+				varbind(new byte[0], 0x05, new byte[0]))));
+	Checks.fails("9 byte request id", () -> decode(tlv(0x30,
+				tlv(0x02, integer(1)),
+				tlv(0x04, bytes("public")),
+				tlv(0xa2, tlv(0x02, new byte[9]),
+				    tlv(0x02, integer(0)),
+				    tlv(0x02, integer(0)), tlv(0x30)))));
+    }
+
+    private static SnmpOid oidOf(final String s) {
+	try {
+	    return SnmpOid.valueOf(s);
+	} catch (SnmpException sne) {
+	    throw new IllegalArgumentException(s, sne);
+	}
+    }
+
+    private static byte[] bytes(final String s) {
+	return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Build a TLV, using the shortest form of the length.
+     */
+    static byte[] tlv(final int tag, final byte[]... parts) {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	int n = 0;
+	for (byte[] part : parts) {
+	    n += part.length;
+	}
+	out.write(tag);
+	if (n < 0x80) {
+	    out.write(n);
+	} else if (n < 0x100) {
+	    out.write(0x81);
+	    out.write(n);
+	} else {
+	    out.write(0x82);
+	    out.write(n >> 8);
+	    out.write(n);
+	}
+	for (byte[] part : parts) {
+	    out.write(part, 0, part.length);
+	}
+	return out.toByteArray();
+    }
+
+    /*
+     * The contents of an INTEGER, in the fewest bytes of two's complement.
+     */
+    static byte[] integer(final long value) {
+	return BigInteger.valueOf(value).toByteArray();
+    }
+
+    /*
+     * The contents of an unsigned integer type, which has a leading zero
+     * byte if the top bit would otherwise be set.
+     */
+    static byte[] unsigned(final long value) {
+	return new BigInteger(Long.toUnsignedString(value)).toByteArray();
+    }
+
+    /*
+     * The contents of an OBJECT IDENTIFIER.
+     */
+    static byte[] oid(final SnmpOid oid) {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	subid(out, 40 * oid.getArc(0) + oid.getArc(1));
+	for (int i = 2; i < oid.size(); i++) {
+	    subid(out, oid.getArc(i));
+	}
+	return out.toByteArray();
+    }
+
+    private static void subid(final ByteArrayOutputStream out,
+			      final long value) {
+	int n = 1;
+	while ((value >>> (7 * n)) != 0) {
+	    n++;
+	}
+	for (int i = n - 1; i > 0; i--) {
+	    out.write((int) (0x80 | (value >>> (7 * i))));
+	}
+	out.write((int) (value & 0x7f));
+    }
+
+    static byte[] varbind(final byte[] oid, final int tag,
+			  final byte[] value) {
+	return tlv(0x30, tlv(0x06, oid), tlv(tag, value));
+    }
+
+    /*
+     * A request for a single oid, with a NULL value.
+     */
+    private static byte[] request(final int type, final int version,
+			final byte[] community, final byte[] id,
+			final byte[] field1, final byte[] field2,
+			final byte[] oid) {
+	return tlv(0x30, tlv(0x02, integer(version)),
+		tlv(0x04, community),
+		tlv(type, tlv(0x02, id), tlv(0x02, field1),
+		    tlv(0x02, field2),
+		    tlv(0x30, tlv(0x30, tlv(0x06, oid), tlv(0x05)))));
+    }
+
+    static byte[] response(final int id, final int status,
+			   final int index, final byte[]... varbinds) {
+	return tlv(0x30, tlv(0x02, integer(1)), tlv(0x04, bytes("public")),
+		tlv(0xa2, tlv(0x02, integer(id)), tlv(0x02, integer(status)),
+		    tlv(0x02, integer(index)), tlv(0x30, varbinds)));
+    }
+
+    static SnmpMessage decode(final byte[] b) throws SnmpException {
+	return decode(ByteBuffer.wrap(b));
+    }
+
+    private static SnmpMessage decode(final ByteBuffer buf)
+	    throws SnmpException {
+	SnmpMessage msg = new SnmpMessage();
+	msg.decode(buf);
+	return msg;
+    }
+
+    /*
+     * Decode a response holding a single value, as an SnmpObject.
+     */
+    private static SnmpObject decodeValue(final int tag, final byte[] value)
+	    throws SnmpException {
+	return decode(response(1, 0, 0, varbind(oid(SYSDESCR), tag, value)))
+	    .get(0).toSnmpObject(0L);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import snmp.SNMPCounter32;
+import snmp.SNMPOctetString;
+
+/**
+ * Tests of SnmpObject.getRate, which has to tell a counter that has
+ * wrapped from one that has been reset.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpObjectTest {
+
+    private static final long MAX32 = 0xffffffffL;
+    private static final long HALF32 = MAX32 >>> 1;
+    private static SnmpOid oid;
+
+    private SnmpObjectTest() {
+    }
+
+    public static void main(final String[] args) throws SnmpException {
+	oid = SnmpOid.valueOf("1.3.6.1.2.1.2.2.1.10.1");
+	testCounter32();
+	testCounter64();
+	testGauges();
+	testInvalid();
+	Checks.done("SnmpObjectTest");
+    }
+
+    private static SnmpObject sample(final byte tag, final long value,
+				     final long time) {
+	return new SnmpObject(oid, tag, value, time);
+    }
+
+    /*
+     * The rate of change per second between two samples a second apart.
+     */
+    private static double rate(final byte tag, final long before,
+			       final long after) {
+	return sample(tag, after, 2000).getRate(sample(tag, before, 1000));
+    }
+
+    /*
+     * A Counter32 that goes backwards has wrapped, unless it would have
+     * had to advance by more than half its range, when it has been reset.
+     */
+    private static void testCounter32() {
+	for (byte tag : new byte[] {SnmpMessage.COUNTER32,
+				    SnmpMessage.TIMETICKS}) {
+	    Checks.equal("increase", 200.0, rate(tag, 100, 300));
+	    Checks.equal("no change", 0.0, rate(tag, 100, 100));
+	    Checks.equal("up to the maximum", 1.0,
+			rate(tag, MAX32 - 1, MAX32));
+	    Checks.equal("wrapped to zero", 1.0, rate(tag, MAX32, 0));
+	    Checks.equal("wrapped", 496.0, rate(tag, MAX32 - 295, 200));
+	    Checks.equal("wrapped by half the range", (double) HALF32,
+			rate(tag, HALF32 + 12, 10));
+	    Checks.check("reset, just over half the range",
+			Double.isNaN(rate(tag, HALF32 + 11, 10)));
+	    Checks.check("reset to zero",
+			Double.isNaN(rate(tag, 100, 0)));
+	    Checks.check("reset", Double.isNaN(rate(tag, 1000000, 5)));
+	}
+	// over a longer interval
+	Checks.equal("wrapped over 10 seconds", 49.6,
+		sample(SnmpMessage.COUNTER32, 200, 11000)
+		.getRate(sample(SnmpMessage.COUNTER32, MAX32 - 295, 1000)));
+
+	// the same whether or not the sample came from a library object
+	SnmpObject lib = new SnmpObject(oid, new SNMPCounter32(MAX32 - 295),
+					1000);
+	Checks.equal("wrapped from a library object", 496.0,
+		sample(SnmpMessage.COUNTER32, 200, 2000).getRate(lib));
+    }
+
+    /*
+     * A Counter64 is unsigned, so may pass Long.MAX_VALUE, and one that
+     * goes backwards has been reset, as it can't wrap in practice.
+     */
+    private static void testCounter64() {
+	byte tag = SnmpMessage.COUNTER64;
+	Checks.equal("increase", 200.0, rate(tag, 100, 300));
+	Checks.equal("past Long.MAX_VALUE", 20.0,
+		rate(tag, Long.MAX_VALUE - 9, Long.MIN_VALUE + 10));
+	Checks.equal("above Long.MAX_VALUE", 5.0,
+		rate(tag, Long.MIN_VALUE + 10, Long.MIN_VALUE + 15));
+	Checks.equal("whole range", 18446744073709551615.0, rate(tag, 0, -1));
+	Checks.check("reset from above Long.MAX_VALUE",
+		Double.isNaN(rate(tag, -10, 5)));
+	Checks.check("reset", Double.isNaN(rate(tag, 1000, 5)));
+    }
+
+    /*
+     * Gauges and integers may go down as well as up.
+     */
+    private static void testGauges() {
+	Checks.equal("gauge down", -200.0,
+		rate(SnmpMessage.GAUGE32, 500, 300));
+	Checks.equal("gauge from maximum", -(double) MAX32,
+		rate(SnmpMessage.GAUGE32, MAX32, 0));
+	Checks.equal("integer", 10.0, rate(SnmpMessage.INTEGER, -5, 5));
+	Checks.equal("integer down", -10.0, rate(SnmpMessage.INTEGER, 5, -5));
+    }
+
+    private static void testInvalid() {
+	byte tag = SnmpMessage.COUNTER32;
+	Checks.check("same time", Double.isNaN(
+		sample(tag, 10, 1000).getRate(sample(tag, 5, 1000))));
+	Checks.check("earlier time", Double.isNaN(
+		sample(tag, 10, 1000).getRate(sample(tag, 5, 2000))));
+	Checks.check("different types", Double.isNaN(
+		sample(tag, 10, 2000).getRate(
+			sample(SnmpMessage.GAUGE32, 5, 1000))));
+	SnmpObject s1 = new SnmpObject(oid, new SNMPOctetString("a"), 1000);
+	SnmpObject s2 = new SnmpObject(oid, new SNMPOctetString("b"), 2000);
+	Checks.check("not a number", Double.isNaN(s2.getRate(s1)));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import snmp.SNMPBadValueException;
+import snmp.SNMPObjectIdentifier;
+
+/**
+ * Tests of SnmpOid, particularly of arcs of 2^31 and above, which don't
+ * fit in an int as a positive number.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpOidTest {
+
+    private static final long BIG = 1L << 31;
+    private static final long MAX = (1L << 32) - 1;
+
+    private SnmpOidTest() {
+    }
+
+    public static void main(final String[] args)
+	    throws SnmpException, SNMPBadValueException {
+	testParse();
+	testLargeArcs();
+	testOrder();
+	testViews();
+	testEncoding();
+	Checks.done("SnmpOidTest");
+    }
+
+    private static void testParse() throws SnmpException {
+	SnmpOid oid = SnmpOid.valueOf("1.3.6.1.2.1.1.1.0");
+	Checks.equal("size", 9, oid.size());
+	Checks.equal("first arc", 1L, oid.getArc(0));
+	Checks.equal("instance", 0L, oid.getInstance());
+	Checks.equal("string", "1.3.6.1.2.1.1.1.0", oid.toString());
+	Checks.equal("single arc", "2", SnmpOid.valueOf("2").toString());
+	String[] bad = {"", ".", "1.", ".1", "1..3", "3.1", "1.3.a",
+			"1.3.-1", "1.3.6.1 ", "1.3.4294967296",
+			"1.3.99999999999999999999"};
+	for (String s : bad) {
+	    Checks.fails("parse \"" + s + "\"", () -> SnmpOid.valueOf(s));
+	}
+    }
+
+    private static void testLargeArcs()
+	    throws SnmpException, SNMPBadValueException {
+	String s = "1.3.6.1.4.1." + BIG + "." + MAX + ".2147483647";
+	SnmpOid oid = SnmpOid.valueOf(s);
+	Checks.equal("arc 2^31", BIG, oid.getArc(6));
+	Checks.equal("arc 2^32-1", MAX, oid.getArc(7));
+	Checks.equal("arc 2^31-1", BIG - 1, oid.getInstance());
+	Checks.equal("string of large arcs", s, oid.toString());
+	Checks.check("long array", Arrays.equals(new long[] {1, 3, 6, 1, 4, 1,
+				BIG, MAX, BIG - 1}, oid.toLongArray()));
+	Checks.equal("from long array", oid, SnmpOid.of(oid.toLongArray()));
+	Checks.equal("child 2^32-1", MAX,
+		oid.getChild(MAX).getInstance());
+	Checks.equal("sibling 2^31", BIG, oid.getSibling(BIG).getInstance());
+
+	// as the snmp library holds them
+	SNMPObjectIdentifier soid = new SNMPObjectIdentifier(
+		oid.toLongArray());
+	Checks.equal("via the library", oid,
+		new SnmpObject(soid, null, 0L).getSnmpOid());
+    }
+
+    /*
+     * Arcs are compared as unsigned, so that OIDs sort in walk order.
+     */
+    private static void testOrder() throws SnmpException {
+	SnmpOid[] oids = {
+	    SnmpOid.valueOf("1.3"),
+	    SnmpOid.valueOf("1.3.0"),
+	    SnmpOid.valueOf("1.3.6"),
+	    SnmpOid.valueOf("1.3.6.1"),
+	    SnmpOid.valueOf("1.3.2147483647"),
+	    SnmpOid.valueOf("1.3.2147483648"),
+	    SnmpOid.valueOf("1.3.2147483648.0"),
+	    SnmpOid.valueOf("1.3.4294967295"),
+	    SnmpOid.valueOf("1.4"),
+	    SnmpOid.valueOf("2.0")
+	};
+	for (int i = 0; i < oids.length; i++) {
+	    for (int j = 0; j < oids.length; j++) {
+		int c = oids[i].compareTo(oids[j]);
+		Checks.check(oids[i] + " compared with " + oids[j],
+			Integer.signum(c) == Integer.compare(i, j));
+		Checks.equal(oids[i] + " equals " + oids[j], i == j,
+			oids[i].equals(oids[j]));
+	    }
+	}
+	SnmpOid root = SnmpOid.valueOf("1.3.2147483648");
+	Checks.check("in own subtree", root.isInSubtree(root));
+	Checks.check("child in subtree", oids[6].isInSubtree(root));
+	Checks.check("parent not in subtree", !oids[0].isInSubtree(root));
+	Checks.check("sibling not in subtree", !oids[7].isInSubtree(root));
+    }
+
+    /*
+     * Parents and prefixes share the arcs of the OID they came from, so
+     * mustn't see the arcs past their own end.
+     */
+    private static void testViews() throws SnmpException {
+	SnmpOid oid = SnmpOid.valueOf("1.3.6.1.2.1.2.2.1.10.4294967295");
+	SnmpOid parent = oid.getParent();
+	SnmpOid column = SnmpOid.valueOf("1.3.6.1.2.1.2.2.1.10");
+	Checks.equal("parent", column, parent);
+	Checks.equal("parent hash", column.hashCode(), parent.hashCode());
+	Checks.equal("parent string", column.toString(), parent.toString());
+	Checks.equal("prefix", column, oid.getPrefix(10));
+	Checks.check("whole prefix", oid.getPrefix(11) == oid);
+	Checks.equal("child of parent", oid, parent.getChild(MAX));
+	Checks.equal("suffix", "4294967295", oid.getSuffix(10).toString());
+	Checks.equal("append", oid, parent.append(oid.getSuffix(10)));
+	Checks.check("sibling", parent.getSibling(11).compareTo(parent) > 0);
+	Checks.equal("parent of single arc", null,
+		SnmpOid.valueOf("1").getParent());
+	Checks.check("arc past the end of a parent",
+		outOfBounds(() -> parent.getArc(10)));
+	Checks.check("prefix too long",
+		outOfBounds(() -> parent.getPrefix(11)));
+	Checks.check("prefix too short",
+		outOfBounds(() -> parent.getPrefix(0)));
+	// appending to a view mustn't disturb the original
+	SnmpOid other = parent.getChild(7);
+	Checks.equal("original after child", MAX, oid.getInstance());
+	Checks.equal("child of view", 7L, other.getInstance());
+    }
+
+    /*
+     * Large arcs take 5 bytes to encode, and the first subidentifier
+     * holds both the first two arcs.
+     */
+    private static void testEncoding() throws SnmpException {
+	String[] strings = {"1.3.6.1.4.1.2147483648.4294967295",
+			    "0.0", "1.39", "2.0", "2.999.1", "2.4294967295",
+			    "1.3.6.1.2.1.127.128.16383.16384"};
+	for (String s : strings) {
+	    SnmpOid oid = SnmpOid.valueOf(s);
+	    ByteBuffer buf = SnmpMessage.get(null, 1, "public", 1,
+				Collections.singletonList(oid));
+	    buf.flip();
+	    SnmpMessage msg = new SnmpMessage();
+	    msg.decode(buf);
+	    Checks.equal("round trip", oid, msg.get(0).getOID());
+	    Checks.equal("compare after round trip", 0,
+			msg.get(0).compareOID(oid));
+	    Checks.check("in subtree after round trip",
+			msg.get(0).isInSubtree(oid.getPrefix(1)));
+	    Checks.check("encoding of " + s,
+			Arrays.equals(SnmpMessageTest.oid(oid),
+				oidBytes(buf, oid)));
+	}
+    }
+
+    /*
+     * Pick the encoded OID out of a request for a single OID, which is
+     * at the end of the message, followed by a NULL.
+     */
+    private static byte[] oidBytes(final ByteBuffer buf, final SnmpOid oid) {
+	int n = SnmpMessageTest.oid(oid).length;
+	byte[] b = new byte[n];
+	int end = buf.limit() - 2;
+	for (int i = 0; i < n; i++) {
+	    b[i] = buf.get(end - n + i);
+	}
+	return b;
+    }
+
+    private static boolean outOfBounds(final Runnable code) {
+	try {
+	    code.run();
+	    return false;
+	} catch (IndexOutOfBoundsException ioobe) {
+	    return true;
+	}
+    }
+}
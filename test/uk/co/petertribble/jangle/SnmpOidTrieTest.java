@@ -0,0 +1,195 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests of SnmpOidTrie: longest prefix matches, the unsigned order of
+ * the arcs, and that an edited copy and the original don't see each
+ * other's changes.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpOidTrieTest {
+
+    private SnmpOidTrieTest() {
+    }
+
+    public static void main(final String[] args) throws SnmpException {
+	testNearest();
+	testOrder();
+	testEdit();
+	testText();
+	testFiles();
+	Checks.done("SnmpOidTrieTest");
+    }
+
+    private static SnmpOidTrie sample() throws SnmpException {
+	SnmpOidTrie trie = new SnmpOidTrie();
+	put(trie, "1", "iso");
+	put(trie, "1.3.6.1.2.1", "mib-2");
+	put(trie, "1.3.6.1.2.1.2.2.1.2", "ifDescr");
+	put(trie, "1.3.6.1.4.1.4294967295", "bigArc");
+	return trie;
+    }
+
+    private static void put(final SnmpOidTrie trie, final String oid,
+			    final String name) throws SnmpException {
+	trie.put(SnmpOid.valueOf(oid), name, name + " symbol", null, null);
+    }
+
+    private static String nearest(final SnmpOidTrie trie, final String oid)
+	    throws SnmpException {
+	SnmpOidTrie.Node node = trie.findNearest(SnmpOid.valueOf(oid));
+	return node == null ? null : node.name + "/" + node.depth;
+    }
+
+    private static void testNearest() throws SnmpException {
+	SnmpOidTrie trie = sample();
+	Checks.equal("exact", "ifDescr/10",
+		nearest(trie, "1.3.6.1.2.1.2.2.1.2"));
+	Checks.equal("instance", "ifDescr/10",
+		nearest(trie, "1.3.6.1.2.1.2.2.1.2.7"));
+	Checks.equal("unnamed parent", "mib-2/6",
+		nearest(trie, "1.3.6.1.2.1.2.2.1"));
+	Checks.equal("unknown child", "mib-2/6",
+		nearest(trie, "1.3.6.1.2.1.99.1"));
+	Checks.equal("root only", "iso/1", nearest(trie, "1.3.6"));
+	Checks.equal("no prefix", null, nearest(trie, "2.5"));
+	Checks.equal("arc 2^32-1", "bigArc/7",
+		nearest(trie, "1.3.6.1.4.1.4294967295.5"));
+	Checks.equal("arc 2^31-1", "iso/1",
+		nearest(trie, "1.3.6.1.4.1.2147483647"));
+	Checks.equal("small arc", "iso/1",
+		nearest(trie, "1.3.6.1.4.1.1"));
+	Checks.check("node", trie.getNode(
+		SnmpOid.valueOf("1.3.6.1.2.1.2")) != null);
+	Checks.check("no node", trie.getNode(
+		SnmpOid.valueOf("1.3.6.1.2.1.3")) == null);
+	Checks.equal("symbol", "ifDescr symbol", trie.findNearest(
+		SnmpOid.valueOf("1.3.6.1.2.1.2.2.1.2.1")).getSymbol());
+    }
+
+    /*
+     * Children are kept in walk order, comparing arcs as unsigned, however
+     * they were added.
+     */
+    private static void testOrder() throws SnmpException {
+	SnmpOidTrie trie = new SnmpOidTrie();
+	long[] arcs = {5, 2147483648L, 0, 4294967295L, 2147483647, 1,
+		       4294967294L, 128};
+	List<SnmpOid> oids = new ArrayList<>();
+	SnmpOid parent = SnmpOid.valueOf("1.3.6.1.4.1");
+	for (long arc : arcs) {
+	    SnmpOid oid = parent.getChild(arc);
+	    trie.put(oid, Long.toString(arc), null, null, null);
+	    oids.add(oid);
+	}
+	Collections.sort(oids);
+	Checks.equal("walk order", oids, trie.findAll(n -> n.name != null));
+	SnmpOidTrie.Node node = trie.getNode(parent);
+	Checks.equal("children", arcs.length, node.getChildCount());
+	for (int i = 0; i < node.getChildCount(); i++) {
+	    long arc = oids.get(i).getInstance();
+	    Checks.equal("child arc", arc, node.getChildArc(i));
+	    Checks.equal("child found", Long.toString(arc),
+			node.getChild((int) arc).name);
+	    Checks.equal("nearest", Long.toString(arc) + "/7",
+			nearest(trie, oids.get(i).getChild(3).toString()));
+	}
+    }
+
+    /*
+     * Changes to an edited copy mustn't be seen through the original,
+     * and changes to the original after the copy was made mustn't be seen
+     * through the copy.
+     */
+    private static void testEdit() throws SnmpException {
+	SnmpOidTrie trie = sample();
+	SnmpOidTrie copy = trie.edit();
+	put(copy, "1.3.6.1.2.1.2.2.1.2", "ifDescription");
+	put(copy, "1.3.6.1.2.1.2.2.1.3", "ifType");
+	copy.modify(SnmpOid.valueOf("1.3.6.1.2.1")).clearName();
+
+	Checks.equal("copy renamed", "ifDescription/10",
+		nearest(copy, "1.3.6.1.2.1.2.2.1.2.1"));
+	Checks.equal("copy added", "ifType/10",
+		nearest(copy, "1.3.6.1.2.1.2.2.1.3.1"));
+	Checks.equal("copy cleared", "iso/1", nearest(copy, "1.3.6.1.2.1.1"));
+	Checks.equal("original name", "ifDescr/10",
+		nearest(trie, "1.3.6.1.2.1.2.2.1.2.1"));
+	Checks.equal("original not added", "mib-2/6",
+		nearest(trie, "1.3.6.1.2.1.2.2.1.3.1"));
+	Checks.equal("original not cleared", "mib-2/6",
+		nearest(trie, "1.3.6.1.2.1.1"));
+
+	put(trie, "1.3.6.1.2.1.1", "system");
+	put(trie, "1.3.6.1.4.1.4294967295", "renamed");
+	Checks.equal("original changed", "system/7",
+		nearest(trie, "1.3.6.1.2.1.1.5.0"));
+	Checks.equal("copy not changed", "iso/1",
+		nearest(copy, "1.3.6.1.2.1.1.5.0"));
+	Checks.equal("copy keeps name", "bigArc/7",
+		nearest(copy, "1.3.6.1.4.1.4294967295.1"));
+    }
+
+    /*
+     * The symbol may be left in a buffer until it's asked for.
+     */
+    private static void testText() throws SnmpException {
+	byte[] text = "xxifIndex OBJECT-TYPE\u00e9yy"
+	    .getBytes(StandardCharsets.UTF_8);
+	ByteBuffer buf = ByteBuffer.wrap(text);
+	SnmpOidTrie trie = new SnmpOidTrie();
+	SnmpOid oid = SnmpOid.valueOf("1.3.6.1.2.1.2.2.1.1");
+	trie.put(oid, "ifIndex", buf, 2, text.length - 4, 0, null);
+	SnmpOidTrie.Node node = trie.getNode(oid);
+	Checks.equal("text symbol", "ifIndex OBJECT-TYPE\u00e9",
+		node.getSymbol());
+	Checks.equal("buffer untouched", 0, buf.position());
+	Checks.equal("no syntax", null, node.getSyntax());
+    }
+
+    /*
+     * In lazy mode, the trie records which file defines each OID.
+     */
+    private static void testFiles() throws SnmpException {
+	SnmpOidTrie trie = sample();
+	File mib2 = new File("RFC1213-MIB");
+	File host = new File("HOST-RESOURCES-MIB");
+	trie.putFile(SnmpOid.valueOf("1.3.6.1.2.1"), mib2);
+	trie.putFile(SnmpOid.valueOf("1.3.6.1.2.1.25"), host);
+	Checks.equal("nearer file", host, trie.findNearestFile(
+		SnmpOid.valueOf("1.3.6.1.2.1.25.1.2.0")).file);
+	Checks.equal("file", mib2, trie.findNearestFile(
+		SnmpOid.valueOf("1.3.6.1.2.1.1.5.0")).file);
+	Checks.equal("no file", null,
+		trie.findNearestFile(SnmpOid.valueOf("1.3.6.1.4.1")));
+	Checks.equal("file keeps name", "mib-2/6",
+		nearest(trie, "1.3.6.1.2.1.1"));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+/**
+ * Tests of SnmpTimeSeries, the ring buffer holding the samples for a
+ * chart, particularly once it has wrapped around.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpTimeSeriesTest {
+
+    private static final long FOREVER = Long.MAX_VALUE / 2;
+
+    private SnmpTimeSeriesTest() {
+    }
+
+    public static void main(final String[] args) {
+	testWraparound();
+	testTimes();
+	testMaxAge();
+	testCapacity();
+	Checks.done("SnmpTimeSeriesTest");
+    }
+
+    /*
+     * Check that the series holds exactly the given times, oldest first,
+     * with each value being ten times its time.
+     */
+    private static void expect(final String what, final SnmpTimeSeries ts,
+			       final long... times) {
+	Checks.equal(what + ": size", times.length, ts.size());
+	for (int i = 0; i < Math.min(times.length, ts.size()); i++) {
+	    Checks.equal(what + ": time " + i, times[i], ts.getTime(i));
+	    Checks.equal(what + ": value " + i, 10.0 * times[i],
+			ts.getValue(i));
+	}
+    }
+
+    private static void add(final SnmpTimeSeries ts, final long time) {
+	ts.add(time, 10.0 * time);
+    }
+
+    private static void testWraparound() {
+	SnmpTimeSeries ts = new SnmpTimeSeries("key", 3, FOREVER);
+	Checks.equal("key", "key", ts.getKey());
+	expect("empty", ts);
+	add(ts, 1);
+	add(ts, 2);
+	expect("part full", ts, 1, 2);
+	add(ts, 3);
+	expect("full", ts, 1, 2, 3);
+	add(ts, 4);
+	expect("wrapped once", ts, 2, 3, 4);
+	add(ts, 5);
+	add(ts, 6);
+	expect("wrapped to the start", ts, 4, 5, 6);
+	for (long t = 7; t <= 104; t++) {
+	    add(ts, t);
+	}
+	expect("wrapped many times", ts, 102, 103, 104);
+
+	ts = new SnmpTimeSeries("one", 0, FOREVER);
+	add(ts, 1);
+	add(ts, 2);
+	expect("capacity of zero holds one", ts, 2);
+    }
+
+    /*
+     * Times must ascend, so a sample at the time of the newest replaces
+     * it and an older one is ignored, even after wrapping.
+     */
+    private static void testTimes() {
+	SnmpTimeSeries ts = new SnmpTimeSeries("key", 3, FOREVER);
+	for (long t = 1; t <= 4; t++) {
+	    add(ts, t);
+	}
+	ts.add(4, 99.0);
+	Checks.equal("replaced size", 3, ts.size());
+	Checks.equal("replaced value", 99.0, ts.getValue(2));
+	ts.add(3, 1.0);
+	ts.add(0, 1.0);
+	Checks.equal("older ignored", 3, ts.size());
+	Checks.equal("older ignored, newest", 4L, ts.getTime(2));
+	Checks.equal("older ignored, oldest", 2L, ts.getTime(0));
+    }
+
+    /*
+     * Samples older than the maximum age are dropped as new ones arrive,
+     * but the newest is always kept.
+     */
+    private static void testMaxAge() {
+	SnmpTimeSeries ts = new SnmpTimeSeries("key", 10, 100);
+	add(ts, 0);
+	add(ts, 50);
+	add(ts, 100);
+	expect("within the age", ts, 0, 50, 100);
+	add(ts, 150);
+	expect("oldest dropped", ts, 50, 100, 150);
+	add(ts, 1000);
+	expect("all but newest dropped", ts, 1000);
+
+	// and once the buffer has wrapped
+	ts = new SnmpTimeSeries("key", 4, 35);
+	for (long t = 1; t <= 6; t++) {
+	    add(ts, 10 * t);
+	}
+	expect("wrapped", ts, 30, 40, 50, 60);
+	add(ts, 90);
+	expect("aged after wrapping", ts, 60, 90);
+	add(ts, 100);
+	add(ts, 110);
+	expect("refilled after ageing", ts, 90, 100, 110);
+
+	ts.setMaxAge(10);
+	expect("max age reduced", ts, 100, 110);
+	ts.setMaxAge(0);
+	expect("max age of zero", ts, 110);
+	ts.setMaxAge(FOREVER);
+	add(ts, 120);
+	expect("max age increased", ts, 110, 120);
+    }
+
+    /*
+     * Changing the capacity keeps the newest samples, whether or not the
+     * buffer had wrapped.
+     */
+    private static void testCapacity() {
+	SnmpTimeSeries ts = new SnmpTimeSeries("key", 4, FOREVER);
+	for (long t = 1; t <= 6; t++) {
+	    add(ts, t);
+	}
+	ts.setCapacity(2);
+	expect("shrunk after wrapping", ts, 5, 6);
+	add(ts, 7);
+	expect("added after shrinking", ts, 6, 7);
+	ts.setCapacity(5);
+	expect("grown", ts, 6, 7);
+	for (long t = 8; t <= 12; t++) {
+	    add(ts, t);
+	}
+	expect("filled after growing", ts, 8, 9, 10, 11, 12);
+	ts.setCapacity(5);
+	expect("same capacity", ts, 8, 9, 10, 11, 12);
+	ts.setCapacity(0);
+	expect("capacity of zero", ts, 12);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+/**
+ * Tests of the decoders in SnmpUtil that turn the bytes of an OctetString
+ * into text.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpUtilTest {
+
+    private SnmpUtilTest() {
+    }
+
+    public static void main(final String[] args) {
+	testDates();
+	testMacAddresses();
+	testInetAddresses();
+	testDisplayStrings();
+	Checks.done("SnmpUtilTest");
+    }
+
+    private static void testDates() {
+	Checks.equal("DateAndTime", "2026-03-09 07:05:02",
+		SnmpUtil.getDate(bytes(0x07, 0xea, 3, 9, 7, 5, 2, 4)));
+	Checks.equal("DateAndTime west of UTC", "2026-12-31 23:59:59 -05:30",
+		SnmpUtil.getDate(bytes(0x07, 0xea, 12, 31, 23, 59, 59, 9,
+				'-', 5, 30)));
+	Checks.equal("DateAndTime east of UTC", "0999-01-01 00:00:00 +01:00",
+		SnmpUtil.getDate(bytes(0x03, 0xe7, 1, 1, 0, 0, 0, 0,
+				'+', 1, 0)));
+	Checks.equal("DateAndTime of 7 bytes", null,
+		SnmpUtil.getDate(bytes(0x07, 0xea, 3, 9, 7, 5, 2)));
+	Checks.equal("DateAndTime of 9 bytes", null,
+		SnmpUtil.getDate(bytes(0x07, 0xea, 3, 9, 7, 5, 2, 4, '+')));
+    }
+
+    private static void testMacAddresses() {
+	Checks.equal("empty MAC address", "",
+		SnmpUtil.getMacAddress(new byte[0]));
+	Checks.equal("MAC address", "00:1b:21:3c:4d:ff",
+		SnmpUtil.getMacAddress(bytes(0, 0x1b, 0x21, 0x3c, 0x4d, 0xff)));
+	Checks.equal("one byte address", "80",
+		SnmpUtil.getMacAddress(bytes(0x80)));
+    }
+
+    private static void testInetAddresses() {
+	Checks.equal("IPv4", "192.168.0.255",
+		SnmpUtil.getInetAddress(bytes(192, 168, 0, 255)));
+	Checks.equal("IPv4 with zone", "10.0.0.1%4294967295",
+		SnmpUtil.getInetAddress(bytes(10, 0, 0, 1,
+					0xff, 0xff, 0xff, 0xff)));
+	Checks.equal("IPv6 unspecified", "::", SnmpUtil.getInetAddress(
+		ipv6(0, 0, 0, 0, 0, 0, 0, 0)));
+	Checks.equal("IPv6 loopback", "::1", SnmpUtil.getInetAddress(
+		ipv6(0, 0, 0, 0, 0, 0, 0, 1)));
+	Checks.equal("IPv6 trailing zeroes", "2001:db8::",
+		SnmpUtil.getInetAddress(ipv6(0x2001, 0xdb8, 0, 0, 0, 0, 0, 0)));
+	Checks.equal("IPv6", "2001:db8::ff00:42:8329",
+		SnmpUtil.getInetAddress(ipv6(0x2001, 0xdb8, 0, 0, 0, 0xff00,
+					0x42, 0x8329)));
+	// a single zero group isn't shortened
+	Checks.equal("IPv6 single zero", "2001:db8:0:1:1:1:1:1",
+		SnmpUtil.getInetAddress(ipv6(0x2001, 0xdb8, 0, 1, 1, 1, 1, 1)));
+	// the longest run is shortened, or the first of equal runs
+	Checks.equal("IPv6 longest run", "2001:0:0:1::1",
+		SnmpUtil.getInetAddress(ipv6(0x2001, 0, 0, 1, 0, 0, 0, 1)));
+	Checks.equal("IPv6 equal runs", "2001:db8::1:0:0:1",
+		SnmpUtil.getInetAddress(ipv6(0x2001, 0xdb8, 0, 0, 1, 0, 0, 1)));
+	byte[] zoned = new byte[20];
+	System.arraycopy(ipv6(0xfe80, 0, 0, 0, 0, 0, 0, 1), 0, zoned, 0, 16);
+	zoned[19] = 3;
+	Checks.equal("IPv6 with zone", "fe80::1%3",
+		SnmpUtil.getInetAddress(zoned));
+	Checks.equal("5 bytes", null,
+		SnmpUtil.getInetAddress(bytes(1, 2, 3, 4, 5)));
+	Checks.equal("no bytes", null, SnmpUtil.getInetAddress(new byte[0]));
+    }
+
+    private static void testDisplayStrings() {
+	Checks.equal("DisplayString", "eth0",
+		SnmpUtil.getDisplayString(bytes('e', 't', 'h', '0')));
+	Checks.equal("null padded DisplayString", "eth0",
+		SnmpUtil.getDisplayString(bytes('e', 't', 'h', '0', 0, 0)));
+	Checks.equal("empty DisplayString", "",
+		SnmpUtil.getDisplayString(bytes(0, 'x')));
+    }
+
+    private static byte[] bytes(final int... values) {
+	byte[] b = new byte[values.length];
+	for (int i = 0; i < b.length; i++) {
+	    b[i] = (byte) values[i];
+	}
+	return b;
+    }
+
+    /*
+     * The bytes of an IPv6 address, from its 8 groups.
+     */
+    private static byte[] ipv6(final int... groups) {
+	byte[] b = new byte[16];
+	for (int i = 0; i < 8; i++) {
+	    b[2 * i] = (byte) (groups[i] >> 8);
+	    b[2 * i + 1] = (byte) groups[i];
+	}
+	return b;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import snmp.SNMPRequestException;
+
+/**
+ * A control class to manage Snmp queries without blocking. Rather than
+ * waiting for a response, each query returns a CompletableFuture that is
+ * completed when the response arrives. All SnmpAsyncControllers share a
+ * single selector thread and a small number of sockets, so a large number
+ * of servers can be queried at once without needing a thread each.
+ *
+ * <p>The futures are completed on the selector thread, so any lengthy
+ * work done with the results should use the asynchronous variants of
+ * the CompletableFuture methods.
+ *
+ * @author Peter Tribble
+ */
+public class SnmpAsyncController {
+
+    private final SnmpParams params;
+    private InetSocketAddress address;
+    private SnmpException savedException;
+
+    /**
+     * Create a new SnmpAsyncController with parameters detailing how to
+     * communicate with a server.
+     *
+     * @param nparams an SnmpParams with connection details
+     */
+    public SnmpAsyncController(final SnmpParams nparams) {
+	params = nparams;
+	try {
+	    address = new InetSocketAddress(
+			InetAddress.getByName(params.getServer()),
+			params.getPort());
+	} catch (UnknownHostException e) {
+	    savedException = new SnmpException("Unknown host.");
+	}
+    }
+
+    /*
+     * Create a new SnmpAsyncController for the server of an SnmpController,
+     * using the address it has already looked up.
+     */
+    SnmpAsyncController(final SnmpController sc) throws SnmpException {
+	params = sc.getParams();
+	address = new InetSocketAddress(sc.getAddress(), params.getPort());
+    }
+
+    /**
+     * Return the parameters describing how this SnmpAsyncController
+     * communicates with its server.
+     *
+     * @return the SnmpParams of this SnmpAsyncController
+     */
+    public SnmpParams getParams() {
+	return params;
+    }
+
+    /**
+     * Retrieve the SnmpObject corresponding to the given entry.
+     *
+     * @param s a String naming the oid of interest
+     *
+     * @return a CompletableFuture that will be completed with the
+     * SnmpObject, or exceptionally with an SnmpException if an error occurs
+     */
+    public CompletableFuture<SnmpObject> getValue(final String s) {
+	try {
+	    return getValue(SnmpOid.valueOf(s));
+	} catch (SnmpException sne) {
+	    return CompletableFuture.failedFuture(sne);
+	}
+    }
+
+    /**
+     * Retrieve the SnmpObject corresponding to the given entry.
+     *
+     * @param s the oid of interest
+     *
+     * @return a CompletableFuture that will be completed with the
+     * SnmpObject, or exceptionally with an SnmpException if an error occurs
+     */
+    public CompletableFuture<SnmpObject> getValue(final SnmpOid s) {
+	CompletableFuture<SnmpObject> fsno;
+	try {
+	    SnmpSelector sel = SnmpSelector.getInstance();
+	    int id = sel.nextRequestID();
+	    fsno = send(sel, id, SnmpMessage.get(null, params.getVersion(),
+					params.getCommunity(), id,
+					Collections.singletonList(s)));
+	} catch (SnmpException sne) {
+	    return CompletableFuture.failedFuture(sne);
+	} catch (IOException e) {
+	    return CompletableFuture.failedFuture(
+			new SnmpException("Error retrieving " + s));
+	}
+	return fsno.thenCompose(sno -> {
+	    return sno == null
+		? CompletableFuture.failedFuture(
+			new SnmpException("SNMPGetException Retrieving " + s))
+		: CompletableFuture.completedFuture(sno);
+	});
+    }
+
+    /**
+     * Retrieve the next SnmpObject after the given entry.
+     *
+     * @param s a String naming the oid of interest
+     *
+     * @return a CompletableFuture that will be completed with the
+     * SnmpObject, or null at the end of the MIB, or exceptionally with an
+     * SnmpException if an error occurs
+     */
+    public CompletableFuture<SnmpObject> getNext(final String s) {
+	try {
+	    return getNext(SnmpOid.valueOf(s));
+	} catch (SnmpException sne) {
+	    return CompletableFuture.failedFuture(sne);
+	}
+    }
+
+    /**
+     * Retrieve the next SnmpObject after the given entry.
+     *
+     * @param s the oid of interest
+     *
+     * @return a CompletableFuture that will be completed with the
+     * SnmpObject, or null at the end of the MIB, or exceptionally with an
+     * SnmpException if an error occurs
+     */
+    public CompletableFuture<SnmpObject> getNext(final SnmpOid s) {
+	try {
+	    SnmpSelector sel = SnmpSelector.getInstance();
+	    int id = sel.nextRequestID();
+	    return send(sel, id, SnmpMessage.getNext(null, params.getVersion(),
+					params.getCommunity(), id, s));
+	} catch (SnmpException sne) {
+	    return CompletableFuture.failedFuture(sne);
+	} catch (IOException e) {
+	    return CompletableFuture.failedFuture(
+			new SnmpException("Error retrieving next " + s));
+	}
+    }
+
+    /**
+     * Retrieve the next SnmpObject after the given entry.
+     *
+     * @param sno an SnmpObject naming the oid of interest
+     *
+     * @return a CompletableFuture that will be completed with the
+     * SnmpObject, or null at the end of the MIB, or exceptionally with an
+     * SnmpException if an error occurs
+     */
+    public CompletableFuture<SnmpObject> getNext(final SnmpObject sno) {
+	return getNext(sno.getSnmpOid());
+    }
+
+    /**
+     * Retrieve the SnmpObjects following the given entry, with a single
+     * SNMPv2c GETBULK request. If the server reports that the response
+     * would be too big, the request is repeated asking for fewer.
+     *
+     * @param s the oid of interest
+     * @param repetitions the number of SnmpObjects to ask for
+     *
+     * @return a CompletableFuture that will be completed with a List of
+     * the SnmpObjects following the given oid, in order, which will be
+     * empty at the end of the MIB view, or exceptionally with an
+     * SnmpException if an error occurs
+     */
+    public CompletableFuture<List<SnmpObject>> getBulk(final SnmpOid s,
+						final int repetitions) {
+	if (params.getVersion() != SnmpParams.SNMPV2) {
+	    return CompletableFuture.failedFuture(
+			new SnmpException("GETBULK requires SNMPv2c"));
+	}
+	CompletableFuture<List<SnmpObject>> flso;
+	try {
+	    SnmpSelector sel = SnmpSelector.getInstance();
+	    int id = sel.nextRequestID();
+	    flso = send(sel, id, SnmpMessage.getBulk(null, params.getVersion(),
+					params.getCommunity(), id,
+					repetitions, s),
+			SnmpAsyncController::getList);
+	} catch (SnmpException sne) {
+	    return CompletableFuture.failedFuture(sne);
+	} catch (IOException e) {
+	    return CompletableFuture.failedFuture(
+			new SnmpException("Error retrieving bulk " + s));
+	}
+	// a null list means the response would have been too big
+	return flso.thenCompose(lso -> {
+	    if (lso != null) {
+		return CompletableFuture.completedFuture(lso);
+	    } else if (repetitions > 1) {
+		return getBulk(s, repetitions / 2);
+	    }
+	    return CompletableFuture.failedFuture(
+		new SnmpException("Response too big retrieving " + s));
+	});
+    }
+
+    private CompletableFuture<SnmpObject> send(final SnmpSelector sel,
+			final int id, final ByteBuffer msg)
+	    throws SnmpException {
+	return send(sel, id, msg, SnmpAsyncController::getSno);
+    }
+
+    private <T> CompletableFuture<T> send(final SnmpSelector sel,
+			final int id, final ByteBuffer msg,
+			final SnmpSelector.Reader<T> reader)
+	    throws SnmpException {
+	if (savedException != null) {
+	    throw savedException;
+	}
+	return sel.send(id, msg, address, reader);
+    }
+
+    /*
+     * Convert a response into an SnmpObject, returning null if the
+     * response reports an error or that there's no such object.
+     */
+    private static SnmpObject getSno(final SnmpMessage rsp)
+	    throws SnmpException {
+	if (rsp.getErrorStatus() != SNMPRequestException.NO_ERROR
+		|| rsp.size() == 0 || rsp.get(0).isException()) {
+	    return null;
+	}
+	return rsp.get(0).toSnmpObject(System.currentTimeMillis());
+    }
+
+    /*
+     * Convert a GETBULK response into a List of SnmpObjects, stopping at
+     * the end of the MIB view, returning null if the response would have
+     * been too big.
+     */
+    private static List<SnmpObject> getList(final SnmpMessage rsp)
+	    throws SnmpException {
+	int status = rsp.getErrorStatus();
+	if (status == SNMPRequestException.VALUE_TOO_BIG) {
+	    return null;
+	} else if (status != SNMPRequestException.NO_ERROR) {
+	    throw new SnmpException("GETBULK error " + status);
+	}
+	long timestamp = System.currentTimeMillis();
+	List<SnmpObject> lso = new ArrayList<>(rsp.size());
+	for (int i = 0; i < rsp.size(); i++) {
+	    SnmpMessage.VarBind vb = rsp.get(i);
+	    if (vb.isException()) {
+		break;
+	    }
+	    lso.add(vb.toSnmpObject(timestamp));
+	}
+	return lso;
+    }
+}
@@ -27,6 +27,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import javax.swing.ButtonGroup;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
@@ -262,10 +263,12 @@ public final class SnmpBrowser extends JFrame implements ActionListener {
 	jbload = new JButton(SnmpResources.getString("SNMP.LOAD"));
 	jbload.addActionListener(this);
 	jpq.add(jbload);
+	jpq.add(new JLabel(SnmpResources.getString("SNMP.SEARCH")));
 
 	jp.add(jpq, BorderLayout.NORTH);
 
 	stp = new SnmpTreePanel();
+	jpq.add(new SnmpSearchField(stp::selectOID, 12));
 	jp.add(stp);
 
 	setIconImage(new ImageIcon(this.getClass().getClassLoader()
@@ -278,6 +281,7 @@ public final class SnmpBrowser extends JFrame implements ActionListener {
     class WindowExit extends WindowAdapter {
 	@Override
 	public void windowClosing(final WindowEvent we) {
+	    stp.close();
 	    JingleMultiFrame.unregister(SnmpBrowser.this);
 	}
     }
@@ -300,12 +304,37 @@ public final class SnmpBrowser extends JFrame implements ActionListener {
 	stp.setMaxAge(i);
     }
 
+    /*
+     * Load the MIBs in the background. With no directory, just make sure
+     * the system MIBs have been loaded. Once done, repaint so that
+     * anything already shown picks up the new names.
+     */
     class SmmWorker extends SwingWorker<String, Object> {
+	private final File mibdir;
+
+	SmmWorker() {
+	    this(null);
+	}
+
+	SmmWorker(final File nmibdir) {
+	    mibdir = nmibdir;
+	}
+
 	@Override
 	public String doInBackground() {
-	    SnmpMibManager.getInstance();
+	    SnmpMibManager smm = SnmpMibManager.getInstance();
+	    if (mibdir != null) {
+		smm.readMIBs(mibdir);
+	    }
 	    return "done";
 	}
+
+	@Override
+	protected void done() {
+	    if (mibdir != null) {
+		repaint();
+	    }
+	}
     }
 
     private void doload() {
@@ -318,7 +347,7 @@ public final class SnmpBrowser extends JFrame implements ActionListener {
 	fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
 	if (fc.showDialog(this, SnmpResources.getString("FILE.SCANDIR"))
 	    == JFileChooser.APPROVE_OPTION) {
-		SnmpMibManager.getInstance().readMIBs(fc.getSelectedFile());
+		new SmmWorker(fc.getSelectedFile()).execute();
 	}
     }
 
@@ -327,6 +356,7 @@ public final class SnmpBrowser extends JFrame implements ActionListener {
 	if (e.getSource() == cloneItem) {
 	    new SnmpBrowser();
 	} else if (e.getSource() == closeItem) {
+	    stp.close();
 	    JingleMultiFrame.unregister(this);
 	} else if (e.getSource() == loadMibItem) {
 	    doLoadMibs();
@@ -20,33 +20,28 @@
 
 package uk.co.petertribble.jangle;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.math.BigInteger;
-import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
-import javax.swing.Timer;
+import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.plot.XYPlot;
-import org.jfree.data.time.Millisecond;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
 
 /**
  * Display snmp data in a graphical chart.
  *
  * @author Peter Tribble
  */
-public final class SnmpChart extends AbstractTableModel
-        implements ActionListener {
+public final class SnmpChart extends AbstractTableModel {
 
     private static final long serialVersionUID = 1L;
 
@@ -58,9 +53,9 @@ public final class SnmpChart extends AbstractTableModel
      */
     private JFreeChart chart;
     /**
-     * A Timer to update the display in a loop.
+     * The subscription that updates the display in a loop.
      */
-    private Timer timer;
+    private transient SnmpPoller.Subscription subscription;
     /**
      * The interval at which the display is updated.
      */
@@ -72,24 +67,24 @@ public final class SnmpChart extends AbstractTableModel
     /**
      * The dataset being displayed.
      */
-    private TimeSeriesCollection dataset;
+    private SnmpTimeSeriesDataset dataset;
     /**
      * Whether we're showing absolute values or rates.
      */
     private boolean showdelta;
-    /**
-     * Save the last time data was collected, in milliseconds.
-     */
-    private long lastsnap;
     /**
      * The title of this chart.
      */
     private String charttitle;
 
-    private transient Map<String, TimeSeries> tsmap;
-    // save previous values for rates, and used as the backing store for
-    // the TableModel
-    private transient Map<String, BigInteger> valueMap;
+    private transient Map<String, SnmpTimeSeries> tsmap;
+    // all the oids, charted or not, in the order they're polled, and
+    // parsed for polling
+    private transient List<String> stats;
+    private transient List<SnmpOid> statoids;
+    // save previous samples for rates, and used as the backing store for
+    // the TableModel, only accessed on the event dispatch thread
+    private transient Map<String, SnmpObject> valueMap;
     private transient List<String> allnames;
 
     /**
@@ -202,10 +197,10 @@ public final class SnmpChart extends AbstractTableModel
 	Map<String, String> oids = new TreeMap<>();
 	Map<String, String> alloids = new TreeMap<>();
 	for (SnmpObject sno : snos) {
-	    oids.put(SMM.prettifyOID(sno.toString()), sno.toString());
+	    oids.put(SMM.prettifyOID(sno), sno.toString());
 	}
 	for (SnmpObject sno : tsnos) {
-	    alloids.put(SMM.prettifyOID(sno.toString()), sno.toString());
+	    alloids.put(SMM.prettifyOID(sno), sno.toString());
 	}
 	initialize(new ArrayList<>(oids.values()),
 		   new ArrayList<>(alloids.values()));
@@ -216,18 +211,24 @@ public final class SnmpChart extends AbstractTableModel
 	allnames = alloids;
 	tsmap = new HashMap<>();
 	valueMap = new HashMap<>();
-	dataset = new TimeSeriesCollection();
-	lastsnap = 0;
+	dataset = new SnmpTimeSeriesDataset();
 
 	for (String oid : oids) {
-	    TimeSeries ts = new TimeSeries(SMM.prettifyOID(oid));
-	    ts.setMaximumItemAge(maxage);
+	    SnmpTimeSeries ts = new SnmpTimeSeries(SMM.prettifyOID(oid),
+						capacity(), maxage);
 	    dataset.addSeries(ts);
 	    tsmap.put(oid, ts);
-	    valueMap.put(oid, BigInteger.ZERO);
 	}
-
-	updateAccessory();
+	Set<String> polled = new LinkedHashSet<>(oids);
+	polled.addAll(alloids);
+	stats = new ArrayList<>(polled.size());
+	statoids = new ArrayList<>(polled.size());
+	for (String oid : polled) {
+	    try {
+		statoids.add(SnmpOid.valueOf(oid));
+		stats.add(oid);
+	    } catch (SnmpException sne) { }
+	}
 
 	String ylabel = showdelta ? SnmpResources.getString("CHART.RATE")
 	    : SnmpResources.getString("CHART.VALUE");
@@ -306,52 +307,98 @@ public final class SnmpChart extends AbstractTableModel
      */
     public void setMaxAge(final int age) {
 	maxage = 1000 * age;
-	for (TimeSeries ts : tsmap.values()) {
-	    ts.setMaximumItemAge(maxage);
+	for (SnmpTimeSeries ts : tsmap.values()) {
+	    ts.setMaxAge(maxage);
+	    ts.setCapacity(capacity());
 	}
     }
 
+    /*
+     * Return how many samples each series needs to hold, which is enough
+     * for the maximum age at the current interval, with a little to spare
+     * for samples that arrive early.
+     */
+    private int capacity() {
+	return maxage / (1000 * Math.max(1, interval)) + 2;
+    }
+
     /**
-     * Update the oids.
+     * Update the oids. All the oids are retrieved together, and each value
+     * is recorded at the time its response arrived. Rates are calculated
+     * from the previous sample of each oid, so the first sample and any
+     * counter reset don't show a rate.
+     *
+     * The oids are retrieved on the calling thread, so this shouldn't be
+     * called on the event dispatch thread. The values are recorded on the
+     * event dispatch thread later.
      */
     public void updateAccessory() {
+	try {
+	    publish(sc.getOidValues(statoids));
+	} catch (SnmpException sne) { }
+    }
+
+    /*
+     * Hand a poll's values, in the same order as the polled oids, to the
+     * event dispatch thread. They're put in a map of their own, which is
+     * never changed, so nothing is shared with the polling thread.
+     */
+    private void publish(final List<SnmpObject> snos) {
+	Map<String, SnmpObject> snapshot = new HashMap<>();
+	for (int i = 0; i < stats.size(); i++) {
+	    if (snos.get(i) != null) {
+		snapshot.put(stats.get(i), snos.get(i));
+	    }
+	}
+	Map<String, SnmpObject> values = Collections.unmodifiableMap(snapshot);
+	SwingUtilities.invokeLater(() -> update(values));
+    }
+
+    /*
+     * Record new values. This must be called on the event dispatch thread.
+     */
+    private void update(final Map<String, SnmpObject> values) {
 	double value;
-	long newsnap = Instant.now().toEpochMilli();
-	// loop over all oids
-	for (String stat : tsmap.keySet()) {
-	    try {
-		BigInteger newvalue = sc.getValue(stat).getNumber();
-		if (showdelta) {
-		    BigInteger bd = newvalue.subtract(valueMap.get(stat));
-		    double dt = (double) (newsnap - lastsnap);
-		    value = 1000.0 * (bd.doubleValue() / dt);
-		    valueMap.put(stat, newvalue);
-		} else {
-		    value = newvalue.doubleValue();
+	for (Map.Entry<String, SnmpObject> entry : values.entrySet()) {
+	    String stat = entry.getKey();
+	    SnmpObject sno = entry.getValue();
+	    SnmpObject last = valueMap.put(stat, sno);
+	    if (!tsmap.containsKey(stat)) {
+		continue;
+	    }
+	    if (showdelta) {
+		value = last == null ? Double.NaN : sno.getRate(last);
+		if (Double.isNaN(value)) {
+		    continue;
 		}
-		tsmap.get(stat).add(new Millisecond(), value);
-	    } catch (SnmpException sne) { }
+	    } else {
+		value = sno.getDouble();
+	    }
+	    tsmap.get(stat).add(sno.getTimestamp(), value);
 	}
-	lastsnap = newsnap;
+	dataset.seriesUpdated();
 	fireTableDataChanged();
     }
 
     /**
-     * Start the timer, so the display will continually update.
+     * Start polling, so the display will continually update. The oids are
+     * polled in the background along with any others wanted from the same
+     * server, and the values are recorded on the event dispatch thread.
      */
     public void startLoop() {
-	if (timer == null) {
-	    timer = new Timer(interval * 1000, this);
+	if (subscription == null) {
+	    subscription = SnmpControllerPool.getInstance().getPoller(sc)
+		.subscribe(statoids, interval, this::publish);
 	}
-	timer.start();
     }
 
     /**
-     * Stop the timer, so the display will not update.
+     * Stop polling, so the display will not update.
      */
     public void stopLoop() {
-	if (timer != null) {
-	    timer.stop();
+	if (subscription != null) {
+	    subscription.cancel();
+	    subscription = null;
 	}
     }
 
@@ -362,21 +409,11 @@ public final class SnmpChart extends AbstractTableModel
      */
     public void setDelay(final int ninterval) {
 	interval = ninterval;
-	if (timer != null) {
-	    timer.setDelay(interval * 1000);
+	for (SnmpTimeSeries ts : tsmap.values()) {
+	    ts.setCapacity(capacity());
 	}
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-	updateAccessory();
-    }
-
-    private String getStringValue(final String oid) {
-	try {
-	    return sc.getValue(oid).valueString();
-	} catch (SnmpException sne) {
-	    return "";
+	if (subscription != null) {
+	    subscription.setInterval(interval);
 	}
     }
 
@@ -399,11 +436,13 @@ public final class SnmpChart extends AbstractTableModel
 	if (column == 0) {
 	    return SMM.prettifyOID(oid);
 	} else if (column == 1) {
-	    return valueMap.get(oid) == null ? getStringValue(oid)
-		: valueMap.get(oid);
+	    // only show what the last poll found, never ask the server
+	    SnmpObject sno = valueMap.get(oid);
+	    return sno == null ? "" : sno.valueString();
 	} else {
-	    return valueMap.get(oid) == null ? Boolean.FALSE
-		: Boolean.valueOf(dataset.indexOf(tsmap.get(oid)) > -1);
+	    return tsmap.containsKey(oid)
+		? Boolean.valueOf(dataset.isShown(tsmap.get(oid)))
+		: Boolean.FALSE;
 	}
     }
 
@@ -432,7 +471,7 @@ public final class SnmpChart extends AbstractTableModel
     @Override
     public boolean isCellEditable(final int row, final int column) {
 	String oid = allnames.get(row);
-	return column == 2 && valueMap.get(oid) != null;
+	return column == 2 && tsmap.containsKey(oid);
     }
 
     /*
@@ -21,26 +21,81 @@
 package uk.co.petertribble.jangle;
 
 import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
-import snmp.SNMPBadValueException;
-import snmp.SNMPGetException;
-import snmp.SNMPObjectIdentifier;
-import snmp.SNMPSequence;
-import snmp.SNMPVarBindList;
-import snmp.SNMPv1CommunicationInterface;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import snmp.SNMPRequestException;
 
 /**
- * A control class to manage Snmp queries.
+ * A control class to manage Snmp queries. An SnmpController may be shared
+ * between threads, but only makes one request at a time.
+ *
+ * @see SnmpControllerPool
  *
  * @author Peter Tribble
  */
 public class SnmpController {
 
+    /**
+     * The default upper limit on the number of repetitions requested in a
+     * single SNMPv2c GETBULK request.
+     */
+    public static final int DEFAULT_MAX_REPETITIONS = 100;
+
+    /*
+     * GETBULK starts with this many repetitions and grows from there.
+     */
+    private static final int INITIAL_REPETITIONS = 10;
+    /*
+     * The most entries requested in a single GET.
+     */
+    private static final int MAX_BATCH = 64;
+    /*
+     * A reduced batch size is doubled after this many full batches have
+     * succeeded.
+     */
+    private static final int BATCH_GROWTH = 8;
+    /*
+     * The largest datagram we could ever receive.
+     */
+    static final int MAX_DATAGRAM = 65535;
+    /*
+     * The longest we'll wait for a response, in milliseconds.
+     */
+    static final int SOCKET_TIMEOUT = 15000;
+    /*
+     * The most times a request is retried if there's no response.
+     */
+    static final int RETRIES = 2;
+
     private final SnmpParams params;
-    private SNMPv1CommunicationInterface ifv1;
     private SnmpException savedException;
+    private InetAddress hostAddress;
+    private SnmpRtt rtt;
+
+    /*
+     * The socket, and the buffers requests are encoded into and responses
+     * received into, are all reused from one request to the next.
+     */
+    private DatagramSocket dsocket;
+    private ByteBuffer sendbuf;
+    private byte[] recvbuf;
+    private ByteBuffer recvdata;
+    private DatagramPacket recvpacket;
+    private final SnmpMessage response = new SnmpMessage();
+    private int requestID;
+    private int maxRepetitions = DEFAULT_MAX_REPETITIONS;
+    private int repetitions = INITIAL_REPETITIONS;
+    private int batchSize = MAX_BATCH;
+    private int fullBatches;
 
     /**
      * Create a new SnmpController with parameters detailing how to
@@ -55,109 +110,469 @@ public class SnmpController {
 
     private void initialize() {
 	try {
-	    InetAddress hostAddress = InetAddress.getByName(params.getServer());
-	    ifv1 = new SNMPv1CommunicationInterface(params.getVersion(),
-						hostAddress,
-						params.getCommunity(),
-						params.getPort());
-	    // FIXME be specific
+	    hostAddress = InetAddress.getByName(params.getServer());
+	    rtt = SnmpRtt.acquire(hostAddress, params.getPort());
 	} catch (UnknownHostException e) {
 	    savedException = new SnmpException("Unknown host.");
-	} catch (SocketException e) {
-	    savedException = new SnmpException("Socket error.");
 	}
     }
 
-    /*
-     * Return the SNMPv1CommunicationInterface associated with this
-     * SnmpController.
+    /**
+     * Return the next SnmpObject after the given entry.
      *
-     * @return the SNMPv1CommunicationInterface associated with this
-     * SnmpController.
+     * @param s a String naming the oid of interest
+     *
+     * @return an SnmpObject object, or null at the end of the MIB
+     *
+     * @throws SnmpException if an error occurs
      */
-    private SNMPv1CommunicationInterface getInterfaceV1() throws SnmpException {
-	if (savedException != null) {
-	    throw savedException;
-	}
-	return ifv1;
+    public SnmpObject getNext(final String s) throws SnmpException {
+	return getNext(SnmpOid.valueOf(s));
     }
 
-    // FIXME throw the saved SnmpException if we're uninitialized
-    private SNMPVarBindList getNextMIBEntry(final String s)
+    /**
+     * Return the next SnmpObject after the given entry.
+     *
+     * @param s the oid of interest
+     *
+     * @return an SnmpObject object, or null at the end of the MIB
+     *
+     * @throws SnmpException if an error occurs
+     */
+    public synchronized SnmpObject getNext(final SnmpOid s)
 	throws SnmpException {
-	try {
-	    return getInterfaceV1().getNextMIBEntry(s);
-	} catch (IOException ioe) {
-	    // throw new SnmpException("IOException getNextMIBEntry " + s);
-	    System.err.println("IOException getNextMIBEntry " + s);
-	} catch (SNMPBadValueException sbve) {
-	    // throw new SnmpException("SNMPBadValueException " + s);
-	    System.err.println("SNMPBadValueException getNextMIBEntry " + s);
-	} catch (SNMPGetException sge) {
-	    // throw new SnmpException("SNMPGetException getNextMIBEntry " + s);
-	    System.err.println("SNMPGetException getNextMIBEntry " + s);
+	requestID++;
+	SnmpMessage rsp = exchange(SnmpMessage.getNext(getBuffer(),
+			params.getVersion(), params.getCommunity(), requestID,
+			s), s);
+	if (rsp.getErrorStatus() != SNMPRequestException.NO_ERROR) {
+	    // noSuchName is how SNMPv1 reports the end of the MIB
+	    if (rsp.getErrorStatus()
+		    != SNMPRequestException.VALUE_NOT_AVAILABLE) {
+		System.err.println("SNMPGetException getNext " + s);
+	    }
+	    return null;
+	}
+	// SNMPv2 reports the end of the MIB as an endOfMibView value
+	if (rsp.size() == 0 || rsp.get(0).isException()) {
+	    return null;
 	}
-	return null;
+	return rsp.get(0).toSnmpObject(System.currentTimeMillis());
     }
 
     /**
      * Return the next SnmpObject after the given entry.
      *
+     * @param sno an SnmpObject naming the oid of interest
+     *
+     * @return an SnmpObject object, or null at the end of the MIB
+     *
+     * @throws SnmpException if an error occurs
+     */
+    public SnmpObject getNext(final SnmpObject sno) throws SnmpException {
+	return getNext(sno.getSnmpOid());
+    }
+
+    /**
+     * Return the SnmpObject corresponding to the given entry.
+     *
      * @param s a String naming the oid of interest
      *
      * @return an SnmpObject object
      *
      * @throws SnmpException if an error occurs
      */
-    public SnmpObject getNext(final String s) throws SnmpException {
-	return getSno(getNextMIBEntry(s));
+    public SnmpObject getValue(final String s) throws SnmpException {
+	return getValue(SnmpOid.valueOf(s));
     }
 
     /**
-     * Return the next SnmpObject after the given entry.
+     * Return the SnmpObject corresponding to the given entry.
      *
-     * @param sno an SnmpObject naming the oid of interest
+     * @param s the oid of interest
      *
      * @return an SnmpObject object
      *
      * @throws SnmpException if an error occurs
      */
-    public SnmpObject getNext(final SnmpObject sno) throws SnmpException {
-	return getNext(sno.toString());
+    public synchronized SnmpObject getValue(final SnmpOid s)
+	throws SnmpException {
+	requestID++;
+	SnmpMessage rsp = exchange(SnmpMessage.get(getBuffer(),
+			params.getVersion(), params.getCommunity(), requestID,
+			Collections.singletonList(s)), s);
+	if (rsp.getErrorStatus() != SNMPRequestException.NO_ERROR
+		|| rsp.size() == 0) {
+	    throw new SnmpException("SNMPGetException Retrieving " + s);
+	}
+	return rsp.get(0).toSnmpObject(System.currentTimeMillis());
     }
 
-    private SNMPVarBindList getMIBEntry(final String s) throws SnmpException {
-	try {
-	    return getInterfaceV1().getMIBEntry(s);
-	} catch (IOException ioe) {
-	    throw new SnmpException("IOException getMIBEntry Retrieving " + s);
-	} catch (SNMPBadValueException sbve) {
-	    throw new SnmpException("SNMPBadValueException Retrieving " + s);
-	} catch (SNMPGetException sbve) {
-	    throw new SnmpException("SNMPGetException Retrieving " + s);
+    /**
+     * Return the parameters describing how this SnmpController communicates
+     * with its server.
+     *
+     * @return the SnmpParams of this SnmpController
+     */
+    public SnmpParams getParams() {
+	return params;
+    }
+
+    /*
+     * Return the resolved address of the server, for those that talk to
+     * the server directly.
+     */
+    InetAddress getAddress() throws SnmpException {
+	if (savedException != null) {
+	    throw savedException;
+	}
+	return hostAddress;
+    }
+
+    /*
+     * Return the round trip time tracker for the server.
+     */
+    SnmpRtt getRtt() throws SnmpException {
+	if (savedException != null) {
+	    throw savedException;
 	}
+	return rtt;
     }
 
     /**
-     * Return the SnmpObject corresponding to the given entry.
+     * Return the SNMP version this SnmpController uses to communicate with
+     * its server.
+     *
+     * @return the SNMP version, as defined in SnmpParams
+     */
+    public int getVersion() {
+	return params.getVersion();
+    }
+
+    /**
+     * Set the upper limit on the number of repetitions requested in a single
+     * GETBULK request. The number actually requested adapts to the responses
+     * received, but will never exceed this.
+     *
+     * @param nmax the maximum number of repetitions
+     *
+     * @see #getMaxRepetitions
+     */
+    public synchronized void setMaxRepetitions(final int nmax) {
+	maxRepetitions = Math.max(1, nmax);
+	repetitions = Math.min(repetitions, maxRepetitions);
+    }
+
+    /**
+     * Return the upper limit on the number of repetitions requested in a
+     * single GETBULK request.
+     *
+     * @return the maximum number of repetitions
+     *
+     * @see #setMaxRepetitions
+     */
+    public int getMaxRepetitions() {
+	return maxRepetitions;
+    }
+
+    /**
+     * Return the SnmpObjects following the given entry, retrieved with a
+     * single SNMPv2c GETBULK request. The number of repetitions requested
+     * starts small, grows while the responses are complete, is cut back if
+     * the server reports the response would be too big, and shrinks to the
+     * number the server is willing to return if it truncates responses.
      *
      * @param s a String naming the oid of interest
      *
-     * @return an SnmpObject object
+     * @return a List of the SnmpObjects following the given oid, in order,
+     * which will be empty at the end of the MIB view
      *
      * @throws SnmpException if an error occurs
      */
-    public SnmpObject getValue(final String s) throws SnmpException {
-	return getSno(getMIBEntry(s));
+    public List<SnmpObject> getBulk(final String s) throws SnmpException {
+	return getBulk(SnmpOid.valueOf(s));
     }
 
-    private SnmpObject getSno(final SNMPVarBindList newVars) {
-	if (newVars == null) {
-	    return null;
+    /**
+     * Return the SnmpObjects following the given entry, retrieved with a
+     * single SNMPv2c GETBULK request.
+     *
+     * @param s the oid of interest
+     *
+     * @return a List of the SnmpObjects following the given oid, in order,
+     * which will be empty at the end of the MIB view
+     *
+     * @throws SnmpException if an error occurs
+     *
+     * @see #getBulk(String)
+     */
+    public synchronized List<SnmpObject> getBulk(final SnmpOid s)
+	throws SnmpException {
+	if (params.getVersion() != SnmpParams.SNMPV2) {
+	    throw new SnmpException("GETBULK requires SNMPv2c");
+	}
+	SnmpMessage rsp = bulkRequest(s);
+	while (rsp.getErrorStatus() == SNMPRequestException.VALUE_TOO_BIG) {
+	    if (repetitions == 1) {
+		throw new SnmpException("Response too big retrieving " + s);
+	    }
+	    repetitions = Math.max(1, repetitions / 2);
+	    rsp = bulkRequest(s);
+	}
+	if (rsp.getErrorStatus() != SNMPRequestException.NO_ERROR) {
+	    throw new SnmpException("GETBULK error "
+				+ rsp.getErrorStatus() + " retrieving " + s);
+	}
+	long timestamp = System.currentTimeMillis();
+	List<SnmpObject> lso = new ArrayList<>(rsp.size());
+	for (int i = 0; i < rsp.size(); i++) {
+	    SnmpMessage.VarBind vb = rsp.get(i);
+	    // the end of the MIB view
+	    if (vb.isException()) {
+		return lso;
+	    }
+	    lso.add(vb.toSnmpObject(timestamp));
+	}
+	if (lso.size() < repetitions) {
+	    // the server truncated the response, so ask for less next time
+	    repetitions = Math.max(1, lso.size());
+	} else {
+	    repetitions = Math.min(maxRepetitions, 2 * repetitions);
+	}
+	return lso;
+    }
+
+    /**
+     * Return the SnmpObjects following the given entry, retrieved with a
+     * single SNMPv2c GETBULK request.
+     *
+     * @param sno an SnmpObject naming the oid of interest
+     *
+     * @return a List of the SnmpObjects following the given oid, in order,
+     * which will be empty at the end of the MIB view
+     *
+     * @throws SnmpException if an error occurs
+     */
+    public List<SnmpObject> getBulk(final SnmpObject sno)
+	    throws SnmpException {
+	return getBulk(sno.getSnmpOid());
+    }
+
+    private SnmpMessage bulkRequest(final SnmpOid s) throws SnmpException {
+	requestID++;
+	return exchange(SnmpMessage.getBulk(getBuffer(), params.getVersion(),
+			params.getCommunity(), requestID, repetitions, s), s);
+    }
+
+    /**
+     * Return the SnmpObjects corresponding to the given entries. As many
+     * entries as will fit are requested in each PDU; if the server reports
+     * that a response would be too big, the request is split and the
+     * number of entries per PDU reduced for future requests, growing back
+     * again once enough requests of the reduced size have succeeded. Each
+     * SnmpObject is timestamped with the arrival of the response that
+     * contained it.
+     *
+     * @param oids a List of Strings naming the oids of interest
+     *
+     * @return a List of SnmpObjects, in the same order as the requested
+     * oids, with null entries for any oids that could not be retrieved
+     *
+     * @throws SnmpException if an error occurs
+     */
+    public List<SnmpObject> getValues(
+	    final List<String> oids) throws SnmpException {
+	List<SnmpOid> loids = new ArrayList<>(oids.size());
+	for (String s : oids) {
+	    loids.add(SnmpOid.valueOf(s));
+	}
+	return getOidValues(loids);
+    }
+
+    /**
+     * Return the SnmpObjects corresponding to the given entries, as for
+     * getValues(), for oids that have already been parsed.
+     *
+     * @param loids a List of the oids of interest
+     *
+     * @return a List of SnmpObjects, in the same order as the requested
+     * oids, with null entries for any oids that could not be retrieved
+     *
+     * @throws SnmpException if an error occurs
+     */
+    public synchronized List<SnmpObject> getOidValues(
+	    final List<SnmpOid> loids) throws SnmpException {
+	List<SnmpObject> lso = new ArrayList<>(loids.size());
+	int i = 0;
+	while (i < loids.size()) {
+	    int n = Math.min(batchSize, loids.size() - i);
+	    lso.addAll(getBatch(loids.subList(i, i + n)));
+	    i += n;
+	}
+	return lso;
+    }
+
+    private List<SnmpObject> getBatch(final List<SnmpOid> oids)
+	    throws SnmpException {
+	List<SnmpObject> lso = new ArrayList<>(oids.size());
+	if (oids.isEmpty()) {
+	    return lso;
+	}
+	requestID++;
+	SnmpMessage rsp = exchange(SnmpMessage.get(getBuffer(),
+			params.getVersion(), params.getCommunity(), requestID,
+			oids), oids.get(0));
+	long timestamp = System.currentTimeMillis();
+	int status = rsp.getErrorStatus();
+	if (status == SNMPRequestException.VALUE_TOO_BIG && oids.size() > 1) {
+	    int half = oids.size() / 2;
+	    batchSize = Math.min(batchSize, half);
+	    fullBatches = 0;
+	    lso.addAll(getBatch(oids.subList(0, half)));
+	    lso.addAll(getBatch(oids.subList(half, oids.size())));
+	    return lso;
+	}
+	int index = rsp.getErrorIndex() - 1;
+	if (status != SNMPRequestException.NO_ERROR) {
+	    if (index < 0 || index >= oids.size()) {
+		throw new SnmpException("SNMPGetException Retrieving "
+				+ oids.get(0));
+	    }
+	    /*
+	     * An SNMPv1 server fails the whole request if any entry is
+	     * missing, so retry without that entry.
+	     */
+	    lso.addAll(getBatch(oids.subList(0, index)));
+	    lso.add(null);
+	    lso.addAll(getBatch(oids.subList(index + 1, oids.size())));
+	    return lso;
+	}
+	for (int i = 0; i < oids.size(); i++) {
+	    if (i < rsp.size()) {
+		SnmpMessage.VarBind vb = rsp.get(i);
+		// SNMPv2 reports missing entries as exception values
+		lso.add(vb.isException() ? null : vb.toSnmpObject(timestamp));
+	    } else {
+		lso.add(null);
+	    }
+	}
+	// the response fitted, so try larger batches once that's routine
+	if (oids.size() == batchSize && batchSize < MAX_BATCH
+		&& ++fullBatches >= BATCH_GROWTH) {
+	    batchSize = Math.min(MAX_BATCH, 2 * batchSize);
+	    fullBatches = 0;
+	}
+	return lso;
+    }
+
+    /*
+     * Return the buffer to encode a request into, ready for use.
+     */
+    private ByteBuffer getBuffer() {
+	if (sendbuf == null) {
+	    sendbuf = ByteBuffer.allocate(MAX_DATAGRAM);
+	}
+	sendbuf.clear();
+	return sendbuf;
+    }
+
+    /*
+     * Send an encoded request, and wait for the response to it, retrying
+     * as the server's round trip time and retry budget allow. The response
+     * returned is only valid until the next request.
+     */
+    private SnmpMessage exchange(final ByteBuffer msg, final SnmpOid s)
+	    throws SnmpException {
+	try {
+	    DatagramSocket ds = getSocket();
+	    DatagramPacket dp = new DatagramPacket(msg.array(),
+				msg.position(), hostAddress, params.getPort());
+	    int attempt = 0;
+	    while (true) {
+		long start = System.nanoTime();
+		ds.send(dp);
+		SnmpMessage rsp = receive(ds,
+				start + 1000000L * rtt.getTimeout(attempt));
+		if (rsp != null) {
+		    rtt.response(System.nanoTime() - start, attempt);
+		    return rsp;
+		}
+		if (!rtt.retry(attempt, start)) {
+		    throw new SnmpException("Timeout retrieving " + s);
+		}
+		attempt++;
+	    }
+	} catch (IOException ioe) {
+	    throw new SnmpException("IOException retrieving " + s);
+	}
+    }
+
+    /*
+     * Wait until the deadline, from System.nanoTime(), for the response to
+     * the current request, returning null if it doesn't arrive in time.
+     * Anything else that arrives is discarded, without extending the wait.
+     */
+    private SnmpMessage receive(final DatagramSocket ds, final long deadline)
+	    throws IOException {
+	while (true) {
+	    long left = (deadline - System.nanoTime()) / 1000000L;
+	    if (left < 1) {
+		return null;
+	    }
+	    ds.setSoTimeout((int) left);
+	    recvpacket.setLength(recvbuf.length);
+	    try {
+		ds.receive(recvpacket);
+	    } catch (SocketTimeoutException ste) {
+		return null;
+	    }
+	    // discard anything that isn't from the server
+	    if (recvpacket.getPort() != params.getPort()
+		    || !hostAddress.equals(recvpacket.getAddress())) {
+		continue;
+	    }
+	    recvdata.clear();
+	    recvdata.limit(recvpacket.getLength());
+	    // or that we can't decode
+	    try {
+		response.decode(recvdata);
+	    } catch (SnmpException sne) {
+		continue;
+	    }
+	    // and any late responses to earlier requests
+	    if (response.getRequestID() == requestID) {
+		return response;
+	    }
+	}
+    }
+
+    /**
+     * Close the socket used by this SnmpController. It shouldn't be used
+     * afterwards. Controllers obtained from an SnmpControllerPool should
+     * be released to the pool rather than closed.
+     */
+    public synchronized void close() {
+	if (dsocket != null) {
+	    dsocket.close();
+	}
+	if (rtt != null) {
+	    SnmpRtt.release(new InetSocketAddress(hostAddress,
+						  params.getPort()));
+	    rtt = null;
+	}
+	savedException = new SnmpException("Controller closed.");
+    }
+
+    private DatagramSocket getSocket() throws SnmpException, SocketException {
+	if (savedException != null) {
+	    throw savedException;
+	}
+	if (dsocket == null) {
+	    dsocket = new DatagramSocket();
+	    recvbuf = new byte[MAX_DATAGRAM];
+	    recvdata = ByteBuffer.wrap(recvbuf);
+	    recvpacket = new DatagramPacket(recvbuf, recvbuf.length);
 	}
-	SNMPSequence pair = (SNMPSequence) newVars.getSNMPObjectAt(0);
-	SNMPObjectIdentifier snmpOID
-		= (SNMPObjectIdentifier) pair.getSNMPObjectAt(0);
-	return new SnmpObject(snmpOID, pair.getSNMPObjectAt(1));
+	return dsocket;
     }
 }
@@ -0,0 +1,200 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+package uk.co.petertribble.jangle;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * SnmpControllerPool shares SnmpControllers between everything talking to
+ * the same server with the same parameters, so that the server's address
+ * is only resolved, and its sockets only opened, once.
+ *
+ * Each controller also has an SnmpPoller, so that the same values are
+ * only polled once however many charts are showing them.
+ *
+ * Controllers are reference counted. A controller nobody is using is kept
+ * for a while in case it's wanted again, and then closed.
+ *
+ * @author Peter Tribble
+ */
+public final class SnmpControllerPool {
+
+    /*
+     * How long an unused controller is kept, in milliseconds.
+     */
+    private static final long IDLE_TIMEOUT = 60000;
+
+    private static SnmpControllerPool poolinstance;
+
+    private final Map<SnmpParams, Entry> controllers = new HashMap<>();
+    private Timer timer;
+
+    /*
+     * A pooled controller, with the number of users it has, and when it
+     * was last released. The controller is created by whoever first asks
+     * for it, outside the pool's lock, as finding the server may take a
+     * while, and anyone else asking meanwhile waits for it.
+     */
+    private static final class Entry {
+	final CompletableFuture<SnmpController> sc = new CompletableFuture<>();
+	SnmpPoller poller;
+	int refs;
+	long idleSince;
+    }
+
+    private SnmpControllerPool() {
+    }
+
+    /**
+     * Return the single instance of this SnmpControllerPool.
+     *
+     * @return the single instance of this SnmpControllerPool
+     */
+    public static synchronized SnmpControllerPool getInstance() {
+	if (poolinstance == null) {
+	    poolinstance = new SnmpControllerPool();
+	}
+	return poolinstance;
+    }
+
+    /**
+     * Return an SnmpController for the server described by the given
+     * parameters, creating one if necessary. Each call must be balanced by
+     * a call to release() once the controller is no longer needed. The
+     * pool isn't locked while a new controller looks up its server, so a
+     * slow server doesn't hold up anyone using other servers.
+     *
+     * @param params an SnmpParams with connection details
+     *
+     * @return a shared SnmpController for the given parameters
+     */
+    public SnmpController acquire(final SnmpParams params) {
+	Entry entry;
+	boolean creator = false;
+	synchronized (this) {
+	    entry = controllers.get(params);
+	    if (entry == null) {
+		entry = new Entry();
+		controllers.put(params, entry);
+		creator = true;
+	    }
+	    entry.refs++;
+	}
+	if (creator) {
+	    try {
+		entry.sc.complete(new SnmpController(params));
+	    } catch (RuntimeException e) {
+		synchronized (this) {
+		    controllers.remove(params);
+		}
+		entry.sc.completeExceptionally(e);
+		throw e;
+	    }
+	}
+	return entry.sc.join();
+    }
+
+    /*
+     * Return the pooled entry for the given controller, if it has one.
+     */
+    private Entry getEntry(final SnmpController sc) {
+	Entry entry = controllers.get(sc.getParams());
+	return entry == null || entry.sc.getNow(null) != sc ? null : entry;
+    }
+
+    /**
+     * Release an SnmpController obtained from acquire(). Once it has been
+     * unused for a while, it will be closed.
+     *
+     * @param sc the SnmpController to release
+     */
+    public synchronized void release(final SnmpController sc) {
+	Entry entry = getEntry(sc);
+	if (entry == null || entry.refs == 0) {
+	    return;
+	}
+	entry.refs--;
+	if (entry.refs == 0) {
+	    entry.idleSince = System.currentTimeMillis();
+	    if (timer == null) {
+		timer = new Timer("SnmpControllerPool", true);
+		timer.schedule(new Evictor(), IDLE_TIMEOUT, IDLE_TIMEOUT);
+	    }
+	}
+    }
+
+    /**
+     * Return the SnmpPoller for the server of an SnmpController obtained
+     * from acquire(), so that everything polling that server shares one.
+     * A controller that didn't come from this pool gets a poller of its
+     * own.
+     *
+     * @param sc the SnmpController to poll with
+     *
+     * @return an SnmpPoller using the given SnmpController
+     */
+    public synchronized SnmpPoller getPoller(final SnmpController sc) {
+	Entry entry = getEntry(sc);
+	if (entry == null) {
+	    return new SnmpPoller(sc);
+	}
+	if (entry.poller == null) {
+	    entry.poller = new SnmpPoller(sc);
+	}
+	return entry.poller;
+    }
+
+    /*
+     * Close and remove any controllers that have been unused for long
+     * enough, stopping the timer if there's nothing left to watch.
+     */
+    private synchronized void evict() {
+	long now = System.currentTimeMillis();
+	boolean idle = false;
+	Iterator<Entry> iter = controllers.values().iterator();
+	while (iter.hasNext()) {
+	    Entry entry = iter.next();
+	    if (entry.refs == 0) {
+		if (now - entry.idleSince >= IDLE_TIMEOUT) {
+		    entry.sc.join().close();
+		    iter.remove();
+		} else {
+		    idle = true;
+		}
+	    }
+	}
+	if (!idle) {
+	    timer.cancel();
+	    timer = null;
+	}
+    }
+
+    class Evictor extends TimerTask {
+	@Override
+	public void run() {
+	    evict();
+	}
+    }
+}
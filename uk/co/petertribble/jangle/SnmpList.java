@@ -21,18 +21,41 @@
 package uk.co.petertribble.jangle;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A class to hold a list of SnmpObjects retrieved from a server, and
  * utilities for retrieving subsets of that list.
  *
+ * The list is held in walk order, so a subtree is found by binary search.
+ * Siblings and cousins are looked up in indexes that are built the first
+ * time they're needed, so each query costs time proportional to the
+ * size of its result rather than that of the list.
+ *
  * @author Peter Tribble
  */
 public class SnmpList {
 
     private final SnmpController sc;
-    private List<SnmpObject> oidList;
+    private List<SnmpObject> oidList = new ArrayList<>();
+    // the entries with each parent
+    private Map<SnmpOid, List<SnmpObject>> siblingMap;
+    // the entries with each grandparent and instance
+    private Map<SnmpOid, List<SnmpObject>> cousinMap;
+    // tables that have been asked for, by entry
+    private final Map<SnmpOid, SnmpTable> tableMap = new HashMap<>();
+    private int window = SnmpPipelinedWalker.DEFAULT_WINDOW;
+    private int parallelism = 1;
+    // why the last walk stopped early, if it did
+    private SnmpException walkError;
 
     /**
      * Create a new SnmpList using the specified SnmpController.
@@ -44,25 +67,328 @@ public class SnmpList {
     }
 
     /**
-     * Retrieve the entire snmp tree.
+     * Set the number of GETNEXT requests that may be in flight at once
+     * when walking an SNMPv1 server. A window of 1 walks the tree one
+     * request at a time.
+     *
+     * @param nwindow the maximum number of requests in flight
+     */
+    public void setWindow(final int nwindow) {
+	window = Math.max(1, nwindow);
+    }
+
+    /**
+     * Set the number of partitions of the tree to walk concurrently. If
+     * greater than 1, a walk is split at the roots of the subtrees known
+     * to the SnmpMibManager, splitting the largest again until there are
+     * enough partitions, and that many partitions are walked at once,
+     * each with a single request in flight, so this is also the limit on
+     * the number of requests in flight to the server by this walk. For
+     * SNMPv2c, the requests of all walks of a server are also limited
+     * together, by the selector they share. For SNMPv1, the
+     * partitions are further split as the walk proceeds, as for a window.
+     * The default of 1 walks the tree as a single partition.
+     *
+     * @param nparallelism the number of partitions to walk concurrently
+     */
+    public void setParallelism(final int nparallelism) {
+	parallelism = Math.max(1, nparallelism);
+    }
+
+    /**
+     * Retrieve the snmp subtree rooted at the given OID. For SNMPv2c, this
+     * uses GETBULK requests to retrieve many entries per round trip; for
+     * SNMPv1, it keeps several GETNEXT requests in flight at once. The walk
+     * ends cleanly at the end of the subtree or of the MIB, and stops early
+     * if the server returns an OID that isn't after the previous one, in
+     * which case what was retrieved up to that point is returned, and the
+     * problem is reported by getWalkError().
      *
      * @param startOID the OID to start the walk from
      *
-     * @return a List of all SnmpObjects starting from the given oid
+     * @return a List of all SnmpObjects under the given oid
      *
      * @throws SnmpException if an error occurs
+     *
+     * @see #setParallelism
+     * @see #getWalkError
      */
     public List<SnmpObject> getList(final String startOID)
 	    throws SnmpException {
-	oidList = new ArrayList<>();
-	SnmpObject sno = sc.getNext(startOID);
-	while (sno != null) {
-	    oidList.add(sno);
-	    sno = sc.getNext(sno);
+	SnmpOid root = SnmpOid.valueOf(startOID);
+	setWalkError(null);
+	if (parallelism > 1 && sc.getVersion() == SnmpParams.SNMPV2) {
+	    oidList = walkParallel(startOID, root);
+	} else if (parallelism > 1) {
+	    List<String> starts = partition(root);
+	    SnmpPipelinedWalker walker
+		= new SnmpPipelinedWalker(sc, parallelism);
+	    oidList = walker.walk(startOID, starts.subList(1, starts.size()));
+	    setWalkError(walker.getWalkError());
+	} else if (sc.getVersion() != SnmpParams.SNMPV2 && window > 1) {
+	    SnmpPipelinedWalker walker = new SnmpPipelinedWalker(sc, window);
+	    oidList = walker.walk(startOID);
+	    setWalkError(walker.getWalkError());
+	} else {
+	    oidList = walk(sc, root, null, root);
 	}
+	siblingMap = null;
+	cousinMap = null;
+	tableMap.clear();
 	return oidList;
     }
 
+    /**
+     * Return why the last walk stopped before the end of the subtree, if
+     * the server returned an OID that wasn't after the previous one. Such
+     * a server is broken, and walking any further could loop forever, so
+     * the walk returns what it had retrieved up to that point.
+     *
+     * @return an SnmpException describing why the last walk is incomplete,
+     * or null if it completed normally
+     */
+    public synchronized SnmpException getWalkError() {
+	return walkError;
+    }
+
+    /*
+     * Partitions may be walked concurrently, so the first error found is
+     * the one kept.
+     */
+    private synchronized void setWalkError(final SnmpException sne) {
+	if (sne == null || walkError == null) {
+	    walkError = sne;
+	}
+    }
+
+    /*
+     * A partition of a walk, from its start up to the start of the next.
+     * The partition is split at the known children of node, and size is
+     * the known size of the subtree of node.
+     */
+    private static final class Partition {
+	final String start;
+	String node;
+	int size;
+
+	Partition(final String nstart, final String nnode, final int nsize) {
+	    start = nstart;
+	    node = nnode;
+	    size = nsize;
+	}
+    }
+
+    /*
+     * Split the subtree rooted at the given OID into partitions at the
+     * OIDs known to the SnmpMibManager, returning the OIDs the partitions
+     * start at, in walk order, starting with the root. The largest
+     * partition is split at the known children of its subtree, until
+     * there are at least parallelism partitions, or the largest has no
+     * known children. The first child stays in the partition being split,
+     * which holds little else, so a subtree with a single child, such as
+     * mgmt, is split at the children of that child.
+     */
+    private List<String> partition(final SnmpOid root) {
+	SnmpMibManager smm = SnmpMibManager.getInstance();
+	List<Partition> parts = new ArrayList<>();
+	parts.add(new Partition(root.toString(), root.toString(),
+				smm.getSubtreeSize(root)));
+	while (parts.size() < parallelism) {
+	    int largest = 0;
+	    for (int i = 1; i < parts.size(); i++) {
+		if (parts.get(i).size > parts.get(largest).size) {
+		    largest = i;
+		}
+	    }
+	    Partition part = parts.get(largest);
+	    List<String> children = smm.getChildOIDs(part.node);
+	    if (children.isEmpty()) {
+		break;
+	    }
+	    // the children lie between the partition and the next one
+	    for (int i = 0; i < children.size(); i++) {
+		String child = children.get(i);
+		int size;
+		try {
+		    size = smm.getSubtreeSize(SnmpOid.valueOf(child));
+		} catch (SnmpException sne) {
+		    size = 0;
+		}
+		if (i == 0) {
+		    part.node = child;
+		    part.size = size;
+		} else {
+		    parts.add(largest + i, new Partition(child, child, size));
+		}
+	    }
+	}
+	List<String> starts = new ArrayList<>(parts.size());
+	for (Partition part : parts) {
+	    starts.add(part.start);
+	}
+	return starts;
+    }
+
+    /*
+     * Walk the subtree in partitions, as split by partition(), each
+     * partition running from its start up to the next, and concatenate
+     * the results in order. The partitions are walked with
+     * asynchronous GETBULK requests to the server the caller's controller
+     * has already found, so no more sockets are opened, and at most
+     * parallelism partitions are walked at once. The shared selector
+     * also limits the requests in flight to each server, however many
+     * walks are running.
+     */
+    private List<SnmpObject> walkParallel(final String startOID,
+		final SnmpOid root) throws SnmpException {
+	List<String> starts = partition(root);
+	final int n = starts.size();
+	final SnmpAsyncController ac = new SnmpAsyncController(sc);
+	final int repetitions = sc.getMaxRepetitions();
+	final List<SnmpOid> froms = new ArrayList<>(n);
+	for (String s : starts) {
+	    froms.add(SnmpOid.valueOf(s));
+	}
+	final List<CompletableFuture<List<SnmpObject>>> parts
+	    = new ArrayList<>(n);
+	for (int i = 0; i < n; i++) {
+	    parts.add(new CompletableFuture<>());
+	}
+	final AtomicInteger next = new AtomicInteger();
+	// set to stop the partitions still running if the walk fails
+	final AtomicBoolean cancelled = new AtomicBoolean();
+	// each partition starts the next one waiting when it finishes
+	Runnable launcher = new Runnable() {
+	    @Override
+	    public void run() {
+		int i = next.getAndIncrement();
+		if (i >= n) {
+		    return;
+		}
+		SnmpOid upper = i + 1 < n ? froms.get(i + 1) : null;
+		walkAsync(ac, froms.get(i), upper, root, repetitions,
+			cancelled, new ArrayList<>()).whenComplete((lso, e) -> {
+			    if (e == null) {
+				parts.get(i).complete(lso);
+				run();
+			    } else {
+				// give up, stopping those still running
+				next.set(n);
+				cancelled.set(true);
+				for (CompletableFuture<List<SnmpObject>> part
+					 : parts) {
+				    part.completeExceptionally(e);
+				}
+			    }
+			});
+	    }
+	};
+	for (int i = 0; i < Math.min(parallelism, n); i++) {
+	    launcher.run();
+	}
+	try {
+	    List<SnmpObject> lso = new ArrayList<>();
+	    for (CompletableFuture<List<SnmpObject>> part : parts) {
+		lso.addAll(part.get());
+	    }
+	    return lso;
+	} catch (ExecutionException ee) {
+	    Throwable t = ee.getCause();
+	    if (t instanceof CompletionException) {
+		t = t.getCause();
+	    }
+	    if (t instanceof SnmpException) {
+		throw (SnmpException) t;
+	    }
+	    throw new SnmpException("Error walking " + startOID);
+	} catch (InterruptedException ie) {
+	    Thread.currentThread().interrupt();
+	    next.set(n);
+	    cancelled.set(true);
+	    throw new SnmpException("Interrupted walking " + startOID);
+	}
+    }
+
+    /*
+     * Walk from the given OID with asynchronous GETBULK requests, one at a
+     * time, until we pass the upper bound or leave the subtree, adding
+     * what's found to the given list. No more requests are sent once the
+     * walk has been cancelled.
+     */
+    private CompletableFuture<List<SnmpObject>> walkAsync(
+		final SnmpAsyncController ac, final SnmpOid from,
+		final SnmpOid upper, final SnmpOid root, final int repetitions,
+		final AtomicBoolean cancelled, final List<SnmpObject> lso) {
+	if (cancelled.get()) {
+	    return CompletableFuture.failedFuture(
+			new SnmpException("Walk cancelled"));
+	}
+	return ac.getBulk(from, repetitions).thenCompose(batch ->
+		acceptAll(lso, batch, upper, root)
+		? walkAsync(ac, batch.get(batch.size() - 1).getSnmpOid(),
+			upper, root, repetitions, cancelled, lso)
+		: CompletableFuture.completedFuture(lso));
+    }
+
+    /*
+     * Walk from the given OID, with one request in flight at a time, until
+     * we pass the upper bound (inclusive, null for no bound) or leave the
+     * subtree rooted at root.
+     */
+    private List<SnmpObject> walk(final SnmpController c,
+		final SnmpOid from, final SnmpOid upper, final SnmpOid root)
+	    throws SnmpException {
+	List<SnmpObject> lso = new ArrayList<>();
+	if (c.getVersion() == SnmpParams.SNMPV2) {
+	    List<SnmpObject> batch = c.getBulk(from);
+	    while (acceptAll(lso, batch, upper, root)) {
+		batch = c.getBulk(batch.get(batch.size() - 1));
+	    }
+	} else {
+	    SnmpObject sno = c.getNext(from);
+	    while (sno != null && accept(lso, sno, upper, root)) {
+		sno = c.getNext(sno);
+	    }
+	}
+	return lso;
+    }
+
+    /*
+     * Add a batch of SnmpObjects to the list, as long as they're acceptable.
+     * Returns false if the walk should stop.
+     */
+    private boolean acceptAll(final List<SnmpObject> lso,
+		final List<SnmpObject> batch, final SnmpOid upper,
+		final SnmpOid root) {
+	for (SnmpObject sno : batch) {
+	    if (!accept(lso, sno, upper, root)) {
+		return false;
+	    }
+	}
+	return !batch.isEmpty();
+    }
+
+    /*
+     * Add an SnmpObject to the list if it's still within the range being
+     * walked, and follows the previous entry. Returns false if the walk
+     * should stop.
+     */
+    private boolean accept(final List<SnmpObject> lso,
+		final SnmpObject sno, final SnmpOid upper, final SnmpOid root) {
+	SnmpOid oid = sno.getSnmpOid();
+	if (!oid.isInSubtree(root)
+		|| upper != null && oid.compareTo(upper) > 0) {
+	    return false;
+	}
+	if (!lso.isEmpty() && oid.compareTo(
+		lso.get(lso.size() - 1).getSnmpOid()) <= 0) {
+	    setWalkError(new SnmpException("OID not increasing: " + oid));
+	    return false;
+	}
+	lso.add(sno);
+	return true;
+    }
+
     /**
      * Return the siblings of the given OID from the given List. Siblings are
      * other instances that have the same parent.
@@ -72,16 +398,38 @@ public class SnmpList {
      * @return the List of siblings of the given oid
      */
     public List<SnmpObject> getSiblings(final String oid) {
-	List<SnmpObject> lso = new ArrayList<>();
-	String sparent = SnmpUtil.getParentOID(oid);
-	if (sparent != null) {
+	try {
+	    return getSiblings(SnmpOid.valueOf(oid));
+	} catch (SnmpException sne) {
+	    return Collections.emptyList();
+	}
+    }
+
+    /**
+     * Return the siblings of the given OID from the given List. Siblings are
+     * other instances that have the same parent.
+     *
+     * @param oid an OID to match for siblings
+     *
+     * @return the List of siblings of the given oid
+     */
+    public List<SnmpObject> getSiblings(final SnmpOid oid) {
+	SnmpOid sparent = oid.getParent();
+	if (sparent == null) {
+	    return Collections.emptyList();
+	}
+	if (siblingMap == null) {
+	    siblingMap = new HashMap<>();
 	    for (SnmpObject sno : oidList) {
-		if (sparent.equals(SnmpUtil.getParentOID(sno.toString()))) {
-		    lso.add(sno);
+		SnmpOid p = sno.getSnmpOid().getParent();
+		if (p != null) {
+		    siblingMap.computeIfAbsent(p, k -> new ArrayList<>())
+			.add(sno);
 		}
 	    }
 	}
-	return lso;
+	return Collections.unmodifiableList(
+		siblingMap.getOrDefault(sparent, Collections.emptyList()));
     }
 
     /**
@@ -93,25 +441,107 @@ public class SnmpList {
      * @return the List of cousins of the given oid
      */
     public List<SnmpObject> getCousins(final String oid) {
-	List<SnmpObject> lso = new ArrayList<>();
-	String sinst = getOIDinstance(oid);
-	String sgparent = SnmpUtil.getParentOID(SnmpUtil.getParentOID(oid));
-	if (sgparent != null) {
+	try {
+	    return getCousins(SnmpOid.valueOf(oid));
+	} catch (SnmpException sne) {
+	    return Collections.emptyList();
+	}
+    }
+
+    /**
+     * Return the cousin of the given OID from the given List. Cousins are
+     * identical instances that have the same grandparent.
+     *
+     * @param oid an OID to match for cousins
+     *
+     * @return the List of cousins of the given oid
+     */
+    public List<SnmpObject> getCousins(final SnmpOid oid) {
+	if (oid.size() < 3) {
+	    return Collections.emptyList();
+	}
+	if (cousinMap == null) {
+	    cousinMap = new HashMap<>();
 	    for (SnmpObject sno : oidList) {
-		String s = sno.toString();
-		if (sgparent.equals(
-			SnmpUtil.getParentOID(SnmpUtil.getParentOID(s)))
-				    && sinst.equals(getOIDinstance(s))) {
-		    lso.add(sno);
+		SnmpOid s = sno.getSnmpOid();
+		if (s.size() >= 3) {
+		    cousinMap.computeIfAbsent(cousinKey(s),
+				k -> new ArrayList<>()).add(sno);
 		}
 	    }
 	}
-	return lso;
+	return Collections.unmodifiableList(
+		cousinMap.getOrDefault(cousinKey(oid),
+				Collections.emptyList()));
+    }
+
+    /*
+     * Cousins share their grandparent and instance, so the key is the
+     * grandparent with the instance appended.
+     */
+    private static SnmpOid cousinKey(final SnmpOid oid) {
+	return oid.getPrefix(oid.size() - 2).getChild(oid.getInstance());
+    }
+
+    /**
+     * Return the entries in the subtree rooted at the given OID, in walk
+     * order.
+     *
+     * @param oid the root of the subtree
+     *
+     * @return the List of entries in the subtree rooted at the given oid
+     */
+    public List<SnmpObject> getSubtree(final SnmpOid oid) {
+	int from = lowerBound(oid);
+	int to = from;
+	while (to < oidList.size()
+		&& oidList.get(to).getSnmpOid().isInSubtree(oid)) {
+	    to++;
+	}
+	return Collections.unmodifiableList(oidList.subList(from, to));
     }
 
-    // just get the instance
-    private String getOIDinstance(final String s) {
-	int i = s.lastIndexOf('.');
-	return i < 0 ? null : s.substring(i + 1);
+    /**
+     * Return the table with the given entry OID, built from the subtree
+     * rooted at that OID. Tables are saved, so asking for the same table
+     * again is cheap.
+     *
+     * @param oid the OID of the table entry
+     *
+     * @return the SnmpTable for the given entry
+     */
+    public SnmpTable getTable(final SnmpOid oid) {
+	return tableMap.computeIfAbsent(oid,
+			k -> new SnmpTable(k, getSubtree(k)));
+    }
+
+    /**
+     * Return the entry with the given OID.
+     *
+     * @param oid the OID of the entry
+     *
+     * @return the entry with the given OID, or null if there isn't one
+     */
+    public SnmpObject get(final SnmpOid oid) {
+	int i = lowerBound(oid);
+	return i < oidList.size() && oidList.get(i).getSnmpOid().equals(oid)
+	    ? oidList.get(i) : null;
+    }
+
+    /*
+     * The index of the first entry that isn't before the given oid.
+     */
+    private int lowerBound(final SnmpOid oid) {
+	int lo = 0;
+	int hi = oidList.size();
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (oidList.get(mid).getSnmpOid().compareTo(oid) < 0) {
+		lo = mid + 1;
+	    } else {
+		hi = mid;
+	    }
+	}
+	return lo;
     }
 }
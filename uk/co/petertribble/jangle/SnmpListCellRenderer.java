@@ -40,7 +40,9 @@ public final class SnmpListCellRenderer extends DefaultListCellRenderer {
 						final int index,
 						final boolean isSelected,
 						final boolean cellHasFocus) {
-	setText(SnmpMibManager.getInstance().prettifyOID(value.toString()));
+	setText(value instanceof SnmpObject
+		? SnmpMibManager.getInstance().prettifyOID((SnmpObject) value)
+		: SnmpMibManager.getInstance().prettifyOID(value.toString()));
 	return this;
     }
 }
@@ -0,0 +1,704 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+package uk.co.petertribble.jangle;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import snmp.SNMPBadValueException;
+import snmp.SNMPBitString;
+import snmp.SNMPCounter32;
+import snmp.SNMPCounter64;
+import snmp.SNMPGauge32;
+import snmp.SNMPIPAddress;
+import snmp.SNMPInteger;
+import snmp.SNMPNSAPAddress;
+import snmp.SNMPNull;
+import snmp.SNMPObject;
+import snmp.SNMPObjectIdentifier;
+import snmp.SNMPOctetString;
+import snmp.SNMPTimeTicks;
+import snmp.SNMPUInteger32;
+import snmp.SNMPUnknownObject;
+
+/**
+ * Encode and decode snmp messages directly in a ByteBuffer, for the
+ * requests we send ourselves.
+ *
+ * Requests are encoded straight into a buffer, which may be reused. An
+ * SnmpMessage decodes a response in place, recording where each part of it
+ * is, and the varbinds are read through a single VarBind that is moved
+ * from one to the next, so that checking a response allocates nothing.
+ * Only the entries that are kept need to be turned into SnmpObjects. A
+ * decoded SnmpMessage is only valid until its buffer is reused.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpMessage {
+
+    /**
+     * The PDU type of a GET request.
+     */
+    static final byte GET = (byte) 0xa0;
+    /**
+     * The PDU type of a GETNEXT request.
+     */
+    static final byte GETNEXT = (byte) 0xa1;
+    /**
+     * The PDU type of a GETBULK request.
+     */
+    static final byte GETBULK = (byte) 0xa5;
+
+    /*
+     * The tags of the integer types, which SnmpObject can hold as a long.
+     */
+    static final byte INTEGER = 0x02;
+    static final byte COUNTER32 = 0x41;
+    static final byte GAUGE32 = 0x42;
+    static final byte TIMETICKS = 0x43;
+    static final byte COUNTER64 = 0x46;
+    static final byte UINTEGER32 = 0x47;
+
+    private static final byte BITSTRING = 0x03;
+    private static final byte OCTETSTRING = 0x04;
+    private static final byte NULL = 0x05;
+    private static final byte OID = 0x06;
+    private static final byte SEQUENCE = 0x30;
+    private static final byte IPADDRESS = 0x40;
+    private static final byte NSAPADDRESS = 0x45;
+    /*
+     * The SNMPv2 exception values noSuchObject, noSuchInstance, and
+     * endOfMibView.
+     */
+    private static final byte NOSUCHOBJECT = (byte) 0x80;
+    private static final byte ENDOFMIBVIEW = (byte) 0x82;
+
+    private ByteBuffer data;
+    private int requestID;
+    private int errorStatus;
+    private int errorIndex;
+    private int count;
+    /*
+     * Where each varbind's oid and value are in the buffer.
+     */
+    private int[] oidPos = new int[16];
+    private int[] oidLen = new int[16];
+    private int[] valPos = new int[16];
+    private int[] valLen = new int[16];
+    private byte[] valTag = new byte[16];
+    private final VarBind varbind = new VarBind();
+
+    /*
+     * The position reached while decoding, and the tag and length of the
+     * last header read.
+     */
+    private int pos;
+    private byte tag;
+    private int len;
+
+    /**
+     * Encode a GET request for the given oids.
+     *
+     * @param buf the buffer to encode into, or null to allocate one
+     * @param version the snmp version of the message
+     * @param community the community string to send
+     * @param requestID the request id of the message
+     * @param oids the oids to retrieve
+     *
+     * @return the buffer, positioned after the message
+     */
+    static ByteBuffer get(final ByteBuffer buf, final int version,
+			final String community, final int requestID,
+			final List<SnmpOid> oids) {
+	return request(buf, GET, version, community, requestID, 0, 0, oids);
+    }
+
+    /**
+     * Encode a GETNEXT request for the given oid.
+     *
+     * @param buf the buffer to encode into, or null to allocate one
+     * @param version the snmp version of the message
+     * @param community the community string to send
+     * @param requestID the request id of the message
+     * @param oid the oid to retrieve the successor of
+     *
+     * @return the buffer, positioned after the message
+     */
+    static ByteBuffer getNext(final ByteBuffer buf, final int version,
+			final String community, final int requestID,
+			final SnmpOid oid) {
+	return request(buf, GETNEXT, version, community, requestID, 0, 0,
+		Collections.singletonList(oid));
+    }
+
+    /**
+     * Encode a GETBULK request for the given oid.
+     *
+     * @param buf the buffer to encode into, or null to allocate one
+     * @param version the snmp version of the message
+     * @param community the community string to send
+     * @param requestID the request id of the message
+     * @param maxRepetitions the maximum number of repetitions requested
+     * @param oid the oid to start from
+     *
+     * @return the buffer, positioned after the message
+     */
+    static ByteBuffer getBulk(final ByteBuffer buf, final int version,
+			final String community, final int requestID,
+			final int maxRepetitions, final SnmpOid oid) {
+	return request(buf, GETBULK, version, community, requestID, 0,
+		maxRepetitions, Collections.singletonList(oid));
+    }
+
+    /*
+     * Encode a request. The lengths are all worked out first, so the
+     * message can be written out in one pass. For GETBULK, the error status
+     * and index fields hold the non-repeaters and max-repetitions.
+     */
+    private static ByteBuffer request(final ByteBuffer nbuf, final byte type,
+			final int version, final String community,
+			final int requestID, final int field1,
+			final int field2, final List<SnmpOid> oids) {
+	byte[] comm = community.getBytes(StandardCharsets.UTF_8);
+	int vblen = 0;
+	for (SnmpOid oid : oids) {
+	    vblen += tlvLength(tlvLength(encodeOID(oid, null)) + 2);
+	}
+	int pdulen = intLength(requestID) + intLength(field1)
+	    + intLength(field2) + tlvLength(vblen);
+	int msglen = intLength(version) + tlvLength(comm.length)
+	    + tlvLength(pdulen);
+	ByteBuffer buf = nbuf == null
+	    ? ByteBuffer.allocate(tlvLength(msglen)) : nbuf;
+	putHeader(buf, SEQUENCE, msglen);
+	putInt(buf, version);
+	putHeader(buf, OCTETSTRING, comm.length);
+	buf.put(comm);
+	putHeader(buf, type, pdulen);
+	putInt(buf, requestID);
+	putInt(buf, field1);
+	putInt(buf, field2);
+	putHeader(buf, SEQUENCE, vblen);
+	for (SnmpOid oid : oids) {
+	    int oidlen = encodeOID(oid, null);
+	    putHeader(buf, SEQUENCE, tlvLength(oidlen) + 2);
+	    putHeader(buf, OID, oidlen);
+	    encodeOID(oid, buf);
+	    buf.put(NULL);
+	    buf.put((byte) 0);
+	}
+	return buf;
+    }
+
+    /*
+     * The length of a TLV with contents of the given length.
+     */
+    private static int tlvLength(final int length) {
+	if (length < 0x80) {
+	    return 2 + length;
+	}
+	return length < 0x100 ? 3 + length : 4 + length;
+    }
+
+    private static void putHeader(final ByteBuffer buf, final byte ntag,
+			final int length) {
+	buf.put(ntag);
+	if (length < 0x80) {
+	    buf.put((byte) length);
+	} else if (length < 0x100) {
+	    buf.put((byte) 0x81);
+	    buf.put((byte) length);
+	} else {
+	    buf.put((byte) 0x82);
+	    buf.put((byte) (length >> 8));
+	    buf.put((byte) length);
+	}
+    }
+
+    /*
+     * The length of an encoded INTEGER, in the fewest bytes that will hold
+     * it in two's complement.
+     */
+    private static int intLength(final int value) {
+	int n = 1;
+	while (n < 4 && (value >> (8 * n - 1)) != 0
+		&& (value >> (8 * n - 1)) != -1) {
+	    n++;
+	}
+	return 2 + n;
+    }
+
+    private static void putInt(final ByteBuffer buf, final int value) {
+	int n = intLength(value) - 2;
+	buf.put(INTEGER);
+	buf.put((byte) n);
+	for (int i = n - 1; i >= 0; i--) {
+	    buf.put((byte) (value >> (8 * i)));
+	}
+    }
+
+    /*
+     * Encode the arcs of an oid, returning the length of the encoding. If
+     * the buffer is null, the length is calculated without writing
+     * anything. The first two arcs are combined into one.
+     */
+    private static int encodeOID(final SnmpOid oid, final ByteBuffer buf) {
+	int n = oid.size();
+	// a lone first arc
+	if (n == 1) {
+	    return putSubid(buf, 40 * oid.getArc(0));
+	}
+	int length = putSubid(buf, 40 * oid.getArc(0) + oid.getArc(1));
+	for (int i = 2; i < n; i++) {
+	    length += putSubid(buf, oid.getArc(i));
+	}
+	return length;
+    }
+
+    /*
+     * Write out a single subidentifier, 7 bits per byte, returning the
+     * number of bytes needed.
+     */
+    private static int putSubid(final ByteBuffer buf, final long value) {
+	int n = 1;
+	while (n < 10 && (value >>> (7 * n)) != 0) {
+	    n++;
+	}
+	if (buf != null) {
+	    for (int i = n - 1; i > 0; i--) {
+		buf.put((byte) (0x80 | (value >>> (7 * i))));
+	    }
+	    buf.put((byte) (value & 0x7f));
+	}
+	return n;
+    }
+
+    /**
+     * Decode the response held in the given buffer, between its position
+     * and limit. The buffer mustn't be modified while this SnmpMessage is
+     * in use.
+     *
+     * @param buf the buffer holding the response
+     *
+     * @throws SnmpException if the response is malformed
+     */
+    void decode(final ByteBuffer buf) throws SnmpException {
+	data = buf;
+	count = 0;
+	pos = buf.position();
+	int end = buf.limit();
+	try {
+	    end = header(SEQUENCE, end);
+	    header(INTEGER, end);
+	    pos += len;
+	    header(OCTETSTRING, end);
+	    pos += len;
+	    readHeader(end);
+	    end = pos + len;
+	    requestID = (int) readInt(end);
+	    errorStatus = (int) readInt(end);
+	    errorIndex = (int) readInt(end);
+	    end = header(SEQUENCE, end);
+	    while (pos < end) {
+		int vbend = header(SEQUENCE, end);
+		header(OID, vbend);
+		if (len == 0) {
+		    throw new SnmpException("Malformed response");
+		}
+		if (count == oidPos.length) {
+		    grow();
+		}
+		oidPos[count] = pos;
+		oidLen[count] = len;
+		pos += len;
+		readHeader(vbend);
+		valTag[count] = tag;
+		valPos[count] = pos;
+		valLen[count] = len;
+		pos = vbend;
+		count++;
+	    }
+	} catch (IndexOutOfBoundsException ioobe) {
+	    throw new SnmpException("Malformed response");
+	}
+    }
+
+    private void grow() {
+	int n = 2 * count;
+	oidPos = Arrays.copyOf(oidPos, n);
+	oidLen = Arrays.copyOf(oidLen, n);
+	valPos = Arrays.copyOf(valPos, n);
+	valLen = Arrays.copyOf(valLen, n);
+	valTag = Arrays.copyOf(valTag, n);
+    }
+
+    /*
+     * Read a header, which must have the given tag, returning the end of
+     * its contents.
+     */
+    private int header(final byte expected, final int end)
+	    throws SnmpException {
+	readHeader(end);
+	if (tag != expected) {
+	    throw new SnmpException("Malformed response");
+	}
+	return pos + len;
+    }
+
+    private void readHeader(final int end) throws SnmpException {
+	if (pos + 2 > end) {
+	    throw new SnmpException("Malformed response");
+	}
+	tag = data.get(pos++);
+	len = data.get(pos++) & 0xff;
+	if (len > 0x7f) {
+	    int nbytes = len & 0x7f;
+	    if (nbytes == 0 || nbytes > 3 || pos + nbytes > end) {
+		throw new SnmpException("Malformed response");
+	    }
+	    len = 0;
+	    for (int i = 0; i < nbytes; i++) {
+		len = (len << 8) | (data.get(pos++) & 0xff);
+	    }
+	}
+	if (pos + len > end) {
+	    throw new SnmpException("Malformed response");
+	}
+    }
+
+    private long readInt(final int end) throws SnmpException {
+	header(INTEGER, end);
+	if (len == 0 || len > 8) {
+	    throw new SnmpException("Malformed response");
+	}
+	long value = getSigned(pos, len);
+	pos += len;
+	return value;
+    }
+
+    private long getSigned(final int p, final int n) {
+	long value = data.get(p);
+	for (int i = 1; i < n; i++) {
+	    value = (value << 8) | (data.get(p + i) & 0xff);
+	}
+	return value;
+    }
+
+    private long getUnsigned(final int p, final int n) {
+	long value = 0;
+	for (int i = 0; i < n; i++) {
+	    value = (value << 8) | (data.get(p + i) & 0xff);
+	}
+	return value;
+    }
+
+    /**
+     * Return the request id of the decoded response.
+     *
+     * @return the request id
+     */
+    int getRequestID() {
+	return requestID;
+    }
+
+    /**
+     * Return the error status of the decoded response.
+     *
+     * @return the error status
+     */
+    int getErrorStatus() {
+	return errorStatus;
+    }
+
+    /**
+     * Return the error index of the decoded response, which counts from 1.
+     *
+     * @return the error index
+     */
+    int getErrorIndex() {
+	return errorIndex;
+    }
+
+    /**
+     * Return the number of varbinds in the decoded response.
+     *
+     * @return the number of varbinds
+     */
+    int size() {
+	return count;
+    }
+
+    /**
+     * Return a view of the given varbind. The same VarBind is returned
+     * every time, so is only valid until the next call.
+     *
+     * @param i the index of the varbind, counting from 0
+     *
+     * @return a view of the varbind
+     */
+    VarBind get(final int i) {
+	varbind.index = i;
+	return varbind;
+    }
+
+    /**
+     * A view of one varbind of a decoded response.
+     */
+    final class VarBind {
+
+	private int index;
+
+	/**
+	 * Compare the oid of this varbind with the given oid, in walk order.
+	 *
+	 * @param oid the oid to compare with
+	 *
+	 * @return a negative integer, zero, or a positive integer as this
+	 * oid is less than, equal to, or greater than the given oid
+	 */
+	int compareOID(final SnmpOid oid) {
+	    return compareOID(oid, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Determine whether the oid of this varbind lies within the subtree
+	 * rooted at the given oid.
+	 *
+	 * @param root the root of the subtree
+	 *
+	 * @return true if this oid lies within the subtree
+	 */
+	boolean isInSubtree(final SnmpOid root) {
+	    return compareOID(root, root.size()) == 0;
+	}
+
+	/*
+	 * Compare no more than the first max components of the oids.
+	 */
+	private int compareOID(final SnmpOid oid, final int max) {
+	    int limit = Math.min(max, oid.size());
+	    int p = oidPos[index];
+	    int end = p + oidLen[index];
+	    int ncomp = 0;
+	    while (p < end && ncomp < max) {
+		long value = 0;
+		byte b;
+		do {
+		    b = data.get(p++);
+		    value = (value << 7) | (b & 0x7f);
+		} while ((b & 0x80) != 0 && p < end);
+		if (ncomp == 0) {
+		    long first = value < 40 ? 0 : value < 80 ? 1 : 2;
+		    if (ncomp == limit) {
+			return 1;
+		    }
+		    long arc = oid.getArc(0);
+		    if (first != arc) {
+			return first < arc ? -1 : 1;
+		    }
+		    ncomp++;
+		    if (ncomp == max) {
+			break;
+		    }
+		    value -= 40 * first;
+		}
+		if (ncomp == limit) {
+		    return 1;
+		}
+		long arc = oid.getArc(ncomp);
+		if (value != arc) {
+		    return value < arc ? -1 : 1;
+		}
+		ncomp++;
+	    }
+	    return ncomp - limit;
+	}
+
+	/**
+	 * Return the oid of this varbind.
+	 *
+	 * @return the oid
+	 */
+	SnmpOid getOID() {
+	    return decodeOID(oidPos[index], oidLen[index]);
+	}
+
+	/**
+	 * Return whether the value of this varbind is one of the SNMPv2
+	 * exceptions, noSuchObject, noSuchInstance, or endOfMibView.
+	 *
+	 * @return true if the value is an exception
+	 */
+	boolean isException() {
+	    byte t = valTag[index];
+	    return t >= NOSUCHOBJECT && t <= ENDOFMIBVIEW;
+	}
+
+	/**
+	 * Return the value of this varbind, as the snmp library would have
+	 * decoded it.
+	 *
+	 * @return the value
+	 */
+	SNMPObject getValue() {
+	    int p = valPos[index];
+	    int n = valLen[index];
+	    byte t = valTag[index];
+	    try {
+		switch (t) {
+		case INTEGER:
+		    if (n == 0) {
+			return new SNMPInteger(0);
+		    }
+		    return n <= 8 ? new SNMPInteger(getSigned(p, n))
+			: new SNMPInteger(new BigInteger(getBytes(p, n)));
+		case COUNTER32:
+		    return unsigned(new SNMPCounter32(), getUnsigned(p, n));
+		case GAUGE32:
+		    return new SNMPGauge32(getUnsigned(p, n));
+		case TIMETICKS:
+		    return new SNMPTimeTicks(getUnsigned(p, n));
+		case UINTEGER32:
+		    return unsigned(new SNMPUInteger32(), getUnsigned(p, n));
+		case COUNTER64:
+		    // any leading zero bytes are simply shifted out
+		    return unsigned(new SNMPCounter64(), getUnsigned(p, n));
+		case OCTETSTRING:
+		    return new SNMPOctetString(getBytes(p, n));
+		case BITSTRING:
+		    return new SNMPBitString(getBytes(p, n));
+		case IPADDRESS:
+		    return new SNMPIPAddress(getBytes(p, n));
+		case NSAPADDRESS:
+		    return new SNMPNSAPAddress(getBytes(p, n));
+		case OID:
+		    return n == 0 ? new SNMPObjectIdentifier()
+			: new SNMPObjectIdentifier(
+				decodeOID(p, n).toLongArray());
+		case NULL:
+		    return new SNMPNull();
+		default:
+		    return new SNMPUnknownObject(getBytes(p, n));
+		}
+	    } catch (SNMPBadValueException sbve) {
+		return new SNMPUnknownObject(getBytes(p, n));
+	    }
+	}
+
+	/**
+	 * Return this varbind as an SnmpObject.
+	 *
+	 * @param timestamp the time the value was retrieved, in
+	 * milliseconds since the epoch
+	 *
+	 * @return a new SnmpObject
+	 */
+	SnmpObject toSnmpObject(final long timestamp) {
+	    SnmpOid soid = getOID();
+	    byte t = valTag[index];
+	    int n = valLen[index];
+	    switch (t) {
+	    case INTEGER:
+		if (n > 8) {
+		    break;
+		}
+		return new SnmpObject(soid, t,
+			n == 0 ? 0 : getSigned(valPos[index], n), timestamp);
+	    case COUNTER32:
+	    case GAUGE32:
+	    case TIMETICKS:
+	    case UINTEGER32:
+	    case COUNTER64:
+		// any leading zero bytes are simply shifted out
+		return new SnmpObject(soid, t,
+				getUnsigned(valPos[index], n), timestamp);
+	    default:
+		break;
+	    }
+	    return new SnmpObject(soid, getValue(), timestamp);
+	}
+    }
+
+    /**
+     * Set an unsigned integer type to the given value. The library reduces
+     * a value passed as a long modulo its own maximum, which is one less
+     * than 2^32 for a Counter32 or UInteger32, and isn't 2^64 for a
+     * Counter64, so the value is set from its unsigned encoding.
+     *
+     * @param c the library object to set
+     * @param value the unsigned value, as a bit pattern
+     *
+     * @return the library object
+     */
+    static SNMPInteger unsigned(final SNMPInteger c, final long value) {
+	byte[] b = new byte[9];
+	for (int i = 0; i < 8; i++) {
+	    b[8 - i] = (byte) (value >>> (8 * i));
+	}
+	try {
+	    c.extractValueFromBEREncoding(b);
+	} catch (SNMPBadValueException sbve) {
+	    // can't happen, any byte array is a valid integer
+	}
+	return c;
+    }
+
+    private byte[] getBytes(final int p, final int n) {
+	byte[] b = new byte[n];
+	for (int i = 0; i < n; i++) {
+	    b[i] = data.get(p + i);
+	}
+	return b;
+    }
+
+    /*
+     * Decode an oid, splitting the first subidentifier into the first two
+     * components.
+     */
+    private SnmpOid decodeOID(final int start, final int n) {
+	int ncomp = 1;
+	for (int i = 0; i < n; i++) {
+	    if ((data.get(start + i) & 0x80) == 0) {
+		ncomp++;
+	    }
+	}
+	int[] oid = new int[ncomp];
+	int p = start;
+	int end = start + n;
+	int i = 1;
+	while (p < end && i < ncomp) {
+	    long value = 0;
+	    byte b;
+	    do {
+		b = data.get(p++);
+		value = (value << 7) | (b & 0x7f);
+	    } while ((b & 0x80) != 0 && p < end);
+	    if (i == 1) {
+		oid[0] = value < 40 ? 0 : value < 80 ? 1 : 2;
+		value -= 40 * oid[0];
+	    }
+	    oid[i++] = (int) value;
+	}
+	return SnmpOid.of(oid);
+    }
+}
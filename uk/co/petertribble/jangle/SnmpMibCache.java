@@ -0,0 +1,358 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled index of the OIDs found in a set of MIB directories, saved
+ * to disk so that the MIBs needn't be parsed again at the next startup.
+ * The index records the modification time and size of each directory and
+ * the files in it, and is only used if they are all unchanged.
+ *
+ * The index file is mapped into memory rather than read. The names are
+ * read as it's loaded, but the definition of each symbol, which includes
+ * its description and accounts for most of the file, and the syntax of
+ * each object, are left in the mapped file until they're asked for.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpMibCache {
+
+    private static final int MAGIC = 0x4a4d4958;
+    private static final int VERSION = 3;
+
+    private SnmpMibCache() {
+    }
+
+    /*
+     * Return the default location of the index file.
+     */
+    static File defaultFile() {
+	return new File(System.getProperty("user.home"), ".jangle/mibindex");
+    }
+
+    /*
+     * Load the index from the given file into the trie and name map, if
+     * it's valid for the given directories. Returns false, having loaded
+     * nothing, if the index is missing, unreadable, or out of date.
+     */
+    static boolean load(final File cachefile, final List<File> dirs,
+			final SnmpOidTrie trie,
+			final Map<String, String> name2oid) {
+	if (!cachefile.isFile()) {
+	    return false;
+	}
+	ByteBuffer buf;
+	try (FileChannel fc = FileChannel.open(cachefile.toPath(),
+					StandardOpenOption.READ)) {
+	    buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+	} catch (IOException ioe) {
+	    return false;
+	}
+	try {
+	    if (buf.getInt() != MAGIC || buf.getInt() != VERSION
+		    || !checkDirs(buf, dirs)) {
+		return false;
+	    }
+	    int n = buf.getInt();
+	    // read everything before touching the trie, in case it's damaged
+	    SnmpOid[] oids = new SnmpOid[n];
+	    String[] names = new String[n];
+	    int[] textpos = new int[n];
+	    int[] textlen = new int[n];
+	    int[] syntaxlen = new int[n];
+	    int[] sources = new int[n];
+	    for (int i = 0; i < n; i++) {
+		int[] arcs = new int[buf.getInt()];
+		for (int j = 0; j < arcs.length; j++) {
+		    arcs[j] = buf.getInt();
+		}
+		oids[i] = SnmpOid.of(arcs);
+		names[i] = getString(buf);
+		sources[i] = buf.getInt();
+		textlen[i] = buf.getInt();
+		textpos[i] = buf.position();
+		buf.position(textpos[i] + textlen[i]);
+		syntaxlen[i] = buf.getInt();
+		buf.position(buf.position() + syntaxlen[i]);
+	    }
+	    int nsyms = buf.getInt();
+	    String[] symnames = new String[nsyms];
+	    String[] symoids = new String[nsyms];
+	    for (int i = 0; i < nsyms; i++) {
+		symnames[i] = getString(buf);
+		symoids[i] = getString(buf);
+	    }
+	    File[] files = new File[buf.getInt()];
+	    for (int i = 0; i < files.length; i++) {
+		files[i] = new File(getString(buf));
+	    }
+	    for (int i = 0; i < n; i++) {
+		trie.put(oids[i], names[i], buf, textpos[i], textlen[i],
+			syntaxlen[i], sources[i] < 0 ? null : files[sources[i]]);
+	    }
+	    for (int i = 0; i < nsyms; i++) {
+		name2oid.put(symnames[i], symoids[i]);
+	    }
+	    return true;
+	} catch (BufferUnderflowException | IllegalArgumentException
+		 | IndexOutOfBoundsException | NegativeArraySizeException e) {
+	    return false;
+	}
+    }
+
+    /*
+     * Save the contents of the trie as the index for the given
+     * directories. The index is written to a temporary file and renamed
+     * into place, so a concurrent reader never sees a partial index. Any
+     * error is ignored, as the index can always be rebuilt.
+     */
+    static void save(final File cachefile, final List<File> dirs,
+		     final SnmpOidTrie trie,
+		     final Map<String, String> name2oid) {
+	Path tmp = null;
+	try {
+	    Path dir = cachefile.getAbsoluteFile().toPath().getParent();
+	    Files.createDirectories(dir);
+	    tmp = Files.createTempFile(dir, "mibindex", ".tmp");
+	    try (DataOutputStream dos = new DataOutputStream(
+			new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		writeDirs(dos, dirs);
+		Map<File, Integer> files = new LinkedHashMap<>();
+		dos.writeInt(countNamed(trie.getRoot()));
+		writeNodes(dos, trie.getRoot(), new int[0], files);
+		dos.writeInt(name2oid.size());
+		for (Map.Entry<String, String> me : name2oid.entrySet()) {
+		    putString(dos, me.getKey());
+		    putString(dos, me.getValue());
+		}
+		dos.writeInt(files.size());
+		for (File f : files.keySet()) {
+		    putString(dos, f.getPath());
+		}
+	    }
+	    Files.move(tmp, cachefile.toPath(),
+			StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+	} catch (IOException ioe) {
+	    if (tmp != null) {
+		try {
+		    Files.deleteIfExists(tmp);
+		} catch (IOException ioe2) { }
+	    }
+	}
+    }
+
+    /*
+     * The directories are recorded with their modification times, and the
+     * name, modification time, and size of each file in them, in name
+     * order.
+     */
+    private static void writeDirs(final DataOutputStream dos,
+				  final List<File> dirs) throws IOException {
+	dos.writeInt(dirs.size());
+	for (File dir : dirs) {
+	    putString(dos, dir.getAbsolutePath());
+	    dos.writeLong(dir.lastModified());
+	    File[] files = listFiles(dir);
+	    dos.writeInt(files.length);
+	    for (File f : files) {
+		putString(dos, f.getName());
+		dos.writeLong(f.lastModified());
+		dos.writeLong(f.length());
+	    }
+	}
+    }
+
+    private static boolean checkDirs(final ByteBuffer buf,
+				     final List<File> dirs) {
+	if (buf.getInt() != dirs.size()) {
+	    return false;
+	}
+	for (File dir : dirs) {
+	    if (!getString(buf).equals(dir.getAbsolutePath())
+		    || buf.getLong() != dir.lastModified()) {
+		return false;
+	    }
+	    File[] files = listFiles(dir);
+	    if (buf.getInt() != files.length) {
+		return false;
+	    }
+	    for (File f : files) {
+		if (!getString(buf).equals(f.getName())
+			    || buf.getLong() != f.lastModified()
+			    || buf.getLong() != f.length()) {
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+
+    private static File[] listFiles(final File dir) {
+	File[] files = dir.listFiles();
+	if (files == null) {
+	    return new File[0];
+	}
+	Arrays.sort(files);
+	return files;
+    }
+
+    private static int countNamed(final SnmpOidTrie.Node node) {
+	int n = node.name == null ? 0 : 1;
+	for (int i = 0; i < node.getChildCount(); i++) {
+	    n += countNamed(node.getChildAt(i));
+	}
+	return n;
+    }
+
+    /*
+     * Write out the named nodes under the given node, whose OID is given
+     * by its arcs, in walk order, with the name, definition, and syntax of
+     * each. The text of the definition is followed by the length of the
+     * syntax, so that the syntax can be found from where the text ends.
+     * The file each name came from is written as its position in the
+     * table of files, which is written out at the end.
+     */
+    private static void writeNodes(final DataOutputStream dos,
+				   final SnmpOidTrie.Node node,
+				   final int[] arcs,
+				   final Map<File, Integer> files)
+	    throws IOException {
+	if (node.name != null) {
+	    dos.writeInt(arcs.length);
+	    for (int arc : arcs) {
+		dos.writeInt(arc);
+	    }
+	    putString(dos, node.name);
+	    if (node.source == null) {
+		dos.writeInt(-1);
+	    } else {
+		dos.writeInt(files.computeIfAbsent(node.source,
+						k -> files.size()));
+	    }
+	    String symbol = node.getSymbol();
+	    putString(dos, symbol == null ? "" : symbol);
+	    SnmpSyntax syntax = node.getSyntax();
+	    if (syntax == null) {
+		dos.writeInt(0);
+	    } else {
+		byte[] b = encodeSyntax(syntax);
+		dos.writeInt(b.length);
+		dos.write(b);
+	    }
+	}
+	for (int i = 0; i < node.getChildCount(); i++) {
+	    int[] narcs = Arrays.copyOf(arcs, arcs.length + 1);
+	    narcs[arcs.length] = (int) node.getChildArc(i);
+	    writeNodes(dos, node.getChildAt(i), narcs, files);
+	}
+    }
+
+    /*
+     * A syntax is held as the tag of its type, whether it's an index, the
+     * textual conventions, then the values and labels of any enumeration.
+     */
+    private static byte[] encodeSyntax(final SnmpSyntax syntax)
+	    throws IOException {
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	DataOutputStream dos = new DataOutputStream(baos);
+	dos.writeByte(syntax.getTag());
+	dos.writeBoolean(syntax.isIndex());
+	String[] conventions = syntax.getConventions();
+	dos.writeInt(conventions.length);
+	for (String s : conventions) {
+	    putString(dos, s);
+	}
+	long[] values = syntax.getEnumValues();
+	String[] labels = syntax.getEnumLabels();
+	dos.writeInt(values.length);
+	for (int i = 0; i < values.length; i++) {
+	    dos.writeLong(values[i]);
+	    putString(dos, labels[i]);
+	}
+	dos.flush();
+	return baos.toByteArray();
+    }
+
+    /*
+     * Decode a syntax, from the length that follows the text of a
+     * definition. The index has already been checked when it was loaded,
+     * so this should never fail, but if it does there's no syntax.
+     */
+    static SnmpSyntax getSyntax(final ByteBuffer buf) {
+	try {
+	    // skip the length
+	    buf.getInt();
+	    byte tag = buf.get();
+	    boolean index = buf.get() != 0;
+	    String[] conventions = new String[buf.getInt()];
+	    for (int i = 0; i < conventions.length; i++) {
+		conventions[i] = getString(buf);
+	    }
+	    long[] values = new long[buf.getInt()];
+	    String[] labels = new String[values.length];
+	    for (int i = 0; i < values.length; i++) {
+		values[i] = buf.getLong();
+		labels[i] = getString(buf);
+	    }
+	    return new SnmpSyntax(tag, conventions, index, values, labels);
+	} catch (BufferUnderflowException | IllegalArgumentException
+		 | IndexOutOfBoundsException | NegativeArraySizeException e) {
+	    return null;
+	}
+    }
+
+    /*
+     * Strings are held as their length followed by their UTF-8 bytes.
+     */
+    private static void putString(final DataOutputStream dos,
+				  final String s) throws IOException {
+	byte[] b = s.getBytes(StandardCharsets.UTF_8);
+	dos.writeInt(b.length);
+	dos.write(b);
+    }
+
+    private static String getString(final ByteBuffer buf) {
+	byte[] b = new byte[buf.getInt()];
+	buf.get(b);
+	return new String(b, StandardCharsets.UTF_8);
+    }
+}
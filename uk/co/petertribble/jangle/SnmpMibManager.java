@@ -21,13 +21,33 @@
 package uk.co.petertribble.jangle;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import net.percederberg.mibble.Mib;
 import net.percederberg.mibble.MibLoader;
 import net.percederberg.mibble.MibSymbol;
+import net.percederberg.mibble.MibType;
+import net.percederberg.mibble.MibTypeSymbol;
+import net.percederberg.mibble.MibTypeTag;
 import net.percederberg.mibble.MibValue;
 import net.percederberg.mibble.MibValueSymbol;
+import net.percederberg.mibble.snmp.SnmpObjectType;
+import net.percederberg.mibble.snmp.SnmpTextualConvention;
+import net.percederberg.mibble.type.IntegerType;
 import net.percederberg.mibble.value.ObjectIdentifierValue;
 
 /**
@@ -37,26 +57,154 @@ import net.percederberg.mibble.value.ObjectIdentifierValue;
  */
 public final class SnmpMibManager {
 
-    private static SnmpMibManager smminstance;
+    private static volatile boolean lazy;
 
-    private final Map<String, String> oidMap;
-    private final Map<String, String> oid2nameMap;
-    private final Map<String, String> name2oidMap;
-    private final MibLoader mibloader;
+    /*
+     * The modules that define the base types of the SMI, which aren't
+     * textual conventions.
+     */
+    private static final Set<String> SMI_MODULES = new HashSet<>(
+	Arrays.asList("SNMPv2-SMI", "RFC1155-SMI", "RFC1065-SMI"));
 
-    private SnmpMibManager() {
-	oidMap = new HashMap<>();
-	oid2nameMap = new HashMap<>();
-	name2oidMap = new HashMap<>();
-	mibloader = new MibLoader();
+    private static final String[] MIBDIRS = {
 	// Tribblix
-	readMIBs("/etc/net-snmp/snmp/mibs");
+	"/etc/net-snmp/snmp/mibs",
 	// solaris/opensolaris
-	readMIBs("/etc/sma/snmp/mibs");
+	"/etc/sma/snmp/mibs",
 	// ubuntu
-	readMIBs("/usr/share/snmp/mibs");
+	"/usr/share/snmp/mibs",
 	// my own systems
-	readMIBs("/opt/Net-SNMP/share/snmp/mibs");
+	"/opt/Net-SNMP/share/snmp/mibs"
+    };
+
+    /*
+     * What lookups use. An Index is never modified once it's been
+     * published. A load builds a new one, sharing what it can with the
+     * old one, and replaces it, so lookups don't need a lock and never
+     * see a load half done. In lazy mode, nameFiles holds the file that
+     * defines each name. The search index is built when it's first
+     * needed, but not under any lock, so two threads may both build it.
+     */
+    private static final class Index {
+	final SnmpOidTrie trie;
+	final Map<String, String> name2oid;
+	final Map<String, File> nameFiles;
+	volatile SnmpNameSearch search;
+
+	Index(final SnmpOidTrie ntrie, final Map<String, String> nname2oid,
+	      final Map<String, File> nnameFiles) {
+	    trie = ntrie;
+	    name2oid = nname2oid;
+	    nameFiles = nnameFiles;
+	}
+    }
+
+    private volatile Index index;
+
+    /*
+     * The rest is only modified by loads, which are synchronized. In lazy
+     * mode, lookups check loadedFiles to see if they need to load a file.
+     */
+    // the system directories, then any others added
+    private final List<File> systemdirs;
+    private final List<File> mibdirs;
+    // the names of the MIB modules we've already indexed
+    private final Set<String> scannedMibs;
+    // the files those modules came from, and the modules in each file
+    private final Set<File> loadedFiles;
+    private final Map<File, Set<String>> fileModules;
+    // in lazy mode, what found the files defining each OID
+    private final SnmpMibScanner scanner;
+    private final SnmpMibWatcher watcher;
+    /*
+     * In lazy mode, lookups don't parse MIBs themselves, but leave it to
+     * the loader thread, and these are the files it's been asked to load.
+     */
+    private final ExecutorService loader;
+    private final Set<File> loading = ConcurrentHashMap.newKeySet();
+    // told when MIBs have been loaded or reloaded
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    private SnmpMibManager() {
+	index = new Index(new SnmpOidTrie(), new HashMap<>(), new HashMap<>());
+	mibdirs = new ArrayList<>();
+	scannedMibs = new HashSet<>();
+	loadedFiles = ConcurrentHashMap.newKeySet();
+	fileModules = new HashMap<>();
+	scanner = lazy ? new SnmpMibScanner() : null;
+	loader = scanner == null ? null
+	    : Executors.newSingleThreadExecutor(r -> {
+		    Thread t = new Thread(r, "SnmpMibManager loader");
+		    t.setDaemon(true);
+		    return t;
+		});
+	watcher = new SnmpMibWatcher(this::reloadFiles);
+	List<File> dirs = new ArrayList<>();
+	for (String s : MIBDIRS) {
+	    File f = new File(s);
+	    if (f.isDirectory()) {
+		dirs.add(f);
+	    }
+	}
+	systemdirs = new ArrayList<>(dirs);
+	/*
+	 * If the index saved last time is still valid, use that. Either way,
+	 * remember where the MIBs are in case others are loaded later and
+	 * import from them.
+	 */
+	mibdirs.addAll(dirs);
+	if (scanner != null) {
+	    for (File f : dirs) {
+		scanner.scanDir(f);
+	    }
+	    reindex();
+	} else {
+	    File cachefile = SnmpMibCache.defaultFile();
+	    SnmpOidTrie trie = new SnmpOidTrie();
+	    Map<String, String> name2oid = new HashMap<>();
+	    if (SnmpMibCache.load(cachefile, dirs, trie, name2oid)) {
+		index = new Index(trie, name2oid, index.nameFiles);
+	    } else if (!dirs.isEmpty()) {
+		List<File> files = new ArrayList<>();
+		for (File f : dirs) {
+		    addFiles(files, f);
+		}
+		loadMIBs(files);
+		Index idx = index;
+		SnmpMibCache.save(cachefile, dirs, idx.trie, idx.name2oid);
+	    }
+	}
+	/*
+	 * Only watch the directories once they've been loaded, so that a
+	 * reload can't run while this is still setting things up.
+	 */
+	for (File f : dirs) {
+	    watcher.watch(f);
+	}
+    }
+
+    /**
+     * Choose whether MIBs are loaded lazily. In lazy mode, the MIB files
+     * are only scanned to see which OIDs each one defines, and a MIB
+     * module is only parsed when something it defines is first looked
+     * up. That's done in the background, so lookups answer with what's
+     * known so far, and load listeners are told when the module has been
+     * parsed. Anything that needs the full answer straight away can call
+     * loadFor() first. This must be called before the first call to
+     * getInstance() to have any effect.
+     *
+     * @param nlazy true if MIBs should be loaded lazily
+     */
+    public static void setLazyLoading(final boolean nlazy) {
+	lazy = nlazy;
+    }
+
+    /*
+     * The instance is created when this class is first used, which the
+     * JVM guarantees happens once, so getInstance() needn't lock.
+     */
+    private static final class Holder {
+	static final SnmpMibManager INSTANCE = new SnmpMibManager();
     }
 
     /**
@@ -64,46 +212,446 @@ public final class SnmpMibManager {
      *
      * @return the single instance of this SnmpMibManager
      */
-    public static synchronized SnmpMibManager getInstance() {
-	if (smminstance == null) {
-	    smminstance = new SnmpMibManager();
+    public static SnmpMibManager getInstance() {
+	return Holder.INSTANCE;
+    }
+
+    /**
+     * Load any MIB files found in the given location. The location is
+     * then watched, and any MIB files added, changed or removed there
+     * later are reloaded automatically.
+     *
+     * @param f1 a directory to look for MIB files in
+     */
+    public synchronized void readMIBs(final File f1) {
+	if (f1.exists()) {
+	    if (!mibdirs.contains(f1)) {
+		mibdirs.add(f1);
+	    }
+	    if (scanner != null) {
+		scanner.scanDir(f1);
+		reindex();
+	    } else {
+		List<File> files = new ArrayList<>();
+		addFiles(files, f1);
+		loadMIBs(files);
+	    }
+	    // watching a directory again does nothing
+	    watcher.watch(f1);
+	}
+    }
+
+    /**
+     * In lazy mode, make sure that the MIB module defining the given OID
+     * has been parsed, parsing it on this thread if necessary. Lookups
+     * never parse MIBs on the calling thread, as they're used to draw the
+     * user interface, so code that wants complete answers straight away,
+     * such as a command printing its output, should call this first.
+     *
+     * @param oid the OID about to be looked up
+     */
+    public void loadFor(final SnmpOid oid) {
+	if (scanner != null) {
+	    SnmpOidTrie.Node node = index.trie.findNearestFile(oid);
+	    if (node != null && !loadedFiles.contains(node.file)) {
+		loadFile(node.file);
+	    }
 	}
-	return smminstance;
     }
 
-    private void readMIBs(final String location) {
-	readMIBs(new File(location));
+    /*
+     * In lazy mode, arrange for the module defining the nearest known
+     * prefix of the given OID to be parsed on the loader thread, if it
+     * hasn't been already. The listeners are told once it has.
+     */
+    private void requestLoad(final SnmpOid oid) {
+	if (scanner != null) {
+	    SnmpOidTrie.Node node = index.trie.findNearestFile(oid);
+	    if (node != null && !loadedFiles.contains(node.file)
+		    && loading.add(node.file)) {
+		final File f = node.file;
+		loader.execute(() -> {
+		    try {
+			loadFile(f);
+		    } finally {
+			loading.remove(f);
+		    }
+		    fireLoaded();
+		});
+	    }
+	}
     }
 
     /**
-     * Load any MIB files found in the given location.
+     * Add a listener to be told when MIBs have been loaded in the
+     * background, or reloaded because they changed, so that anything
+     * showing names or values decoded using them can be redrawn. The
+     * listener is called on the thread that loaded the MIBs.
      *
-     * @param f1 a directory to look for MIB files in
+     * @param listener the listener to add
      */
-    public void readMIBs(final File f1) {
-	if (f1.exists()) {
-	    mibloader.addDir(f1);
-	    for (File f : f1.listFiles()) {
-		try {
-		    mibloader.load(f);
-		} catch (Exception e) { }
+    public void addLoadListener(final Runnable listener) {
+	listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added by addLoadListener().
+     *
+     * @param listener the listener to remove
+     */
+    public void removeLoadListener(final Runnable listener) {
+	listeners.remove(listener);
+    }
+
+    private void fireLoaded() {
+	for (Runnable listener : listeners) {
+	    listener.run();
+	}
+    }
+
+    private synchronized void loadFile(final File f) {
+	if (!loadedFiles.contains(f)) {
+	    loadMIBs(Collections.singletonList(f));
+	    loadedFiles.add(f);
+	}
+    }
+
+    /*
+     * In lazy mode, publish a new index with the files defining each OID
+     * and name that the scanner has found.
+     */
+    private void reindex() {
+	Index idx = index;
+	SnmpOidTrie trie = idx.trie.edit();
+	Map<String, File> nameFiles = new HashMap<>(idx.nameFiles);
+	scanner.index(trie, nameFiles);
+	index = new Index(trie, idx.name2oid, nameFiles);
+    }
+
+    /*
+     * Called by the watcher when files in the MIB directories have been
+     * added, changed, or removed. The symbols from those files are taken
+     * out of the index, and any files that still exist are parsed again,
+     * with the result published as a single new snapshot. Nothing else is
+     * parsed, and lookups carry on using the old snapshot until then. In
+     * lazy mode, the files are just scanned again, and parsed if they're
+     * needed.
+     */
+    private synchronized void reloadFiles(final Set<File> changed) {
+	List<File> files = new ArrayList<>();
+	for (File f : changed) {
+	    if (f.isFile()) {
+		files.add(f);
+	    }
+	}
+	Collections.sort(files);
+	if (scanner != null) {
+	    Index idx = index;
+	    SnmpOidTrie trie = idx.trie.edit();
+	    Map<String, String> name2oid = new HashMap<>(idx.name2oid);
+	    for (File f : changed) {
+		forget(f, trie, name2oid);
+		scanner.removeFile(f);
 	    }
-	    for (Mib mib : mibloader.getAllMibs()) {
-		scanMib(mib);
+	    for (File f : files) {
+		scanner.scanFile(f);
+	    }
+	    Map<String, File> nameFiles = new HashMap<>();
+	    scanner.index(trie, nameFiles);
+	    index = new Index(trie, name2oid, nameFiles);
+	} else {
+	    reloadMIBs(files, changed, false);
+	    // only save the index if it just covers the system directories
+	    if (mibdirs.equals(systemdirs)) {
+		Index idx = index;
+		SnmpMibCache.save(SnmpMibCache.defaultFile(), systemdirs,
+			idx.trie, idx.name2oid);
 	    }
 	}
+	fireLoaded();
     }
 
-    private void scanMib(final Mib mib) {
+    /*
+     * Take the symbols that came from the given file out of the index,
+     * and forget that it was loaded, so that it can be loaded again.
+     */
+    private void forget(final File f, final SnmpOidTrie trie,
+			final Map<String, String> name2oid) {
+	Set<String> modules = fileModules.remove(f);
+	if (modules != null) {
+	    scannedMibs.removeAll(modules);
+	}
+	loadedFiles.remove(f);
+	Set<String> oids = new HashSet<>();
+	for (SnmpOid oid : trie.findAll(
+		node -> f.equals(node.source) || f.equals(node.file))) {
+	    SnmpOidTrie.Node node = trie.modify(oid);
+	    if (f.equals(node.source)) {
+		node.clearName();
+		oids.add(oid.toString());
+	    }
+	    if (f.equals(node.file)) {
+		node.file = null;
+	    }
+	}
+	name2oid.values().removeIf(oids::contains);
+    }
+
+    private void addFiles(final List<File> files, final File dir) {
+	File[] flist = dir.listFiles();
+	if (flist != null) {
+	    for (File f : flist) {
+		files.add(f);
+	    }
+	}
+    }
+
+    private void loadMIBs(final List<File> files) {
+	reloadMIBs(files, Collections.emptySet(), true);
+    }
+
+    /*
+     * Parse the given MIB files, and publish a new index with the symbols
+     * of the removed files taken out and those of any new modules added.
+     * When reloading, the modules the files import are already indexed,
+     * even if they came from a saved index, so aren't indexed again.
+     */
+    private void reloadMIBs(final List<File> files,
+			    final Set<File> removed,
+			    final boolean withImports) {
+	for (File f : removed) {
+	    Set<String> modules = fileModules.get(f);
+	    if (modules != null) {
+		scannedMibs.removeAll(modules);
+	    }
+	}
+	List<Mib> lmibs = parseNewMIBs(files);
+	if (!withImports) {
+	    lmibs.removeIf(mib -> !files.contains(mib.getFile()));
+	}
+	Index idx = index;
+	SnmpOidTrie trie = idx.trie.edit();
+	Map<String, String> name2oid = new HashMap<>(idx.name2oid);
+	for (File f : removed) {
+	    forget(f, trie, name2oid);
+	}
+	for (Mib mib : lmibs) {
+	    scannedMibs.add(mib.getName());
+	    if (mib.getFile() != null) {
+		fileModules.computeIfAbsent(mib.getFile(),
+					k -> new HashSet<>()).add(mib.getName());
+	    }
+	    scanMib(mib, trie, name2oid);
+	}
+	index = new Index(trie, name2oid, idx.nameFiles);
+	for (Mib mib : lmibs) {
+	    if (mib.getFile() != null) {
+		loadedFiles.add(mib.getFile());
+	    }
+	}
+    }
+
+    /*
+     * Parse the given MIB files in parallel. MibLoader isn't thread safe,
+     * so the files are shared out between workers that each have their
+     * own loader. Each worker has to parse any imported MIBs for itself,
+     * but that's cheap compared to the files it's given. Return the
+     * modules in the order they should be indexed, skipping any we've
+     * seen before, whether loaded earlier or by another worker.
+     */
+    private List<Mib> parseNewMIBs(final List<File> files) {
+	int nworkers = Math.min(files.size(),
+			Runtime.getRuntime().availableProcessors());
+	if (nworkers == 0) {
+	    return Collections.emptyList();
+	}
+	List<List<File>> shares = new ArrayList<>();
+	for (int i = 0; i < nworkers; i++) {
+	    shares.add(new ArrayList<>());
+	}
+	for (int i = 0; i < files.size(); i++) {
+	    shares.get(i % nworkers).add(files.get(i));
+	}
+	final List<File> dirs = new ArrayList<>(mibdirs);
+	List<Future<Mib[]>> parts = new ArrayList<>();
+	Map<String, Mib> newmibs = new HashMap<>();
+	ExecutorService pool = Executors.newFixedThreadPool(nworkers);
+	try {
+	    for (List<File> share : shares) {
+		parts.add(pool.submit(() -> parseShare(share, dirs)));
+	    }
+	    for (Future<Mib[]> part : parts) {
+		try {
+		    for (Mib mib : part.get()) {
+			if (!scannedMibs.contains(mib.getName())) {
+			    newmibs.putIfAbsent(mib.getName(), mib);
+			}
+		    }
+		} catch (ExecutionException ee) { }
+	    }
+	} catch (InterruptedException ie) {
+	    Thread.currentThread().interrupt();
+	    return Collections.emptyList();
+	} finally {
+	    pool.shutdownNow();
+	}
+	/*
+	 * Index the modules in the order of the files they came from, with
+	 * those only found as imports first, so that where two modules name
+	 * the same OID the result doesn't depend on the number of workers.
+	 */
+	Map<File, Integer> order = new HashMap<>();
+	for (int i = 0; i < files.size(); i++) {
+	    order.put(files.get(i), i);
+	}
+	List<Mib> lmibs = new ArrayList<>(newmibs.values());
+	lmibs.sort(Comparator.comparingInt(
+		(Mib mib) -> order.getOrDefault(mib.getFile(), -1))
+		.thenComparing(Mib::getName));
+	return lmibs;
+    }
+
+    private static Mib[] parseShare(final List<File> files,
+				   final List<File> dirs) {
+	MibLoader loader = new MibLoader();
+	for (File dir : dirs) {
+	    loader.addDir(dir);
+	}
+	for (File f : files) {
+	    try {
+		loader.load(f);
+	    } catch (Exception e) { }
+	}
+	return loader.getAllMibs();
+    }
+
+    /*
+     * Add the symbols of a module to the index. In lazy mode, an OID
+     * already named by an earlier load keeps its name, so that an answer
+     * doesn't change just because some other module was loaded later.
+     */
+    private void scanMib(final Mib mib, final SnmpOidTrie trie,
+			 final Map<String, String> name2oid) {
+	// the columns that index the tables in this module
+	Set<String> indexes = new HashSet<>();
+	for (Object o : mib.getAllSymbols()) {
+	    SnmpObjectType type = extractObjectType((MibSymbol) o);
+	    if (type != null && type.getIndex() != null) {
+		for (Object index : type.getIndex()) {
+		    if (index instanceof ObjectIdentifierValue) {
+			indexes.add(index.toString());
+		    }
+		}
+	    }
+	}
 	for (Object o : mib.getAllSymbols()) {
 	    MibSymbol symbol = (MibSymbol) o;
 	    ObjectIdentifierValue value = extractOid(symbol);
 	    if (value != null) {
-		oidMap.put(value.toString(), value.getName());
-		name2oidMap.put(symbol.toString(), value.toString());
-		oid2nameMap.put(value.toString(), symbol.toString());
+		try {
+		    SnmpOid oid = SnmpOid.valueOf(value.toString());
+		    SnmpOidTrie.Node node = trie.getNode(oid);
+		    if (scanner == null || node == null || node.name == null) {
+			trie.put(oid, value.getName(), symbol.toString(),
+				extractSyntax(symbol,
+					indexes.contains(value.toString())
+					|| isIndex(node)),
+				mib.getFile());
+		    }
+		    name2oid.put(symbol.getName(), value.toString());
+		} catch (SnmpException sne) { }
+	    }
+	}
+	/*
+	 * A table may be indexed by an object from another module, such as
+	 * ifIndex, or by one that another module has since redefined.
+	 */
+	for (String s : indexes) {
+	    try {
+		SnmpOid oid = SnmpOid.valueOf(s);
+		SnmpOidTrie.Node node = trie.getNode(oid);
+		if (node != null && node.getSyntax() != null && !isIndex(node)) {
+		    trie.modify(oid).setSyntax(node.getSyntax().asIndex());
+		}
+	    } catch (SnmpException sne) { }
+	}
+    }
+
+    private static boolean isIndex(final SnmpOidTrie.Node node) {
+	return node != null && node.getSyntax() != null
+	    && node.getSyntax().isIndex();
+    }
+
+    private static SnmpObjectType extractObjectType(final MibSymbol symbol) {
+	if (symbol instanceof MibValueSymbol) {
+	    MibType type = ((MibValueSymbol) symbol).getType();
+	    if (type instanceof SnmpObjectType) {
+		return (SnmpObjectType) type;
 	    }
 	}
+	return null;
+    }
+
+    /*
+     * Work out the syntax of an OBJECT-TYPE. The textual conventions are
+     * found by following the chain of types each type refers to, leaving
+     * out the base types defined by the SMI itself. Tables and rows have
+     * no syntax worth recording.
+     */
+    private static SnmpSyntax extractSyntax(final MibSymbol symbol,
+					    final boolean index) {
+	SnmpObjectType otype = extractObjectType(symbol);
+	if (otype == null) {
+	    return null;
+	}
+	MibType type = otype.getSyntax();
+	MibTypeTag tag = type.getTag();
+	if (tag == null || tag.getCategory() > MibTypeTag.APPLICATION_CATEGORY
+		|| tag.equals(MibTypeTag.SEQUENCE)) {
+	    return null;
+	}
+	List<String> conventions = new ArrayList<>();
+	MibValueSymbol[] enums = enumSymbols(type);
+	// the depth limit guards against loops in broken MIBs
+	for (int depth = 0; type != null && depth < 16; depth++) {
+	    MibTypeSymbol ref = type.getReferenceSymbol();
+	    if (ref == null) {
+		break;
+	    }
+	    if (!SMI_MODULES.contains(ref.getMib().getName())) {
+		conventions.add(ref.getName());
+	    }
+	    type = ref.getType();
+	    if (type instanceof SnmpTextualConvention) {
+		type = ((SnmpTextualConvention) type).getSyntax();
+	    }
+	    if (enums.length == 0) {
+		enums = enumSymbols(type);
+	    }
+	}
+	Map<Long, String> labels = new TreeMap<>();
+	for (MibValueSymbol e : enums) {
+	    Object n = e.getValue() == null ? null : e.getValue().toObject();
+	    if (n instanceof Number) {
+		labels.put(((Number) n).longValue(), e.getName());
+	    }
+	}
+	long[] values = new long[labels.size()];
+	int i = 0;
+	for (Long l : labels.keySet()) {
+	    values[i++] = l;
+	}
+	return new SnmpSyntax((byte) ((tag.getCategory() << 6)
+					| tag.getValue()),
+			conventions.toArray(new String[0]), index, values,
+			labels.values().toArray(new String[0]));
+    }
+
+    private static MibValueSymbol[] enumSymbols(final MibType type) {
+	if (type instanceof IntegerType && ((IntegerType) type).hasSymbols()) {
+	    return ((IntegerType) type).getAllSymbols();
+	}
+	return new MibValueSymbol[0];
     }
 
     private ObjectIdentifierValue extractOid(final MibSymbol symbol) {
@@ -126,7 +674,7 @@ public final class SnmpMibManager {
      * @return a prettified version of the given oid
      */
     public String prettifyOID(final SnmpObject sno) {
-	return prettifyOID(sno.toString());
+	return prettifyOID(sno.getSnmpOid());
     }
 
     /**
@@ -139,26 +687,38 @@ public final class SnmpMibManager {
      * @return a prettified version of the given oid
      */
     public String prettifyOID(final String oid) {
-	// start with the given value
-	String valname = oidMap.get(oid);
-	if (valname != null) {
-	    return valname;
+	try {
+	    return prettifyOID(SnmpOid.valueOf(oid));
+	} catch (SnmpException sne) {
+	    return oid;
 	}
-	// now walk our way back through the string
-	String spar = SnmpUtil.getParentOID(oid);
-	while (spar != null) {
-	    valname = oidMap.get(spar);
-	    if (valname != null) {
-		return valname + oid.substring(spar.length());
-	    }
-	    spar = SnmpUtil.getParentOID(spar);
-	}
-	// if nothing else, return what we started with
-	return oid;
     }
 
-    private String getMibForOID(final String oid) {
-	return oid2nameMap.get(oid);
+    /**
+     * Converts a numeric OID into its textual representation. This will
+     * attempt to convert the root of the oid into a name, and append the
+     * instance. If no match can be found, simply returns the numeric form.
+     * In lazy mode, this never waits for a MIB to be parsed, but answers
+     * with what's already known; see setLazyLoading().
+     *
+     * @param oid the oid to prettify
+     *
+     * @return a prettified version of the given oid
+     */
+    public String prettifyOID(final SnmpOid oid) {
+	requestLoad(oid);
+	SnmpOidTrie.Node node = index.trie.findNearest(oid);
+	if (node == null) {
+	    return oid.toString();
+	}
+	if (node.depth == oid.size()) {
+	    return node.name;
+	}
+	StringBuilder sb = new StringBuilder(node.name);
+	for (int i = node.depth; i < oid.size(); i++) {
+	    sb.append('.').append(oid.getArc(i));
+	}
+	return sb.toString();
     }
 
     /**
@@ -170,17 +730,65 @@ public final class SnmpMibManager {
      * @return the closest MIB entry for this OID string
      */
     public String getNearestMibForOID(final String oid) {
-	String namepar = getMibForOID(oid);
-	if (namepar != null) {
-	    return namepar;
+	try {
+	    return getNearestMibForOID(SnmpOid.valueOf(oid));
+	} catch (SnmpException sne) {
+	    return null;
+	}
+    }
+
+    /**
+     * Return the closest MIB entry for this OID. If nothing matches,
+     * return null.
+     *
+     * @param oid the oid to retrieve the MIB entry for
+     *
+     * @return the closest MIB entry for this OID
+     */
+    public String getNearestMibForOID(final SnmpOid oid) {
+	requestLoad(oid);
+	SnmpOidTrie.Node node = index.trie.findNearest(oid);
+	return node == null ? null : node.getSymbol();
+    }
+
+    /**
+     * Return the syntax of the MIB object that the given OID is, or is an
+     * instance of, which says how its values should be interpreted. As
+     * with prettifyOID(), this doesn't wait for a MIB to be parsed.
+     *
+     * @param oid the oid to find the syntax of
+     *
+     * @return the syntax of the object, or null if the OID isn't an
+     * object or instance with a known syntax
+     */
+    public SnmpSyntax getSyntax(final SnmpOid oid) {
+	requestLoad(oid);
+	SnmpOidTrie.Node node = index.trie.findNearest(oid);
+	return node == null ? null : node.getSyntax();
+    }
+
+    /*
+     * Return the instance of the InetAddressType column that gives the
+     * type of the given instance of an InetAddress column, or null if
+     * there isn't one. By convention, that's the nearest preceding column
+     * of the same table entry whose syntax is an InetAddressType.
+     */
+    SnmpOid getAddressTypeOid(final SnmpOid oid) {
+	requestLoad(oid);
+	SnmpOidTrie trie = index.trie;
+	SnmpOidTrie.Node node = trie.findNearest(oid);
+	if (node == null || node.depth < 2 || node.depth == oid.size()) {
+	    return null;
 	}
-	String spar = SnmpUtil.getParentOID(oid);
-	while (spar != null) {
-	    namepar = getMibForOID(spar);
-	    if (namepar != null) {
-		return namepar;
+	SnmpOid entry = oid.getPrefix(node.depth - 1);
+	SnmpOid instance = oid.getSuffix(node.depth);
+	for (long arc = oid.getArc(node.depth - 1) - 1; arc > 0; arc--) {
+	    SnmpOid column = entry.getChild(arc);
+	    SnmpOidTrie.Node cnode = trie.getNode(column);
+	    if (cnode != null && cnode.getSyntax() != null
+		    && cnode.getSyntax().hasConvention("InetAddressType")) {
+		return column.append(instance);
 	    }
-	    spar = SnmpUtil.getParentOID(spar);
 	}
 	return null;
     }
@@ -193,6 +801,105 @@ public final class SnmpMibManager {
      * @return the OID corresponding to this name
      */
     public String getOIDForName(final String name) {
-	return name2oidMap.get(name);
+	Index idx = index;
+	if (scanner != null && !idx.name2oid.containsKey(name)) {
+	    File f = idx.nameFiles.get(name);
+	    if (f != null && !loadedFiles.contains(f)) {
+		loadFile(f);
+		idx = index;
+	    }
+	}
+	return idx.name2oid.get(name);
+    }
+
+    /**
+     * Find the names of MIB symbols matching the given query, ignoring
+     * case. Names that start with the query come first, then names that
+     * contain it, then names whose descriptions contain words starting
+     * with each word of the query. In lazy mode, names are found even if
+     * the MIB defining them hasn't been loaded, but their descriptions
+     * aren't.
+     *
+     * @param query the text to search for
+     * @param max the maximum number of names to return
+     *
+     * @return a List of up to max matching names, best matches first
+     */
+    public List<String> findNames(final String query, final int max) {
+	Index idx = index;
+	SnmpNameSearch search = idx.search;
+	if (search == null) {
+	    Set<String> names = new HashSet<>(idx.name2oid.keySet());
+	    names.addAll(idx.nameFiles.keySet());
+	    search = new SnmpNameSearch(new ArrayList<>(names),
+					name -> getSymbol(idx, name));
+	    idx.search = search;
+	}
+	return search.find(query, max);
+    }
+
+    private static String getSymbol(final Index idx, final String name) {
+	String oid = idx.name2oid.get(name);
+	if (oid == null) {
+	    return null;
+	}
+	try {
+	    SnmpOidTrie.Node node = idx.trie.getNode(SnmpOid.valueOf(oid));
+	    return node == null ? null : node.getSymbol();
+	} catch (SnmpException sne) {
+	    return null;
+	}
+    }
+
+    /*
+     * Return the number of named OIDs known in the subtree rooted at the
+     * given OID, including the OID itself, as an estimate of its size.
+     * Nothing is loaded, so it's only as good as the MIBs already read.
+     */
+    int getSubtreeSize(final SnmpOid oid) {
+	SnmpOidTrie.Node node = index.trie.getNode(oid);
+	return node == null ? 0 : countNamed(node);
+    }
+
+    private static int countNamed(final SnmpOidTrie.Node node) {
+	int n = node.name == null ? 0 : 1;
+	for (int i = 0; i < node.getChildCount(); i++) {
+	    n += countNamed(node.getChildAt(i));
+	}
+	return n;
+    }
+
+    /**
+     * Return the OIDs of the known immediate children of the given OID,
+     * in the order in which they would be walked.
+     *
+     * @param oid the OID to find the children of
+     *
+     * @return a List of the OIDs of the known children of the given OID
+     */
+    public List<String> getChildOIDs(final String oid) {
+	List<String> lchildren = new ArrayList<>();
+	try {
+	    SnmpOid parent = SnmpOid.valueOf(oid);
+	    SnmpOidTrie.Node node = index.trie.getNode(parent);
+	    if (node != null && scanner != null) {
+		for (int i = 0; i < node.getChildCount(); i++) {
+		    File f = node.getChildAt(i).file;
+		    if (f != null && !loadedFiles.contains(f)) {
+			loadFile(f);
+		    }
+		}
+		node = index.trie.getNode(parent);
+	    }
+	    if (node != null) {
+		for (int i = 0; i < node.getChildCount(); i++) {
+		    if (node.getChildAt(i).name != null) {
+			lchildren.add(parent.getChild(node.getChildArc(i))
+				.toString());
+		    }
+		}
+	    }
+	} catch (SnmpException sne) { }
+	return lchildren;
     }
 }
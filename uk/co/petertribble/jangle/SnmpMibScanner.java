@@ -0,0 +1,325 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A quick scan of the text of MIB files, to find which file defines each
+ * OID without parsing the MIBs properly. Only OID assignments such as
+ * {@code ifTable OBJECT-TYPE ... ::= { interfaces 2 }} are looked at,
+ * which is enough to know which module to parse when something under a
+ * given OID is wanted.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpMibScanner {
+
+    /*
+     * The macros whose values are OIDs.
+     */
+    private static final Set<String> OIDMACROS = new HashSet<>(
+	Arrays.asList("OBJECT-TYPE", "MODULE-IDENTITY", "OBJECT-IDENTITY",
+		"NOTIFICATION-TYPE", "OBJECT-GROUP", "NOTIFICATION-GROUP",
+		"MODULE-COMPLIANCE", "AGENT-CAPABILITIES"));
+
+    /*
+     * An OID assignment, relative to a parent name. If the parent is
+     * null, the arcs are the whole OID.
+     */
+    private static final class Def {
+	final File file;
+	final String parent;
+	final int[] arcs;
+
+	Def(final File nfile, final String nparent, final int[] narcs) {
+	    file = nfile;
+	    parent = nparent;
+	    arcs = narcs;
+	}
+    }
+
+    private final Map<String, List<Def>> defs = new HashMap<>();
+
+    SnmpMibScanner() {
+	defs.put("ccitt", defList(new Def(null, null, new int[] {0})));
+	defs.put("iso", defList(new Def(null, null, new int[] {1})));
+	defs.put("joint-iso-ccitt", defList(new Def(null, null,
+						new int[] {2})));
+    }
+
+    private static List<Def> defList(final Def def) {
+	List<Def> l = new ArrayList<>(1);
+	l.add(def);
+	return l;
+    }
+
+    /*
+     * Scan all the files in the given directory.
+     */
+    void scanDir(final File dir) {
+	File[] files = dir.listFiles();
+	if (files != null) {
+	    Arrays.sort(files);
+	    for (File f : files) {
+		scanFile(f);
+	    }
+	}
+    }
+
+    /*
+     * Scan a file for OID assignments.
+     */
+    void scanFile(final File f) {
+	List<String> tokens;
+	try {
+	    tokens = tokenize(new String(Files.readAllBytes(f.toPath()),
+					StandardCharsets.ISO_8859_1));
+	} catch (IOException ioe) {
+	    return;
+	}
+	String pending = null;
+	int n = tokens.size();
+	for (int i = 0; i < n; i++) {
+	    String t = tokens.get(i);
+	    if (i + 1 < n && isValueName(t)) {
+		String next = tokens.get(i + 1);
+		if (OIDMACROS.contains(next)
+			|| "OBJECT".equals(next) && i + 3 < n
+			&& "IDENTIFIER".equals(tokens.get(i + 2))
+			&& "::=".equals(tokens.get(i + 3))) {
+		    pending = t;
+		}
+	    } else if ("::=".equals(t)) {
+		if (pending != null && i + 1 < n
+			&& "{".equals(tokens.get(i + 1))) {
+		    int end = i + 2;
+		    while (end < n && !"}".equals(tokens.get(end))) {
+			end++;
+		    }
+		    if (end < n) {
+			addDef(pending, f, tokens.subList(i + 2, end));
+			i = end;
+		    }
+		}
+		pending = null;
+	    }
+	}
+    }
+
+    /*
+     * Forget the assignments found in a file, so that it can be scanned
+     * again if it's changed.
+     */
+    void removeFile(final File f) {
+	for (List<Def> ldef : defs.values()) {
+	    ldef.removeIf(def -> f.equals(def.file));
+	}
+	defs.values().removeIf(List::isEmpty);
+    }
+
+    /*
+     * Value names start with a lower case letter, which distinguishes
+     * them from keywords and type names.
+     */
+    private static boolean isValueName(final String t) {
+	char c = t.charAt(0);
+	return c >= 'a' && c <= 'z';
+    }
+
+    /*
+     * Record an assignment given the tokens between the braces, which
+     * are an optional parent name followed by numbers or name(number)
+     * pairs.
+     */
+    private void addDef(final String name, final File f,
+			final List<String> value) {
+	String parent = null;
+	List<Integer> arcs = new ArrayList<>();
+	int n = value.size();
+	for (int i = 0; i < n; i++) {
+	    String t = value.get(i);
+	    if (i + 3 < n && "(".equals(value.get(i + 1))) {
+		// name(number)
+		Integer arc = parseArc(value.get(i + 2));
+		if (arc == null) {
+		    return;
+		}
+		arcs.add(arc);
+		i += 3;
+	    } else if (Character.isDigit(t.charAt(0))) {
+		Integer arc = parseArc(t);
+		if (arc == null) {
+		    return;
+		}
+		arcs.add(arc);
+	    } else if (i == 0 && isValueName(t)) {
+		parent = t;
+	    } else {
+		return;
+	    }
+	}
+	if (parent == null && arcs.isEmpty()) {
+	    return;
+	}
+	int[] narcs = new int[arcs.size()];
+	for (int i = 0; i < narcs.length; i++) {
+	    narcs[i] = arcs.get(i);
+	}
+	defs.computeIfAbsent(name, k -> new ArrayList<>())
+	    .add(new Def(f, parent, narcs));
+    }
+
+    private static Integer parseArc(final String t) {
+	try {
+	    long l = Long.parseLong(t);
+	    return l > 0xffffffffL ? null : (int) l;
+	} catch (NumberFormatException nfe) {
+	    return null;
+	}
+    }
+
+    /*
+     * Resolve every assignment found so far, recording in the trie the
+     * file that defines each OID, and in the map the file that defines
+     * each name. Where an OID or name is defined in more than one file,
+     * which is common, any of them will do, as parsing any one of them
+     * gives a name.
+     */
+    void index(final SnmpOidTrie trie, final Map<String, File> nameFiles) {
+	Map<Def, SnmpOid> resolved = new IdentityHashMap<>();
+	for (Map.Entry<String, List<Def>> me : defs.entrySet()) {
+	    for (Def def : me.getValue()) {
+		if (def.file == null) {
+		    continue;
+		}
+		SnmpOid oid = resolve(def, resolved, new HashSet<>());
+		if (oid != null) {
+		    trie.putFile(oid, def.file);
+		    nameFiles.put(me.getKey(), def.file);
+		}
+	    }
+	}
+    }
+
+    /*
+     * Work out the OID of an assignment, remembering the answer. The
+     * visiting set guards against loops in broken MIBs.
+     */
+    private SnmpOid resolve(final Def def, final Map<Def, SnmpOid> resolved,
+			    final Set<Def> visiting) {
+	if (resolved.containsKey(def)) {
+	    return resolved.get(def);
+	}
+	SnmpOid oid = null;
+	if (def.parent == null) {
+	    if (def.arcs.length > 0) {
+		oid = SnmpOid.of(def.arcs);
+	    }
+	} else if (visiting.add(def)) {
+	    Def pdef = findDef(def.parent, def.file);
+	    oid = pdef == null ? null : resolve(pdef, resolved, visiting);
+	    if (oid != null) {
+		for (int arc : def.arcs) {
+		    oid = oid.getChild(arc & 0xffffffffL);
+		}
+	    }
+	    visiting.remove(def);
+	} else {
+	    return null;
+	}
+	resolved.put(def, oid);
+	return oid;
+    }
+
+    /*
+     * Find the assignment of a name, preferring one in the given file, as
+     * names are scoped by module.
+     */
+    private Def findDef(final String name, final File file) {
+	List<Def> ldef = defs.get(name);
+	if (ldef == null) {
+	    return null;
+	}
+	for (Def d : ldef) {
+	    if (file.equals(d.file)) {
+		return d;
+	    }
+	}
+	return ldef.get(0);
+    }
+
+    /*
+     * Split MIB text into tokens, dropping comments and quoted strings.
+     * A comment runs from -- to the end of the line or the next --.
+     */
+    private static List<String> tokenize(final String s) {
+	List<String> tokens = new ArrayList<>();
+	int n = s.length();
+	int i = 0;
+	while (i < n) {
+	    char c = s.charAt(i);
+	    if (Character.isWhitespace(c)) {
+		i++;
+	    } else if (c == '-' && i + 1 < n && s.charAt(i + 1) == '-') {
+		i += 2;
+		while (i < n && s.charAt(i) != '\n') {
+		    if (s.charAt(i) == '-' && i + 1 < n
+			    && s.charAt(i + 1) == '-') {
+			i += 2;
+			break;
+		    }
+		    i++;
+		}
+	    } else if (c == '"') {
+		int end = s.indexOf('"', i + 1);
+		i = end < 0 ? n : end + 1;
+	    } else if (Character.isLetterOrDigit(c)) {
+		int start = i;
+		while (i < n && (Character.isLetterOrDigit(s.charAt(i))
+			|| s.charAt(i) == '-' && i + 1 < n
+			&& s.charAt(i + 1) != '-'
+			|| s.charAt(i) == '_')) {
+		    i++;
+		}
+		tokens.add(s.substring(start, i));
+	    } else if (c == ':' && s.startsWith("::=", i)) {
+		tokens.add("::=");
+		i += 3;
+	    } else {
+		tokens.add(String.valueOf(c));
+		i++;
+	    }
+	}
+	return tokens;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watch MIB directories for files being added, changed, or removed, and
+ * pass the files affected on to be reloaded. Changes are gathered until
+ * the directories have been quiet for a short while, so that a file being
+ * copied in, or a batch of files being unpacked, is reloaded once rather
+ * than for every event.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpMibWatcher implements Runnable {
+
+    // how long to wait for more changes, in milliseconds
+    private static final long SETTLE = 500;
+
+    private final Consumer<Set<File>> reloader;
+    private final Map<WatchKey, File> keys = new HashMap<>();
+    private WatchService watcher;
+
+    /*
+     * Create a watcher that hands the set of changed files to the given
+     * reloader, from its own thread.
+     */
+    SnmpMibWatcher(final Consumer<Set<File>> nreloader) {
+	reloader = nreloader;
+    }
+
+    /*
+     * Start watching the given directory. The watching thread is started
+     * when the first directory is added.
+     */
+    synchronized void watch(final File dir) {
+	try {
+	    if (watcher == null) {
+		watcher = FileSystems.getDefault().newWatchService();
+		Thread t = new Thread(this, "SnmpMibWatcher");
+		t.setDaemon(true);
+		t.start();
+	    }
+	    if (!keys.containsValue(dir)) {
+		keys.put(dir.toPath().register(watcher,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY,
+					StandardWatchEventKinds.ENTRY_DELETE),
+			dir);
+	    }
+	} catch (IOException ioe) { }
+    }
+
+    private synchronized File getDir(final WatchKey key) {
+	return keys.get(key);
+    }
+
+    @Override
+    public void run() {
+	try {
+	    while (true) {
+		Set<File> changed = new HashSet<>();
+		addChanges(watcher.take(), changed);
+		WatchKey key;
+		while ((key = watcher.poll(SETTLE, TimeUnit.MILLISECONDS))
+		       != null) {
+		    addChanges(key, changed);
+		}
+		if (!changed.isEmpty()) {
+		    reloader.accept(changed);
+		}
+	    }
+	} catch (InterruptedException | ClosedWatchServiceException e) { }
+    }
+
+    /*
+     * Add the files named in the events of a key to the set of changes.
+     * If events have been lost, treat every file in the directory as
+     * changed.
+     */
+    private void addChanges(final WatchKey key, final Set<File> changed) {
+	File dir = getDir(key);
+	for (WatchEvent<?> event : key.pollEvents()) {
+	    if (dir == null) {
+		continue;
+	    }
+	    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+		    for (File f : files) {
+			changed.add(f);
+		    }
+		}
+	    } else {
+		changed.add(new File(dir, ((Path) event.context()).toString()));
+	    }
+	}
+	key.reset();
+    }
+}
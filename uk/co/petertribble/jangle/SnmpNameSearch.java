@@ -0,0 +1,310 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * An index of the names of MIB symbols, and the words in their
+ * descriptions, for finding symbols by part of their name. Matching
+ * ignores case.
+ *
+ * The names are held sorted, so those starting with a given prefix are
+ * found by a binary search. Names containing a string are found from an
+ * index of the three character sequences in each name, which narrows the
+ * names to check to those containing the rarest of the query's sequences.
+ * Description words are held sorted, with the names whose descriptions
+ * contain each word.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpNameSearch {
+
+    // the length of the character sequences indexed
+    private static final int GRAM = 3;
+
+    // the names, sorted by their lower case form
+    private final String[] names;
+    private final String[] lower;
+    // each sequence of characters in each name, sorted
+    private final long[] grams;
+    // the description words, sorted, and the names whose descriptions
+    // use each, held together, with where each word's names start
+    private final String[] words;
+    private final int[] wordNames;
+    private final int[] wordStart;
+
+    /*
+     * Build an index of the given names. The function returns the text
+     * of the definition of a name, which may be null, and is only used to
+     * find its description.
+     */
+    SnmpNameSearch(final List<String> lnames,
+		   final Function<String, String> definitions) {
+	names = lnames.toArray(new String[0]);
+	Arrays.sort(names, String.CASE_INSENSITIVE_ORDER);
+	lower = new String[names.length];
+	int ngrams = 0;
+	for (int i = 0; i < names.length; i++) {
+	    lower[i] = names[i].toLowerCase(Locale.ROOT);
+	    ngrams += Math.max(0, lower[i].length() - GRAM + 1);
+	}
+	/*
+	 * Each sequence in each name is packed into a long with the
+	 * sequence in the top half and the name in the bottom half, so that
+	 * once sorted the names with a sequence are together, in order.
+	 */
+	grams = new long[ngrams];
+	int n = 0;
+	for (int i = 0; i < names.length; i++) {
+	    for (int j = 0; j + GRAM <= lower[i].length(); j++) {
+		grams[n++] = ((long) gram(lower[i], j) << 32) | i;
+	    }
+	}
+	Arrays.sort(grams);
+	// the description words are numbered, then sorted at the end
+	Map<String, Integer> wordIds = new HashMap<>();
+	long[] uses = new long[1024];
+	int nuses = 0;
+	for (int i = 0; i < names.length; i++) {
+	    String text = definitions.apply(names[i]);
+	    if (text == null) {
+		continue;
+	    }
+	    for (String word : descriptionWords(text)) {
+		Integer id = wordIds.get(word);
+		if (id == null) {
+		    id = wordIds.size();
+		    wordIds.put(word, id);
+		}
+		if (nuses == uses.length) {
+		    uses = Arrays.copyOf(uses, nuses * 2);
+		}
+		uses[nuses++] = ((long) id << 32) | i;
+	    }
+	}
+	words = wordIds.keySet().toArray(new String[0]);
+	Arrays.sort(words);
+	int[] rank = new int[words.length];
+	for (int w = 0; w < words.length; w++) {
+	    rank[wordIds.get(words[w])] = w;
+	}
+	for (int k = 0; k < nuses; k++) {
+	    uses[k] = ((long) rank[(int) (uses[k] >>> 32)] << 32)
+		| (uses[k] & 0xffffffffL);
+	}
+	Arrays.sort(uses, 0, nuses);
+	wordNames = new int[nuses];
+	wordStart = new int[words.length + 1];
+	for (int k = 0; k < nuses; k++) {
+	    wordNames[k] = (int) uses[k];
+	    wordStart[(int) (uses[k] >>> 32) + 1] = k + 1;
+	}
+	// words used by no name don't exist, so just fill in the gaps
+	for (int w = 1; w <= words.length; w++) {
+	    wordStart[w] = Math.max(wordStart[w], wordStart[w - 1]);
+	}
+    }
+
+    /*
+     * Fold the characters of a sequence into a key. Letters and digits
+     * have their own values, but all other characters share one, so
+     * names found from a key must be checked.
+     */
+    private static int gram(final String s, final int i) {
+	return (fold(s.charAt(i)) << 12) | (fold(s.charAt(i + 1)) << 6)
+	    | fold(s.charAt(i + 2));
+    }
+
+    private static int fold(final char c) {
+	if (c >= 'a' && c <= 'z') {
+	    return c - 'a' + 1;
+	} else if (c >= '0' && c <= '9') {
+	    return c - '0' + 27;
+	} else {
+	    return 0;
+	}
+    }
+
+    /*
+     * Return the words of the description in the text of a definition,
+     * in lower case. The description runs from "Description:" to the next
+     * field, which starts a line with less indentation, or the end of the
+     * definition. Short words are too common to be worth searching for,
+     * so are skipped.
+     */
+    private static List<String> descriptionWords(final String text) {
+	List<String> lwords = new ArrayList<>();
+	int start = text.indexOf("Description:");
+	if (start < 0) {
+	    return lwords;
+	}
+	int end = start;
+	while ((end = text.indexOf('\n', end + 1)) >= 0) {
+	    if (end + 3 < text.length() && text.charAt(end + 3) != ' ') {
+		break;
+	    }
+	}
+	if (end < 0) {
+	    end = text.length();
+	}
+	int i = start + "Description:".length();
+	while (i < end) {
+	    while (i < end && !Character.isLetterOrDigit(text.charAt(i))) {
+		i++;
+	    }
+	    int j = i;
+	    while (j < end && Character.isLetterOrDigit(text.charAt(j))) {
+		j++;
+	    }
+	    if (j - i >= GRAM) {
+		lwords.add(text.substring(i, j).toLowerCase(Locale.ROOT));
+	    }
+	    i = j;
+	}
+	return lwords;
+    }
+
+    /*
+     * Return up to max names matching the query. Names starting with the
+     * query come first, then names containing it, then names whose
+     * description has words starting with every word of the query, each
+     * group in name order.
+     */
+    List<String> find(final String query, final int max) {
+	List<String> found = new ArrayList<>();
+	String q = query.trim().toLowerCase(Locale.ROOT);
+	if (q.isEmpty() || max <= 0) {
+	    return found;
+	}
+	BitSet seen = new BitSet(names.length);
+	// names starting with the query
+	for (int i = lowerBound(lower, q);
+	     i < lower.length && lower[i].startsWith(q); i++) {
+	    if (!add(found, seen, i, max)) {
+		return found;
+	    }
+	}
+	// names containing the query
+	if (q.length() < GRAM) {
+	    for (int i = 0; i < lower.length; i++) {
+		if (lower[i].indexOf(q) > 0 && !add(found, seen, i, max)) {
+		    return found;
+		}
+	    }
+	} else {
+	    int[] range = rarestGram(q);
+	    for (int k = range[0]; k < range[1]; k++) {
+		int i = (int) grams[k];
+		if (!seen.get(i) && lower[i].contains(q)
+			&& !add(found, seen, i, max)) {
+		    return found;
+		}
+	    }
+	}
+	// names whose descriptions match
+	BitSet matches = null;
+	for (String term : q.split("\\s+")) {
+	    if (term.length() < GRAM) {
+		continue;
+	    }
+	    BitSet tmatches = new BitSet(names.length);
+	    for (int w = lowerBound(words, term);
+		 w < words.length && words[w].startsWith(term); w++) {
+		for (int k = wordStart[w]; k < wordStart[w + 1]; k++) {
+		    tmatches.set(wordNames[k]);
+		}
+	    }
+	    if (matches == null) {
+		matches = tmatches;
+	    } else {
+		matches.and(tmatches);
+	    }
+	}
+	if (matches != null) {
+	    for (int i = matches.nextSetBit(0); i >= 0;
+		 i = matches.nextSetBit(i + 1)) {
+		if (!seen.get(i) && !add(found, seen, i, max)) {
+		    return found;
+		}
+	    }
+	}
+	return found;
+    }
+
+    /*
+     * Add the name at the given position, returning false if that makes
+     * enough.
+     */
+    private boolean add(final List<String> found, final BitSet seen,
+			final int i, final int max) {
+	found.add(names[i]);
+	seen.set(i);
+	return found.size() < max;
+    }
+
+    /*
+     * Return the range of the sorted sequences holding the least common
+     * of the query's sequences, which is empty if some sequence isn't in
+     * any name, in which case nothing can match.
+     */
+    private int[] rarestGram(final String q) {
+	int[] rarest = null;
+	for (int j = 0; j + GRAM <= q.length(); j++) {
+	    long key = (long) gram(q, j) << 32;
+	    int[] range = {lowerBound(grams, key),
+			   lowerBound(grams, key + (1L << 32))};
+	    if (rarest == null || range[1] - range[0] < rarest[1] - rarest[0]) {
+		rarest = range;
+	    }
+	}
+	return rarest;
+    }
+
+    private static int lowerBound(final long[] a, final long key) {
+	int i = Arrays.binarySearch(a, key);
+	return i < 0 ? -i - 1 : i;
+    }
+
+    /*
+     * Return the position of the first string not less than the given one.
+     */
+    private static int lowerBound(final String[] a, final String s) {
+	int lo = 0;
+	int hi = a.length;
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (a[mid].compareTo(s) < 0) {
+		lo = mid + 1;
+	    } else {
+		hi = mid;
+	    }
+	}
+	return lo;
+    }
+}
@@ -21,38 +21,150 @@
 package uk.co.petertribble.jangle;
 
 import java.math.BigInteger;
+import snmp.SNMPBadValueException;
+import snmp.SNMPCounter32;
+import snmp.SNMPCounter64;
+import snmp.SNMPGauge32;
 import snmp.SNMPInteger;
 import snmp.SNMPObject;
 import snmp.SNMPObjectIdentifier;
+import snmp.SNMPOctetString;
+import snmp.SNMPTimeTicks;
+import snmp.SNMPUInteger32;
 
 /**
  * Represent the data held by a node in an SNMP tree.
  *
+ * Integer values, such as counters, gauges, and timeticks, are also held
+ * as a primitive long, so that they can be read and compared without
+ * creating a BigInteger. Values retrieved by an SnmpController are held
+ * only as a long, and the snmp library object is created if and when it's
+ * asked for.
+ *
  * @author Peter Tribble
  */
 public class SnmpObject {
 
-    private final SNMPObjectIdentifier oid;
+    private static final long MASK32 = 0xffffffffL;
+
+    private final SnmpOid oid;
+    private SNMPObjectIdentifier soid;
     private SNMPObject value;
+    /*
+     * For integer types, the BER tag of the type and the value as a long,
+     * with unsigned types held as their bit pattern. A tag of zero means
+     * the value isn't one we hold as a long.
+     */
+    private byte tag;
+    private long number;
+    private long timestamp;
 
     /**
-     * Create a new SnmpObject of the given OID and value.
+     * Create a new SnmpObject of the given OID and value, timestamped with
+     * the current time.
      *
      * @param noid the OID
      * @param nvalue the value of this object
      */
     public SnmpObject(final SNMPObjectIdentifier noid,
 		      final SNMPObject nvalue) {
+	this(noid, nvalue, System.currentTimeMillis());
+    }
+
+    /**
+     * Create a new SnmpObject of the given OID and value, retrieved at the
+     * given time.
+     *
+     * @param noid the OID
+     * @param nvalue the value of this object
+     * @param ntimestamp the time the value was retrieved, in milliseconds
+     * since the epoch
+     */
+    public SnmpObject(final SNMPObjectIdentifier noid,
+		      final SNMPObject nvalue, final long ntimestamp) {
+	this(SnmpOid.of((long[]) noid.getValue()), nvalue, ntimestamp);
+	soid = noid;
+    }
+
+    /*
+     * Create a new SnmpObject of the given OID and value, without creating
+     * the snmp library object for the OID.
+     */
+    SnmpObject(final SnmpOid noid, final SNMPObject nvalue,
+		final long ntimestamp) {
+	oid = noid;
+	timestamp = ntimestamp;
+	setNumber(nvalue);
+    }
+
+    /*
+     * Create a new SnmpObject holding an integer value, of the type given
+     * by its BER tag, without creating the snmp library object for it.
+     */
+    SnmpObject(final SnmpOid noid, final byte ntag,
+		final long nnumber, final long ntimestamp) {
 	oid = noid;
+	tag = ntag;
+	number = is32bit(ntag) ? nnumber & MASK32 : nnumber;
+	timestamp = ntimestamp;
+    }
+
+    private static boolean is32bit(final byte t) {
+	return t == SnmpMessage.COUNTER32 || t == SnmpMessage.GAUGE32
+	    || t == SnmpMessage.TIMETICKS || t == SnmpMessage.UINTEGER32;
+    }
+
+    /*
+     * Save the value, and if it's an integer type save its long form.
+     */
+    private void setNumber(final SNMPObject nvalue) {
 	value = nvalue;
+	if (nvalue instanceof SNMPCounter32) {
+	    tag = SnmpMessage.COUNTER32;
+	} else if (nvalue instanceof SNMPGauge32) {
+	    tag = SnmpMessage.GAUGE32;
+	} else if (nvalue instanceof SNMPTimeTicks) {
+	    tag = SnmpMessage.TIMETICKS;
+	} else if (nvalue instanceof SNMPUInteger32) {
+	    tag = SnmpMessage.UINTEGER32;
+	} else if (nvalue instanceof SNMPCounter64) {
+	    tag = SnmpMessage.COUNTER64;
+	} else if (nvalue instanceof SNMPInteger) {
+	    BigInteger b = (BigInteger) nvalue.getValue();
+	    // too big for a long, only the library object can hold it
+	    tag = b.bitLength() < 64 ? SnmpMessage.INTEGER : 0;
+	} else {
+	    tag = 0;
+	}
+	number = tag == 0 ? 0
+	    : ((BigInteger) nvalue.getValue()).longValue();
     }
 
     /**
      * Return the oid represented by this SnmpObject.
      *
      * @return the oid represented by this SnmpObject
+     *
+     * @see #getSnmpOid
      */
     public SNMPObjectIdentifier getOid() {
+	if (soid == null) {
+	    try {
+		soid = new SNMPObjectIdentifier(oid.toLongArray());
+	    } catch (SNMPBadValueException sbve) {
+		// can't happen, the library accepts any array
+		soid = new SNMPObjectIdentifier();
+	    }
+	}
+	return soid;
+    }
+
+    /**
+     * Return the oid represented by this SnmpObject, as an SnmpOid.
+     *
+     * @return the oid represented by this SnmpObject
+     */
+    public SnmpOid getSnmpOid() {
 	return oid;
     }
 
@@ -64,18 +176,50 @@ public class SnmpObject {
      * @see #setValue
      */
     public SNMPObject getValue() {
+	if (value == null) {
+	    value = createValue();
+	}
 	return value;
     }
 
+    private SNMPObject createValue() {
+	switch (tag) {
+	case SnmpMessage.COUNTER32:
+	    return SnmpMessage.unsigned(new SNMPCounter32(), number);
+	case SnmpMessage.GAUGE32:
+	    return new SNMPGauge32(number);
+	case SnmpMessage.TIMETICKS:
+	    return new SNMPTimeTicks(number);
+	case SnmpMessage.UINTEGER32:
+	    return SnmpMessage.unsigned(new SNMPUInteger32(), number);
+	case SnmpMessage.COUNTER64:
+	    return SnmpMessage.unsigned(new SNMPCounter64(), number);
+	default:
+	    return new SNMPInteger(number);
+	}
+    }
+
     /**
-     * Set the value of this SnmpObject.
+     * Set the value of this SnmpObject, updating its timestamp to the
+     * current time.
      *
      * @param nvalue the new value of this SnmpObject
      *
      * @see #getValue
      */
     public void setValue(final SNMPObject nvalue) {
-	value = nvalue;
+	setNumber(nvalue);
+	timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Return the time the value of this SnmpObject was retrieved.
+     *
+     * @return the time the value was retrieved, in milliseconds since the
+     * epoch
+     */
+    public long getTimestamp() {
+	return timestamp;
     }
 
     /**
@@ -95,7 +239,7 @@ public class SnmpObject {
      * @return a long string representation of the type of this SnmpObject
      */
     public String getType() {
-	return value.getClass().getName();
+	return getValue().getClass().getName();
     }
 
     /**
@@ -114,14 +258,13 @@ public class SnmpObject {
      * @return the string form of the value of this SnmpObject
      */
     public String valueString() {
-	if ("snmp.SNMPOctetString".equals(getType())) {
-	    String snmpString = value.toString();
+	if (tag != 0) {
+	    return tag == SnmpMessage.INTEGER ? Long.toString(number)
+		: Long.toUnsignedString(number);
+	}
+	if (value instanceof SNMPOctetString) {
 	    // truncate at first null character
-	    int nullLocation = snmpString.indexOf('\0');
-	    if (nullLocation >= 0) {
-		snmpString = snmpString.substring(0, nullLocation);
-	    }
-	    return snmpString;
+	    return SnmpUtil.getDisplayString((byte[]) value.getValue());
 	} else {
 	    return value.toString();
 	}
@@ -134,7 +277,105 @@ public class SnmpObject {
      * @return the numerical value of this object
      */
     public BigInteger getNumber() {
-	return value instanceof SNMPInteger
-	    ? (BigInteger) value.getValue() : BigInteger.ZERO;
+	if (tag == 0) {
+	    return value instanceof SNMPInteger
+		? (BigInteger) value.getValue() : BigInteger.ZERO;
+	}
+	return tag == SnmpMessage.COUNTER64 && number < 0
+	    ? new BigInteger(Long.toUnsignedString(number))
+	    : BigInteger.valueOf(number);
+    }
+
+    /*
+     * Return the BER tag of an integer value, or zero if the value isn't
+     * held as a long.
+     */
+    byte getTag() {
+	return tag;
+    }
+
+    /**
+     * Return whether this object holds an integer value that can be read
+     * as a long.
+     *
+     * @return true if the value of this object can be read as a long
+     *
+     * @see #getLong
+     */
+    public boolean isLong() {
+	return tag != 0;
+    }
+
+    /**
+     * Return the numerical value of this object as a long, without
+     * creating a BigInteger. A Counter64 larger than Long.MAX_VALUE is
+     * returned as its unsigned bit pattern. If not a number that can be
+     * read as a long, return zero.
+     *
+     * @return the numerical value of this object
+     *
+     * @see #isLong
+     */
+    public long getLong() {
+	return number;
+    }
+
+    /**
+     * Return the numerical value of this object as a double, treating a
+     * Counter64 as unsigned. If not a number, return zero.
+     *
+     * @return the numerical value of this object
+     */
+    public double getDouble() {
+	if (tag == 0) {
+	    return getNumber().doubleValue();
+	}
+	return tag == SnmpMessage.COUNTER64 ? unsignedToDouble(number)
+	    : (double) number;
+    }
+
+    /**
+     * Return the rate of change per second of this object's value since an
+     * earlier sample of the same object.
+     *
+     * Counters are treated as unsigned. A Counter32 or TimeTicks value that
+     * has wrapped since the earlier sample is allowed for, unless the
+     * counter would have had to advance by more than half its range, in
+     * which case it has been reset. A Counter64 that goes backwards has
+     * been reset. A reset counter has no rate. Gauges and integers may
+     * go down as well as up.
+     *
+     * @param earlier an earlier sample of the same object
+     *
+     * @return the rate of change per second, or NaN if there is no valid
+     * rate
+     */
+    public double getRate(final SnmpObject earlier) {
+	long dt = timestamp - earlier.timestamp;
+	if (tag == 0 || tag != earlier.tag || dt <= 0) {
+	    return Double.NaN;
+	}
+	long delta = number - earlier.number;
+	switch (tag) {
+	case SnmpMessage.COUNTER32:
+	case SnmpMessage.TIMETICKS:
+	    delta &= MASK32;
+	    if (number < earlier.number && delta > (MASK32 >>> 1)) {
+		return Double.NaN;
+	    }
+	    break;
+	case SnmpMessage.COUNTER64:
+	    if (Long.compareUnsigned(number, earlier.number) < 0) {
+		return Double.NaN;
+	    }
+	    return 1000.0 * unsignedToDouble(delta) / dt;
+	default:
+	    break;
+	}
+	return 1000.0 * delta / dt;
+    }
+
+    private static double unsignedToDouble(final long l) {
+	return l >= 0 ? (double) l : ((l >>> 1) | (l & 1)) * 2.0;
     }
 }
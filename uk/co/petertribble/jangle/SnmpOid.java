@@ -0,0 +1,317 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snmp object identifier. The components, or arcs, are
+ * unsigned 32-bit values, held in an int array. The parent of an OID, and
+ * other prefixes of it, share the array of the original rather than
+ * copying it. The hash code and string form are calculated when first
+ * needed and then saved.
+ *
+ * SnmpOids are ordered lexicographically, which is the order in which
+ * they are walked.
+ *
+ * @author Peter Tribble
+ */
+public final class SnmpOid implements Comparable<SnmpOid> {
+
+    private static final long MAX_ARC = 0xffffffffL;
+
+    private final int[] arcs;
+    private final int length;
+    private int hash;
+    private String string;
+
+    private SnmpOid(final int[] narcs, final int nlength) {
+	arcs = narcs;
+	length = nlength;
+    }
+
+    /*
+     * Create an SnmpOid from an array of arcs, which must not be modified
+     * afterwards.
+     */
+    static SnmpOid of(final int[] narcs) {
+	return new SnmpOid(narcs, narcs.length);
+    }
+
+    /**
+     * Create an SnmpOid from its dotted string form, such as
+     * 1.3.6.1.2.1.1.1.0.
+     *
+     * @param s the string form of the OID
+     *
+     * @return a new SnmpOid
+     *
+     * @throws SnmpException if the string isn't a valid OID
+     */
+    public static SnmpOid valueOf(final String s) throws SnmpException {
+	int n = s.length();
+	int ncomp = 1;
+	for (int i = 0; i < n; i++) {
+	    if (s.charAt(i) == '.') {
+		ncomp++;
+	    }
+	}
+	int[] narcs = new int[ncomp];
+	int i = 0;
+	for (int j = 0; j < ncomp; j++) {
+	    long value = 0;
+	    int start = i;
+	    while (i < n && s.charAt(i) != '.') {
+		char c = s.charAt(i);
+		if (c < '0' || c > '9') {
+		    throw new SnmpException("Invalid OID " + s);
+		}
+		value = 10 * value + (c - '0');
+		if (value > MAX_ARC) {
+		    throw new SnmpException("Invalid OID " + s);
+		}
+		i++;
+	    }
+	    if (i == start) {
+		throw new SnmpException("Invalid OID " + s);
+	    }
+	    narcs[j] = (int) value;
+	    // skip the separator
+	    i++;
+	}
+	if (narcs[0] < 0 || narcs[0] > 2) {
+	    throw new SnmpException("Invalid OID " + s);
+	}
+	return of(narcs);
+    }
+
+    /*
+     * Create an SnmpOid from an array of its arcs, as held by the snmp
+     * library, which doesn't limit them to 32 bits.
+     */
+    static SnmpOid of(final long[] larcs) {
+	int[] narcs = new int[larcs.length];
+	for (int i = 0; i < larcs.length; i++) {
+	    narcs[i] = (int) larcs[i];
+	}
+	return of(narcs);
+    }
+
+    /**
+     * Return the number of arcs in this OID.
+     *
+     * @return the number of arcs in this OID
+     */
+    public int size() {
+	return length;
+    }
+
+    /**
+     * Return the given arc of this OID.
+     *
+     * @param i the index of the arc, starting from zero
+     *
+     * @return the value of the arc
+     */
+    public long getArc(final int i) {
+	if (i >= length) {
+	    throw new IndexOutOfBoundsException("Arc " + i + " of " + length);
+	}
+	return arcs[i] & MAX_ARC;
+    }
+
+    /**
+     * Return the last arc of this OID, which for an object in a table is
+     * the instance.
+     *
+     * @return the value of the last arc
+     */
+    public long getInstance() {
+	return getArc(length - 1);
+    }
+
+    /**
+     * Return the parent of this OID, without copying it.
+     *
+     * @return the parent of this OID, or null if this OID has only one arc
+     */
+    public SnmpOid getParent() {
+	return length > 1 ? new SnmpOid(arcs, length - 1) : null;
+    }
+
+    /**
+     * Return the prefix of this OID with the given number of arcs, without
+     * copying it.
+     *
+     * @param n the number of arcs to keep
+     *
+     * @return the prefix of this OID
+     */
+    public SnmpOid getPrefix(final int n) {
+	if (n < 1 || n > length) {
+	    throw new IndexOutOfBoundsException("Prefix " + n + " of "
+						+ length);
+	}
+	return n == length ? this : new SnmpOid(arcs, n);
+    }
+
+    /**
+     * Return the child of this OID with the given last arc.
+     *
+     * @param arc the value of the last arc of the child
+     *
+     * @return a new SnmpOid
+     */
+    public SnmpOid getChild(final long arc) {
+	int[] narcs = Arrays.copyOf(arcs, length + 1);
+	narcs[length] = (int) arc;
+	return of(narcs);
+    }
+
+    /**
+     * Return the sibling of this OID with the given last arc.
+     *
+     * @param arc the value of the last arc of the sibling
+     *
+     * @return a new SnmpOid
+     */
+    public SnmpOid getSibling(final long arc) {
+	int[] narcs = Arrays.copyOf(arcs, length);
+	narcs[length - 1] = (int) arc;
+	return of(narcs);
+    }
+
+    /*
+     * Return the arcs of this OID after the first n, such as the index of
+     * an entry in a table. The result isn't necessarily a valid OID.
+     */
+    SnmpOid getSuffix(final int n) {
+	return of(Arrays.copyOfRange(arcs, n, length));
+    }
+
+    /*
+     * Return this OID with the arcs of the given suffix appended.
+     */
+    SnmpOid append(final SnmpOid suffix) {
+	int[] narcs = Arrays.copyOf(arcs, length + suffix.length);
+	System.arraycopy(suffix.arcs, 0, narcs, length, suffix.length);
+	return of(narcs);
+    }
+
+    /**
+     * Determine whether this OID lies within the subtree rooted at another
+     * OID. An OID is considered to lie within its own subtree.
+     *
+     * @param root the root of the subtree
+     *
+     * @return true if this OID lies within the subtree
+     */
+    public boolean isInSubtree(final SnmpOid root) {
+	if (length < root.length) {
+	    return false;
+	}
+	for (int i = root.length - 1; i >= 0; i--) {
+	    if (arcs[i] != root.arcs[i]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Return the arcs of this OID as an array of longs, as used by the
+     * snmp library.
+     *
+     * @return a new array holding the arcs of this OID
+     */
+    public long[] toLongArray() {
+	long[] larcs = new long[length];
+	for (int i = 0; i < length; i++) {
+	    larcs[i] = arcs[i] & MAX_ARC;
+	}
+	return larcs;
+    }
+
+    @Override
+    public int compareTo(final SnmpOid other) {
+	int n = Math.min(length, other.length);
+	for (int i = 0; i < n; i++) {
+	    if (arcs[i] != other.arcs[i]) {
+		return Integer.compareUnsigned(arcs[i], other.arcs[i]);
+	    }
+	}
+	return length - other.length;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+	if (this == o) {
+	    return true;
+	}
+	if (!(o instanceof SnmpOid)) {
+	    return false;
+	}
+	SnmpOid other = (SnmpOid) o;
+	if (length != other.length) {
+	    return false;
+	}
+	for (int i = length - 1; i >= 0; i--) {
+	    if (arcs[i] != other.arcs[i]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    @Override
+    public int hashCode() {
+	int h = hash;
+	if (h == 0) {
+	    for (int i = 0; i < length; i++) {
+		h = 31 * h + arcs[i];
+	    }
+	    hash = h;
+	}
+	return h;
+    }
+
+    /**
+     * Return the dotted string form of this OID.
+     *
+     * @return the string form of this OID
+     */
+    @Override
+    public String toString() {
+	String s = string;
+	if (s == null) {
+	    StringBuilder sb = new StringBuilder(4 * length);
+	    for (int i = 0; i < length; i++) {
+		if (i > 0) {
+		    sb.append('.');
+		}
+		sb.append(arcs[i] & MAX_ARC);
+	    }
+	    s = sb.toString();
+	    string = s;
+	}
+	return s;
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A trie of named OIDs, one level per arc, used to find the longest
+ * known prefix of an OID in a single pass down the tree, without creating
+ * any intermediate OIDs or strings.
+ *
+ * A trie that has been shared with other threads mustn't be modified.
+ * Instead, edit() gives a copy to modify, which can then be shared in its
+ * place. Nodes are only copied when they're modified, so a copy costs
+ * little more than the changes made to it.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpOidTrie {
+
+    private Node root;
+    // only nodes with this owner may be modified in place
+    private Object owner;
+
+    SnmpOidTrie() {
+	owner = new Object();
+	root = new Node(0, owner);
+    }
+
+    private SnmpOidTrie(final Node nroot) {
+	owner = new Object();
+	root = nroot;
+    }
+
+    /*
+     * Return a copy of this trie that can be modified without affecting
+     * this one. Any later changes to this trie will copy the nodes it
+     * shares with the copy.
+     */
+    SnmpOidTrie edit() {
+	owner = new Object();
+	return new SnmpOidTrie(root);
+    }
+
+    /*
+     * A node in the trie. The children are kept sorted by arc, compared
+     * as unsigned values, so they're in walk order and can be searched.
+     * The text of the symbol may be left in a buffer, such as a mapped
+     * index file, and only decoded when it's asked for, and likewise the
+     * syntax, which follows the text. A named node records the file its
+     * name came from. When MIBs are loaded lazily,
+     * a node may record the file that defines it before it has a name.
+     */
+    static final class Node {
+	final int depth;
+	String name;
+	File source;
+	File file;
+	private String symbol;
+	private SnmpSyntax syntax;
+	private ByteBuffer textbuf;
+	private int textpos;
+	private int textlen;
+	private int syntaxlen;
+	private final Object owner;
+	private int[] arcs = new int[0];
+	private Node[] children = new Node[0];
+
+	Node(final int ndepth, final Object nowner) {
+	    depth = ndepth;
+	    owner = nowner;
+	}
+
+	/*
+	 * Copy a node for a new owner. The array of arcs is never modified
+	 * in place, so can be shared, but the children may be replaced.
+	 */
+	private Node(final Node node, final Object nowner) {
+	    depth = node.depth;
+	    owner = nowner;
+	    name = node.name;
+	    source = node.source;
+	    file = node.file;
+	    symbol = node.symbol;
+	    syntax = node.syntax;
+	    textbuf = node.textbuf;
+	    textpos = node.textpos;
+	    textlen = node.textlen;
+	    syntaxlen = node.syntaxlen;
+	    arcs = node.arcs;
+	    children = node.children.clone();
+	}
+
+	/*
+	 * The decoded text is saved, but not under any lock, so another
+	 * thread may occasionally decode it again.
+	 */
+	String getSymbol() {
+	    String s = symbol;
+	    if (s == null && textbuf != null) {
+		byte[] b = new byte[textlen];
+		textbuf.duplicate().position(textpos).get(b);
+		s = new String(b, StandardCharsets.UTF_8);
+		symbol = s;
+	    }
+	    return s;
+	}
+
+	/*
+	 * Return the syntax of the object this node names, or null if it
+	 * isn't an object with a syntax. As with the text, it's decoded
+	 * when first asked for.
+	 */
+	SnmpSyntax getSyntax() {
+	    SnmpSyntax s = syntax;
+	    if (s == null && textbuf != null && syntaxlen > 0) {
+		s = SnmpMibCache.getSyntax(textbuf.duplicate()
+					.position(textpos + textlen));
+		syntax = s;
+	    }
+	    return s;
+	}
+
+	/*
+	 * Replace the syntax of this node, which must belong to the owner of
+	 * the trie being modified.
+	 */
+	void setSyntax(final SnmpSyntax nsyntax) {
+	    syntax = nsyntax;
+	}
+
+	/*
+	 * Forget the name of this node, which must belong to the owner of
+	 * the trie being modified.
+	 */
+	void clearName() {
+	    name = null;
+	    source = null;
+	    symbol = null;
+	    syntax = null;
+	    textbuf = null;
+	}
+
+	/*
+	 * Return the child with the given arc, or null.
+	 */
+	Node getChild(final int arc) {
+	    int i = find(arc);
+	    return i < 0 ? null : children[i];
+	}
+
+	/*
+	 * Return the child with the given arc, creating it if necessary,
+	 * and copying it if it belongs to another owner. This node must
+	 * belong to the given owner.
+	 */
+	Node addChild(final int arc, final Object nowner) {
+	    int i = find(arc);
+	    if (i >= 0) {
+		Node child = children[i];
+		if (child.owner != nowner) {
+		    child = new Node(child, nowner);
+		    children[i] = child;
+		}
+		return child;
+	    }
+	    i = -i - 1;
+	    int n = arcs.length;
+	    int[] narcs = Arrays.copyOf(arcs, n + 1);
+	    Node[] nchildren = Arrays.copyOf(children, n + 1);
+	    System.arraycopy(arcs, i, narcs, i + 1, n - i);
+	    System.arraycopy(children, i, nchildren, i + 1, n - i);
+	    Node child = new Node(depth + 1, nowner);
+	    narcs[i] = arc;
+	    nchildren[i] = child;
+	    arcs = narcs;
+	    children = nchildren;
+	    return child;
+	}
+
+	int getChildCount() {
+	    return arcs.length;
+	}
+
+	long getChildArc(final int i) {
+	    return arcs[i] & 0xffffffffL;
+	}
+
+	Node getChildAt(final int i) {
+	    return children[i];
+	}
+
+	private int find(final int arc) {
+	    int lo = 0;
+	    int hi = arcs.length - 1;
+	    while (lo <= hi) {
+		int mid = (lo + hi) >>> 1;
+		int c = Integer.compareUnsigned(arcs[mid], arc);
+		if (c < 0) {
+		    lo = mid + 1;
+		} else if (c > 0) {
+		    hi = mid - 1;
+		} else {
+		    return mid;
+		}
+	    }
+	    return -(lo + 1);
+	}
+    }
+
+    /*
+     * Record the names for an OID. The name is the name of the OID value,
+     * and the symbol is the definition of the MIB symbol it came from,
+     * found in the given source file. The syntax may be null.
+     */
+    void put(final SnmpOid oid, final String name, final String symbol,
+	     final SnmpSyntax syntax, final File source) {
+	Node node = addNode(oid);
+	node.name = name;
+	node.source = source;
+	node.symbol = symbol;
+	node.syntax = syntax;
+	node.textbuf = null;
+    }
+
+    /*
+     * Record the names for an OID, where the text of the symbol is held
+     * as UTF-8 in the given buffer, which must not be modified, followed
+     * by the encoded syntax, if its length isn't zero.
+     */
+    void put(final SnmpOid oid, final String name, final ByteBuffer buf,
+	     final int pos, final int len, final int slen,
+	     final File source) {
+	Node node = addNode(oid);
+	node.name = name;
+	node.source = source;
+	node.symbol = null;
+	node.syntax = null;
+	node.textbuf = buf;
+	node.textpos = pos;
+	node.textlen = len;
+	node.syntaxlen = slen;
+    }
+
+    /*
+     * Record the MIB file that defines the given OID.
+     */
+    void putFile(final SnmpOid oid, final File file) {
+	addNode(oid).file = file;
+    }
+
+    /*
+     * Return the node for the given OID, creating it if necessary, ready
+     * to be modified.
+     */
+    Node modify(final SnmpOid oid) {
+	return addNode(oid);
+    }
+
+    private Node addNode(final SnmpOid oid) {
+	if (root.owner != owner) {
+	    root = new Node(root, owner);
+	}
+	Node node = root;
+	for (int i = 0; i < oid.size(); i++) {
+	    node = node.addChild((int) oid.getArc(i), owner);
+	}
+	return node;
+    }
+
+    Node getRoot() {
+	return root;
+    }
+
+    /*
+     * Return the OIDs of all the nodes matching the given test, in walk
+     * order.
+     */
+    List<SnmpOid> findAll(final Predicate<Node> test) {
+	List<SnmpOid> oids = new ArrayList<>();
+	findAll(root, new int[0], test, oids);
+	return oids;
+    }
+
+    private static void findAll(final Node node, final int[] narcs,
+				final Predicate<Node> test,
+				final List<SnmpOid> oids) {
+	if (narcs.length > 0 && test.test(node)) {
+	    oids.add(SnmpOid.of(narcs));
+	}
+	for (int i = 0; i < node.arcs.length; i++) {
+	    int[] carcs = Arrays.copyOf(narcs, narcs.length + 1);
+	    carcs[narcs.length] = node.arcs[i];
+	    findAll(node.children[i], carcs, test, oids);
+	}
+    }
+
+    /*
+     * Return the node for the given OID, or null if there isn't one.
+     */
+    Node getNode(final SnmpOid oid) {
+	Node node = root;
+	for (int i = 0; i < oid.size() && node != null; i++) {
+	    node = node.getChild((int) oid.getArc(i));
+	}
+	return node;
+    }
+
+    /*
+     * Return the deepest named node on the path to the given OID, which
+     * may be the OID itself, or null if no prefix of the OID is named.
+     * The depth of the node is the number of arcs of the OID it matched.
+     */
+    Node findNearest(final SnmpOid oid) {
+	Node nearest = null;
+	Node node = root;
+	for (int i = 0; i < oid.size(); i++) {
+	    node = node.getChild((int) oid.getArc(i));
+	    if (node == null) {
+		break;
+	    }
+	    if (node.name != null) {
+		nearest = node;
+	    }
+	}
+	return nearest;
+    }
+
+    /*
+     * Return the deepest node on the path to the given OID that records
+     * the file defining it, or null if there isn't one.
+     */
+    Node findNearestFile(final SnmpOid oid) {
+	Node nearest = null;
+	Node node = root;
+	for (int i = 0; i < oid.size(); i++) {
+	    node = node.getChild((int) oid.getArc(i));
+	    if (node == null) {
+		break;
+	    }
+	    if (node.file != null) {
+		nearest = node;
+	    }
+	}
+	return nearest;
+    }
+}
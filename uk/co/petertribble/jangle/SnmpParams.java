@@ -14,12 +14,14 @@
  *
  * CDDL HEADER END
  *
- * Copyright 2025 Peter Tribble
+ * Copyright 2026 Peter Tribble
  *
  */
 
 package uk.co.petertribble.jangle;
 
+import java.util.Objects;
+
 /**
  * Holds details of an snmp server.
  *
@@ -151,4 +153,31 @@ public class SnmpParams {
     public int getVersion() {
 	return version;
     }
+
+    /**
+     * Compare this SnmpParams with another object. Two SnmpParams are equal
+     * if they describe the same server, community, port, and version.
+     *
+     * @param o the object to compare with
+     *
+     * @return true if the given object is an equal SnmpParams
+     */
+    @Override
+    public boolean equals(final Object o) {
+	if (this == o) {
+	    return true;
+	}
+	if (!(o instanceof SnmpParams)) {
+	    return false;
+	}
+	SnmpParams other = (SnmpParams) o;
+	return port == other.port && version == other.version
+	    && Objects.equals(server, other.server)
+	    && Objects.equals(community, other.community);
+    }
+
+    @Override
+    public int hashCode() {
+	return Objects.hash(server, community, port, version);
+    }
 }
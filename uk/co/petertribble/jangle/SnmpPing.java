@@ -14,7 +14,7 @@
  *
  * CDDL HEADER END
  *
- * Copyright 2025 Peter Tribble
+ * Copyright 2026 Peter Tribble
  *
  */
 
@@ -69,24 +69,21 @@ public final class SnmpPing {
     }
 
     private static void doPing(final String host) {
+	SnmpControllerPool pool = SnmpControllerPool.getInstance();
+	SnmpController sc = pool.acquire(new SnmpParams(host, community));
 	try {
-	    SnmpParams snp = new SnmpParams(host, community);
-	    SnmpController sc = new SnmpController(snp);
 	    SnmpObject sno = sc.getValue(pingoid);
 	    printout(host, sno);
 	} catch (Exception e) {
 	    System.err.println(host + ": Oops!");
+	} finally {
+	    pool.release(sc);
 	}
     }
 
     private static void printout(final String host, final SnmpObject sno) {
-	String type = sno.getTypeString();
-	System.out.print(host + ": " + sno.toString() + " = ");
-	if ("OctetString".equals(type)) {
-	    System.out.println(sno.valueString());
-	} else {
-	    System.out.println(sno.getValue());
-	}
+	System.out.println(host + ": " + sno.toString() + " = "
+			   + sno.valueString());
     }
 
     private static void usage(final String s) {
@@ -0,0 +1,402 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import snmp.SNMPRequestException;
+
+/**
+ * Walk an snmp subtree with GETNEXT requests, keeping several requests in
+ * flight at once on a single socket, so that a walk isn't limited to one
+ * entry per round trip.
+ *
+ * The OID space to be walked is split into segments, each of which is
+ * walked independently with one request outstanding at a time. Whenever
+ * there's room in the window, the busiest segment is split speculatively
+ * at the next sibling of one of the ancestors of its current position,
+ * which in a table is the start of the next column, or failing that
+ * further along the current column. Responses are matched
+ * to segments by request id, and the results of the segments concatenated,
+ * which keeps them in order.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpPipelinedWalker {
+
+    /**
+     * The default number of requests in flight.
+     */
+    static final int DEFAULT_WINDOW = 8;
+
+    private final SnmpController sc;
+    private final int window;
+    private static final long MAX_ARC = 0xffffffffL;
+
+    private SnmpOid root;
+
+    private DatagramSocket ds;
+    private final ByteBuffer sendbuf
+	= ByteBuffer.allocate(SnmpController.MAX_DATAGRAM);
+    private DatagramPacket sendpacket;
+    private final SnmpMessage response = new SnmpMessage();
+    private InetAddress address;
+    private int port;
+    private SnmpRtt rtt;
+    private int requestID;
+    private final Map<Integer, Segment> outstanding = new HashMap<>();
+    private SnmpException walkError;
+
+    /**
+     * Create a new walker using the given SnmpController to describe the
+     * server being walked.
+     *
+     * @param nsc the SnmpController for the server to walk
+     * @param nwindow the maximum number of requests in flight
+     */
+    SnmpPipelinedWalker(final SnmpController nsc, final int nwindow) {
+	sc = nsc;
+	window = Math.max(1, nwindow);
+    }
+
+    /*
+     * A segment of the OID space, walked from its starting point up to and
+     * including its upper bound.
+     */
+    private static final class Segment {
+	// the last OID retrieved, the starting point for the next request
+	SnmpOid cursor;
+	// the upper bound, null for the last segment
+	SnmpOid upper;
+	boolean started;
+	boolean done;
+	int retries;
+	long sent;
+	long deadline;
+	final List<SnmpObject> results = new ArrayList<>();
+
+	Segment(final SnmpOid ncursor, final SnmpOid nupper) {
+	    cursor = ncursor;
+	    upper = nupper;
+	}
+    }
+
+    /**
+     * Walk the subtree rooted at the given oid.
+     *
+     * @param startOID the OID to start the walk from
+     *
+     * @return a List of all SnmpObjects under the given oid, in order
+     *
+     * @throws SnmpException if an error occurs
+     */
+    List<SnmpObject> walk(final String startOID) throws SnmpException {
+	return walk(startOID, new ArrayList<>());
+    }
+
+    /**
+     * Walk the subtree rooted at the given oid, initially partitioned at
+     * the given points, which must be within the subtree and in order.
+     *
+     * @param startOID the OID to start the walk from
+     * @param splits the OIDs to partition the subtree at
+     *
+     * @return a List of all SnmpObjects under the given oid, in order
+     *
+     * @throws SnmpException if an error occurs
+     */
+    List<SnmpObject> walk(final String startOID, final List<String> splits)
+	    throws SnmpException {
+	address = sc.getAddress();
+	port = sc.getParams().getPort();
+	rtt = sc.getRtt();
+	SnmpOid start = SnmpOid.valueOf(startOID);
+	root = start;
+	walkError = null;
+	List<Segment> segments = new ArrayList<>();
+	segments.add(new Segment(start, null));
+	for (String split : splits) {
+	    SnmpOid oid = SnmpOid.valueOf(split);
+	    segments.get(segments.size() - 1).upper = oid;
+	    segments.add(new Segment(oid, null));
+	}
+	try {
+	    ds = new DatagramSocket();
+	    sendpacket = new DatagramPacket(sendbuf.array(), 0, address,
+				port);
+	    fillWindow(segments, start);
+	    byte[] buf = new byte[SnmpController.MAX_DATAGRAM];
+	    ByteBuffer rdata = ByteBuffer.wrap(buf);
+	    DatagramPacket dp = new DatagramPacket(buf, buf.length);
+	    while (!outstanding.isEmpty()) {
+		ds.setSoTimeout(nextTimeout());
+		dp.setLength(buf.length);
+		try {
+		    ds.receive(dp);
+		} catch (SocketTimeoutException ste) {
+		    retry();
+		    continue;
+		}
+		Segment seg = match(dp, rdata);
+		if (seg != null) {
+		    rtt.response(System.nanoTime() - seg.sent, seg.retries);
+		    handle(seg, response);
+		    if (!seg.done) {
+			send(seg);
+		    }
+		    fillWindow(segments, start);
+		}
+		/*
+		 * While other segments are still answering, the receive won't
+		 * time out, so check for requests that need resending here.
+		 */
+		retry();
+	    }
+	} catch (IOException ioe) {
+	    throw new SnmpException("IOException walking " + startOID);
+	} finally {
+	    if (ds != null) {
+		ds.close();
+	    }
+	    outstanding.clear();
+	}
+	List<SnmpObject> lso = new ArrayList<>();
+	for (Segment seg : segments) {
+	    lso.addAll(seg.results);
+	}
+	return lso;
+    }
+
+    /*
+     * Start any segments that haven't been started yet, then split segments
+     * until the window is full, or no more splits can be found. The
+     * busiest segment is split first, as it's the one most likely to have
+     * a lot left to walk.
+     */
+    private void fillWindow(final List<Segment> segments,
+			final SnmpOid start)
+	    throws SnmpException, IOException {
+	for (Segment seg : segments) {
+	    if (outstanding.size() >= window) {
+		return;
+	    }
+	    if (!seg.started) {
+		send(seg);
+	    }
+	}
+	while (outstanding.size() < window) {
+	    int best = -1;
+	    SnmpOid bestSplit = null;
+	    for (int i = 0; i < segments.size(); i++) {
+		Segment seg = segments.get(i);
+		if (seg.done || best >= 0 && seg.results.size()
+			< segments.get(best).results.size()) {
+		    continue;
+		}
+		SnmpOid split = splitPoint(seg, start);
+		if (split != null) {
+		    best = i;
+		    bestSplit = split;
+		}
+	    }
+	    if (best < 0) {
+		return;
+	    }
+	    Segment seg = segments.get(best);
+	    Segment nseg = new Segment(bestSplit, seg.upper);
+	    seg.upper = bestSplit;
+	    segments.add(best + 1, nseg);
+	    send(nseg);
+	}
+    }
+
+    /*
+     * Find a point to split a segment at, beyond its current position and
+     * before its upper bound, and within the subtree being walked. Returns
+     * null if there isn't one. A segment that hasn't returned anything yet
+     * isn't split, as there's nothing to guess from, unless it's the
+     * initial segment.
+     */
+    private SnmpOid splitPoint(final Segment seg, final SnmpOid start) {
+	SnmpOid cur = seg.cursor;
+	if (!cur.isInSubtree(start)) {
+	    return null;
+	}
+	if (cur.size() == start.size()) {
+	    SnmpOid split = start.getChild(1);
+	    return isBelow(split, seg.upper) ? split : null;
+	}
+	if (seg.results.isEmpty()) {
+	    return null;
+	}
+	for (int d = Math.max(cur.size() - 2, start.size());
+			d >= start.size(); d--) {
+	    SnmpOid prefix = cur.getPrefix(d + 1);
+	    if (prefix.getInstance() == MAX_ARC) {
+		continue;
+	    }
+	    SnmpOid split = prefix.getSibling(prefix.getInstance() + 1);
+	    if (isBelow(split, seg.upper)) {
+		return split;
+	    }
+	}
+	/*
+	 * As a last resort, guess that the instances are numbered densely and
+	 * split further along, so that long table columns aren't walked in
+	 * their entirety by a single segment.
+	 */
+	long instance = cur.getInstance();
+	if (cur.size() > start.size() + 1 && instance > 0
+		&& 2 * instance + 1 <= MAX_ARC) {
+	    SnmpOid split = cur.getSibling(2 * instance + 1);
+	    if (isBelow(split, seg.upper)) {
+		return split;
+	    }
+	}
+	return null;
+    }
+
+    private static boolean isBelow(final SnmpOid oid, final SnmpOid upper) {
+	return upper == null || oid.compareTo(upper) < 0;
+    }
+
+    /*
+     * Decode a datagram, and return the segment it's the response for,
+     * or null if it isn't from the server, can't be decoded, or is a
+     * late response to a request that has been retried.
+     */
+    private Segment match(final DatagramPacket dp, final ByteBuffer rdata) {
+	if (dp.getPort() != port || !address.equals(dp.getAddress())) {
+	    return null;
+	}
+	rdata.clear();
+	rdata.limit(dp.getLength());
+	try {
+	    response.decode(rdata);
+	} catch (SnmpException sne) {
+	    return null;
+	}
+	return outstanding.remove(response.getRequestID());
+    }
+
+    /*
+     * Handle a response for a segment. The response is checked in place,
+     * and an SnmpObject only created if it's to be kept.
+     */
+    private void handle(final Segment seg, final SnmpMessage rsp)
+	    throws SnmpException {
+	// noSuchName from an SNMPv1 agent marks the end of the MIB view
+	int status = rsp.getErrorStatus();
+	if (status == SNMPRequestException.VALUE_NOT_AVAILABLE
+		|| status == SNMPRequestException.NO_ERROR
+		&& rsp.size() == 0) {
+	    seg.done = true;
+	    return;
+	} else if (status != SNMPRequestException.NO_ERROR) {
+	    throw new SnmpException("GETNEXT error " + status
+				+ " retrieving " + seg.cursor);
+	}
+	SnmpMessage.VarBind vb = rsp.get(0);
+	/*
+	 * Stop at the end of the MIB view, when we pass into the next
+	 * segment or out of the subtree being walked, or if the agent fails
+	 * to make progress.
+	 */
+	if (vb.isException()
+		|| seg.upper != null && vb.compareOID(seg.upper) > 0
+		|| !vb.isInSubtree(root)) {
+	    seg.done = true;
+	    return;
+	}
+	if (vb.compareOID(seg.cursor) <= 0) {
+	    if (walkError == null) {
+		walkError = new SnmpException("OID not increasing: "
+					+ vb.getOID());
+	    }
+	    seg.done = true;
+	    return;
+	}
+	SnmpObject sno = vb.toSnmpObject(System.currentTimeMillis());
+	seg.results.add(sno);
+	seg.cursor = sno.getSnmpOid();
+	seg.retries = 0;
+    }
+
+    /*
+     * Return why the last walk stopped early, if the server returned an
+     * OID that wasn't after the previous one, or null.
+     */
+    SnmpException getWalkError() {
+	return walkError;
+    }
+
+    private void send(final Segment seg) throws SnmpException, IOException {
+	requestID++;
+	SnmpParams params = sc.getParams();
+	sendbuf.clear();
+	SnmpMessage.getNext(sendbuf, params.getVersion(),
+		params.getCommunity(), requestID, seg.cursor);
+	sendpacket.setLength(sendbuf.position());
+	ds.send(sendpacket);
+	seg.started = true;
+	seg.sent = System.nanoTime();
+	seg.deadline = System.currentTimeMillis()
+	    + rtt.getTimeout(seg.retries);
+	outstanding.put(requestID, seg);
+    }
+
+    /*
+     * Resend any requests that have passed their deadline.
+     */
+    private void retry() throws SnmpException, IOException {
+	long now = System.currentTimeMillis();
+	List<Integer> expired = new ArrayList<>();
+	for (Map.Entry<Integer, Segment> entry : outstanding.entrySet()) {
+	    if (entry.getValue().deadline <= now) {
+		expired.add(entry.getKey());
+	    }
+	}
+	for (Integer id : expired) {
+	    Segment seg = outstanding.remove(id);
+	    if (!rtt.retry(seg.retries, seg.sent)) {
+		throw new SnmpException("Timeout retrieving " + seg.cursor);
+	    }
+	    seg.retries++;
+	    send(seg);
+	}
+    }
+
+    private int nextTimeout() {
+	long deadline = Long.MAX_VALUE;
+	for (Segment seg : outstanding.values()) {
+	    deadline = Math.min(deadline, seg.deadline);
+	}
+	return (int) Math.max(1, deadline - System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Poll a server for the values of OIDs on behalf of everything that wants
+ * them. Charts and views subscribe with the OIDs they want and how often
+ * they want them. At each tick, the OIDs of every subscription that is due
+ * are gathered together, with duplicates removed, and retrieved with a
+ * single batched request, and each subscriber is then handed the values it
+ * asked for.
+ *
+ * Ticks fall on multiples of each subscription's interval, offset by a
+ * random phase chosen for each poller, so subscriptions with related
+ * intervals are polled together, while pollers for different servers
+ * don't all fire at once. If a poll takes longer than the interval, the
+ * ticks missed are dropped rather than run late one after another, and
+ * the next poll is jittered so that overrunning pollers spread out.
+ *
+ * Polling is done on a thread belonging to the poller, which only runs
+ * while there are subscriptions. Pollers are normally obtained from an
+ * SnmpControllerPool, so that there's one for each server.
+ *
+ * @author Peter Tribble
+ */
+public final class SnmpPoller implements Runnable {
+
+    // the range of the random phase, in milliseconds
+    private static final long PHASE = 60000;
+
+    /*
+     * Subscriptions due within this many milliseconds of the next tick
+     * are polled along with it.
+     */
+    private static final long SLACK = 250;
+
+    /*
+     * After an overrun, the next poll is delayed by a random amount of up
+     * to this fraction of the interval.
+     */
+    private static final long JITTER = 10;
+
+    private final SnmpController sc;
+    private final long phase;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private Thread thread;
+
+    /**
+     * A subscription to the values of a list of OIDs.
+     */
+    public final class Subscription {
+	private final List<SnmpOid> oids;
+	private final Consumer<List<SnmpObject>> listener;
+	private long interval;
+	private long due;
+	// set if the interval changes while the subscription is being polled
+	private boolean rescheduled;
+
+	Subscription(final List<SnmpOid> noids, final long ninterval,
+		     final Consumer<List<SnmpObject>> nlistener) {
+	    oids = List.copyOf(noids);
+	    interval = ninterval;
+	    listener = nlistener;
+	}
+
+	/**
+	 * Change how often this subscription is polled.
+	 *
+	 * @param ninterval the interval between polls in seconds
+	 */
+	public void setInterval(final int ninterval) {
+	    synchronized (SnmpPoller.this) {
+		interval = 1000L * Math.max(1, ninterval);
+		due = nextTick(this, System.currentTimeMillis());
+		rescheduled = true;
+		SnmpPoller.this.notifyAll();
+	    }
+	}
+
+	/**
+	 * Stop polling for this subscription. Its listener won't be called
+	 * once this returns, unless a poll is already under way.
+	 */
+	public void cancel() {
+	    synchronized (SnmpPoller.this) {
+		subscriptions.remove(this);
+		SnmpPoller.this.notifyAll();
+	    }
+	}
+    }
+
+    /**
+     * Create a new SnmpPoller that polls using the given SnmpController.
+     *
+     * @param nsc the SnmpController to poll with
+     */
+    public SnmpPoller(final SnmpController nsc) {
+	sc = nsc;
+	phase = ThreadLocalRandom.current().nextLong(PHASE);
+    }
+
+    /**
+     * Subscribe to the values of the given OIDs. The first poll is made
+     * straight away. The listener is called, from the polling thread,
+     * with the values in the same order as the OIDs, with null entries
+     * for any OIDs that couldn't be retrieved. If the server can't be
+     * reached, the listener isn't called for that tick.
+     *
+     * @param oids a List of the oids of interest
+     * @param ninterval the interval between polls in seconds
+     * @param listener what to give the values to
+     *
+     * @return the Subscription, which must be cancelled when the values
+     * are no longer needed
+     */
+    public synchronized Subscription subscribe(final List<SnmpOid> oids,
+			final int ninterval,
+			final Consumer<List<SnmpObject>> listener) {
+	Subscription sub = new Subscription(oids,
+				1000L * Math.max(1, ninterval), listener);
+	sub.due = System.currentTimeMillis();
+	subscriptions.add(sub);
+	if (thread == null) {
+	    thread = new Thread(this,
+				"SnmpPoller " + sc.getParams().getServer());
+	    thread.setDaemon(true);
+	    thread.start();
+	}
+	notifyAll();
+	return sub;
+    }
+
+    /*
+     * Return the first tick for a subscription after the given time.
+     */
+    private long nextTick(final Subscription sub, final long now) {
+	return phase + ((now - phase) / sub.interval + 1) * sub.interval;
+    }
+
+    /*
+     * Wait until some subscriptions are due, and return them, or return
+     * null if there are none left, in which case the thread will exit.
+     */
+    private synchronized List<Subscription> waitForDue()
+	    throws InterruptedException {
+	while (!subscriptions.isEmpty()) {
+	    long first = Long.MAX_VALUE;
+	    for (Subscription sub : subscriptions) {
+		first = Math.min(first, sub.due);
+	    }
+	    long now = System.currentTimeMillis();
+	    if (first > now) {
+		wait(first - now);
+		continue;
+	    }
+	    List<Subscription> ldue = new ArrayList<>();
+	    for (Subscription sub : subscriptions) {
+		if (sub.due <= now + SLACK) {
+		    sub.rescheduled = false;
+		    ldue.add(sub);
+		}
+	    }
+	    return ldue;
+	}
+	thread = null;
+	return null;
+    }
+
+    /*
+     * Schedule the next poll of the given subscriptions, after the time
+     * the last one finished, so that any ticks missed while it ran are
+     * dropped. If any were missed, the poll overran, and the next poll is
+     * delayed by a random offset of up to a tenth of the interval, so that
+     * pollers that overrun don't all realign on the same ticks. A
+     * subscription polled a little early mustn't be polled again for the
+     * same tick, and one whose interval was changed during the poll has
+     * already been scheduled.
+     */
+    private synchronized void reschedule(final List<Subscription> ldue) {
+	long now = System.currentTimeMillis();
+	for (Subscription sub : ldue) {
+	    if (sub.rescheduled) {
+		continue;
+	    }
+	    long next = nextTick(sub, Math.max(now, sub.due));
+	    if (next > nextTick(sub, sub.due)) {
+		next += ThreadLocalRandom.current()
+		    .nextLong(Math.max(1, sub.interval / JITTER));
+	    }
+	    sub.due = next;
+	}
+    }
+
+    private synchronized boolean isActive(final Subscription sub) {
+	return subscriptions.contains(sub);
+    }
+
+    @Override
+    public void run() {
+	try {
+	    List<Subscription> ldue;
+	    while ((ldue = waitForDue()) != null) {
+		poll(ldue);
+		reschedule(ldue);
+	    }
+	} catch (InterruptedException ie) {
+	    synchronized (this) {
+		thread = null;
+	    }
+	}
+    }
+
+    /*
+     * Retrieve the OIDs of the given subscriptions in one go, and hand
+     * each its values.
+     */
+    private void poll(final List<Subscription> ldue) {
+	Set<SnmpOid> union = new LinkedHashSet<>();
+	for (Subscription sub : ldue) {
+	    union.addAll(sub.oids);
+	}
+	List<SnmpOid> loids = new ArrayList<>(union);
+	List<SnmpObject> snos;
+	try {
+	    snos = sc.getOidValues(loids);
+	} catch (SnmpException sne) {
+	    return;
+	}
+	Map<SnmpOid, SnmpObject> values = new HashMap<>();
+	for (int i = 0; i < loids.size(); i++) {
+	    values.put(loids.get(i), snos.get(i));
+	}
+	for (Subscription sub : ldue) {
+	    List<SnmpObject> lsub = new ArrayList<>(sub.oids.size());
+	    for (SnmpOid oid : sub.oids) {
+		lsub.add(values.get(oid));
+	    }
+	    if (isActive(sub)) {
+		sub.listener.accept(lsub);
+	    }
+	}
+    }
+}
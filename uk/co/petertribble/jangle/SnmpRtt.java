@@ -0,0 +1,183 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+package uk.co.petertribble.jangle;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Track the round trip time to an snmp server, and from that work out how
+ * long to wait for a response before retrying, in the same way as TCP does
+ * (RFC 6298). Each attempt at a request waits twice as long as the last.
+ *
+ * Each server also has a retry budget. A request that has been lost while
+ * the server is responding to others is always retried, but if the server
+ * hasn't responded to anything since the request was sent, retrying uses up
+ * part of the budget. Each response earns a little of the budget back. So
+ * a server that has stopped responding gets one attempt per request rather
+ * than several, until it starts responding again.
+ *
+ * There is one SnmpRtt per server, shared by everything talking to it.
+ * They're reference counted, and forgotten once nothing is using them.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpRtt {
+
+    /*
+     * How long to wait, in milliseconds, before we have any measurements.
+     */
+    private static final double INITIAL_TIMEOUT = 3000.0;
+    /*
+     * The bounds on how long to wait, in milliseconds.
+     */
+    private static final double MIN_TIMEOUT = 100.0;
+    private static final double MAX_TIMEOUT = SnmpController.SOCKET_TIMEOUT;
+    /*
+     * The most retries that can be saved up, and the fraction of a retry
+     * earned by each response.
+     */
+    private static final double RETRY_BUDGET = 10.0;
+    private static final double RETRY_CREDIT = 0.1;
+
+    private static final Map<InetSocketAddress, SnmpRtt> RTTS
+	= new HashMap<>();
+
+    // guarded by RTTS
+    private int refs;
+
+    private boolean measured;
+    private double srtt;
+    private double rttvar;
+    // enough to retry one request to a server we've yet to hear from
+    private double budget = SnmpController.RETRIES;
+    private long lastResponse = System.nanoTime();
+
+    private SnmpRtt() {
+    }
+
+    /**
+     * Return the SnmpRtt for the given server. Each call must be balanced
+     * by a call to release().
+     *
+     * @param address the address of the server
+     * @param port the port the server listens on
+     *
+     * @return the SnmpRtt for the given server
+     */
+    static SnmpRtt acquire(final InetAddress address, final int port) {
+	return acquire(new InetSocketAddress(address, port));
+    }
+
+    /**
+     * Return the SnmpRtt for the given server. Each call must be balanced
+     * by a call to release().
+     *
+     * @param target the address and port of the server
+     *
+     * @return the SnmpRtt for the given server
+     */
+    static SnmpRtt acquire(final InetSocketAddress target) {
+	synchronized (RTTS) {
+	    SnmpRtt rtt = RTTS.computeIfAbsent(target, k -> new SnmpRtt());
+	    rtt.refs++;
+	    return rtt;
+	}
+    }
+
+    /**
+     * Release the SnmpRtt for the given server, forgetting it if nothing
+     * else is using it.
+     *
+     * @param target the address and port of the server
+     */
+    static void release(final InetSocketAddress target) {
+	synchronized (RTTS) {
+	    SnmpRtt rtt = RTTS.get(target);
+	    if (rtt != null && --rtt.refs == 0) {
+		RTTS.remove(target);
+	    }
+	}
+    }
+
+    /**
+     * Return how long to wait for a response to the given attempt at a
+     * request.
+     *
+     * @param attempt the attempt, starting at 0 for the first
+     *
+     * @return how long to wait for a response, in milliseconds
+     */
+    synchronized int getTimeout(final int attempt) {
+	double rto = measured ? srtt + 4.0 * rttvar : INITIAL_TIMEOUT;
+	rto = Math.max(MIN_TIMEOUT, rto) * (1L << Math.min(attempt, 16));
+	return (int) Math.min(MAX_TIMEOUT, rto);
+    }
+
+    /**
+     * Record a response. Only responses to the first attempt at a request
+     * are used to measure the round trip time, as a response to a retry
+     * could be a late response to an earlier attempt.
+     *
+     * @param nanos the time since the attempt was sent, in nanoseconds
+     * @param attempt the attempt that was responded to
+     */
+    synchronized void response(final long nanos, final int attempt) {
+	lastResponse = System.nanoTime();
+	budget = Math.min(RETRY_BUDGET, budget + RETRY_CREDIT);
+	if (attempt > 0) {
+	    return;
+	}
+	double rtt = nanos / 1000000.0;
+	if (measured) {
+	    rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rtt);
+	    srtt = 0.875 * srtt + 0.125 * rtt;
+	} else {
+	    srtt = rtt;
+	    rttvar = rtt / 2.0;
+	    measured = true;
+	}
+    }
+
+    /**
+     * Ask whether a request that has timed out may be retried, using up
+     * part of the retry budget if need be.
+     *
+     * @param attempt the attempt that timed out
+     * @param sent when the attempt was sent, from System.nanoTime()
+     *
+     * @return true if the request may be tried again
+     */
+    synchronized boolean retry(final int attempt, final long sent) {
+	if (attempt >= SnmpController.RETRIES) {
+	    return false;
+	}
+	if (lastResponse - sent > 0) {
+	    return true;
+	}
+	if (budget < 1.0) {
+	    return false;
+	}
+	budget -= 1.0;
+	return true;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import javax.swing.AbstractAction;
+import javax.swing.DefaultListModel;
+import javax.swing.JComponent;
+import javax.swing.JList;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * A text field for finding a MIB symbol by name. As the user types, the
+ * names matching what has been typed so far are offered in a list below
+ * the field. Choosing a name, by clicking on it or pressing Enter, looks
+ * up its OID and passes that on.
+ *
+ * @author Peter Tribble
+ */
+public final class SnmpSearchField extends JTextField {
+
+    private static final long serialVersionUID = 1L;
+
+    // how many matches to offer
+    private static final int MAXMATCHES = 20;
+
+    private final transient Consumer<SnmpOid> chooser;
+    private final DefaultListModel<String> matches;
+    private final JList<String> jlmatches;
+    private final JPopupMenu popup;
+
+    /**
+     * Create a new SnmpSearchField.
+     *
+     * @param nchooser what to give the OID of a chosen name to, which will
+     * be called on the event dispatch thread
+     * @param columns the number of columns to use to calculate the
+     * preferred width
+     */
+    public SnmpSearchField(final Consumer<SnmpOid> nchooser,
+			   final int columns) {
+	super(columns);
+	chooser = nchooser;
+	matches = new DefaultListModel<>();
+	jlmatches = new JList<>(matches);
+	jlmatches.setFocusable(false);
+	jlmatches.setVisibleRowCount(10);
+	jlmatches.addMouseListener(new MouseAdapter() {
+	    @Override
+	    public void mouseClicked(final MouseEvent e) {
+		int i = jlmatches.locationToIndex(e.getPoint());
+		if (i >= 0) {
+		    choose(matches.get(i));
+		}
+	    }
+	});
+	popup = new JPopupMenu();
+	popup.setFocusable(false);
+	popup.add(new JScrollPane(jlmatches));
+
+	getDocument().addDocumentListener(new DocumentListener() {
+	    @Override
+	    public void insertUpdate(final DocumentEvent e) {
+		search();
+	    }
+
+	    @Override
+	    public void removeUpdate(final DocumentEvent e) {
+		search();
+	    }
+
+	    @Override
+	    public void changedUpdate(final DocumentEvent e) {
+	    }
+	});
+	addKeyListener(new KeyAdapter() {
+	    @Override
+	    public void keyPressed(final KeyEvent e) {
+		if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+		    moveSelection(1);
+		} else if (e.getKeyCode() == KeyEvent.VK_UP) {
+		    moveSelection(-1);
+		} else if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+		    popup.setVisible(false);
+		}
+	    }
+	});
+	getInputMap(JComponent.WHEN_FOCUSED).put(
+		KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "choose");
+	getActionMap().put("choose", new AbstractAction() {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public void actionPerformed(final ActionEvent e) {
+		String s = jlmatches.getSelectedValue();
+		if (s == null && !matches.isEmpty()) {
+		    s = matches.get(0);
+		}
+		choose(s == null ? getText().trim() : s);
+	    }
+	});
+    }
+
+    private void moveSelection(final int delta) {
+	if (popup.isVisible() && !matches.isEmpty()) {
+	    int i = Math.max(0, Math.min(matches.size() - 1,
+				jlmatches.getSelectedIndex() + delta));
+	    jlmatches.setSelectedIndex(i);
+	    jlmatches.ensureIndexIsVisible(i);
+	}
+    }
+
+    /*
+     * Look for matches in the background, as the first search builds the
+     * index, which takes a while.
+     */
+    private void search() {
+	String query = getText();
+	if (query.trim().isEmpty()) {
+	    popup.setVisible(false);
+	} else {
+	    new SearchWorker(query).execute();
+	}
+    }
+
+    /*
+     * Finding the OID of a name may mean loading the MIB that defines it,
+     * so that's also done in the background.
+     */
+    private void choose(final String name) {
+	popup.setVisible(false);
+	if (!name.isEmpty()) {
+	    new ChooseWorker(name).execute();
+	}
+    }
+
+    class SearchWorker extends SwingWorker<List<String>, Object> {
+	private final String query;
+
+	SearchWorker(final String nquery) {
+	    query = nquery;
+	}
+
+	@Override
+	public List<String> doInBackground() {
+	    return SnmpMibManager.getInstance().findNames(query, MAXMATCHES);
+	}
+
+	@Override
+	protected void done() {
+	    // if the user has typed something else since, don't bother
+	    if (!query.equals(getText())) {
+		return;
+	    }
+	    try {
+		List<String> lnames = get();
+		matches.clear();
+		for (String s : lnames) {
+		    matches.addElement(s);
+		}
+		if (lnames.isEmpty() || !isShowing()) {
+		    popup.setVisible(false);
+		} else {
+		    jlmatches.clearSelection();
+		    popup.pack();
+		    popup.show(SnmpSearchField.this, 0, getHeight());
+		}
+	    } catch (InterruptedException | ExecutionException e) { }
+	}
+    }
+
+    class ChooseWorker extends SwingWorker<String, Object> {
+	private final String name;
+
+	ChooseWorker(final String nname) {
+	    name = nname;
+	}
+
+	@Override
+	public String doInBackground() {
+	    return SnmpMibManager.getInstance().getOIDForName(name);
+	}
+
+	@Override
+	protected void done() {
+	    try {
+		String oid = get();
+		if (oid != null) {
+		    chooser.accept(SnmpOid.valueOf(oid));
+		}
+	    } catch (InterruptedException | ExecutionException
+		     | SnmpException e) { }
+	}
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Send snmp requests and receive their responses without blocking, for
+ * any number of servers, using a small number of DatagramChannels driven
+ * by a single selector thread. Responses are matched to requests by request
+ * id, and lost requests are retried, after a timeout based on the round
+ * trip time to the server. Only a limited number of requests are in flight
+ * to any one server at once, so that the timeouts aren't overwhelmed by
+ * queueing in the server, and the rest wait their turn.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpSelector implements Runnable {
+
+    /*
+     * The number of channels requests are spread across.
+     */
+    private static final int CHANNELS = 4;
+    /*
+     * Ask for a generous receive buffer, as many responses may arrive
+     * at once.
+     */
+    private static final int RECEIVE_BUFFER = 1024 * 1024;
+    /*
+     * The most requests in flight to a single server.
+     */
+    private static final int MAX_IN_FLIGHT = 32;
+
+    private static SnmpSelector selinstance;
+
+    private final Selector selector;
+    private final DatagramChannel[] channels;
+    private final AtomicInteger requestIDs = new AtomicInteger();
+    private final Queue<Request<?>> submitted = new ConcurrentLinkedQueue<>();
+    // set if the selector thread has stopped
+    private volatile boolean stopped;
+
+    /*
+     * The following are only accessed by the selector thread.
+     */
+    private final Map<Integer, Request<?>> pending = new HashMap<>();
+    private final PriorityQueue<Request<?>> deadlines = new PriorityQueue<>(
+			Comparator.comparingLong((Request<?> r) -> r.deadline));
+    private final Queue<Request<?>> backlog = new ArrayDeque<>();
+    private final Map<InetSocketAddress, Server> servers = new HashMap<>();
+    private final ByteBuffer rbuf
+		= ByteBuffer.allocate(SnmpController.MAX_DATAGRAM);
+    private final SnmpMessage response = new SnmpMessage();
+
+    /**
+     * Extract a result from a response. A Reader is run on the selector
+     * thread, while the response is still valid, so it should be quick.
+     *
+     * @param <T> the type of the result
+     */
+    interface Reader<T> {
+	/**
+	 * Extract a result from a response.
+	 *
+	 * @param rsp the decoded response
+	 *
+	 * @return the result
+	 *
+	 * @throws SnmpException if the response can't be used
+	 */
+	T read(SnmpMessage rsp) throws SnmpException;
+    }
+
+    /*
+     * An outstanding request.
+     */
+    static final class Request<T> {
+	final int id;
+	final ByteBuffer msg;
+	final InetSocketAddress target;
+	final DatagramChannel channel;
+	// set once the request is queued for its server
+	SnmpRtt rtt;
+	final Reader<T> reader;
+	final CompletableFuture<T> future = new CompletableFuture<>();
+	long sent;
+	long deadline;
+	int retries;
+
+	Request(final int nid, final ByteBuffer nmsg,
+		final InetSocketAddress ntarget,
+		final DatagramChannel nchannel, final Reader<T> nreader) {
+	    id = nid;
+	    msg = nmsg;
+	    target = ntarget;
+	    channel = nchannel;
+	    reader = nreader;
+	}
+
+	void complete(final SnmpMessage rsp) {
+	    try {
+		future.complete(reader.read(rsp));
+	    } catch (SnmpException | RuntimeException e) {
+		future.completeExceptionally(e);
+	    }
+	}
+    }
+
+    /*
+     * The requests in flight to a server, and those waiting to be sent,
+     * and the round trip time to the server, which is held while there
+     * are requests for it.
+     */
+    private static final class Server {
+	int inFlight;
+	final Queue<Request<?>> waiting = new ArrayDeque<>();
+	final SnmpRtt rtt;
+
+	Server(final InetSocketAddress target) {
+	    rtt = SnmpRtt.acquire(target);
+	}
+    }
+
+    private SnmpSelector() throws IOException {
+	selector = Selector.open();
+	channels = new DatagramChannel[CHANNELS];
+	for (int i = 0; i < CHANNELS; i++) {
+	    channels[i] = DatagramChannel.open();
+	    channels[i].setOption(StandardSocketOptions.SO_RCVBUF,
+				RECEIVE_BUFFER);
+	    channels[i].bind(null);
+	    channels[i].configureBlocking(false);
+	    channels[i].register(selector, SelectionKey.OP_READ);
+	}
+	Thread t = new Thread(this, "SnmpSelector");
+	t.setDaemon(true);
+	t.start();
+    }
+
+    /**
+     * Return the single instance of this SnmpSelector, starting its thread
+     * if necessary.
+     *
+     * @return the single instance of this SnmpSelector
+     *
+     * @throws IOException if the channels cannot be opened
+     */
+    static synchronized SnmpSelector getInstance() throws IOException {
+	if (selinstance == null || selinstance.stopped) {
+	    selinstance = new SnmpSelector();
+	}
+	return selinstance;
+    }
+
+    /**
+     * Allocate a request id.
+     *
+     * @return a new request id
+     */
+    int nextRequestID() {
+	return requestIDs.incrementAndGet();
+    }
+
+    /**
+     * Send a request. The message must have been encoded with a request id
+     * obtained from nextRequestID(), and requests to a given server are
+     * always sent on the same channel.
+     *
+     * @param <T> the type of the result
+     * @param id the request id encoded in the message
+     * @param msg the encoded message, from the start of the buffer to its
+     * position
+     * @param target the address of the server
+     * @param reader extracts the result from the response
+     *
+     * @return a CompletableFuture that will be completed with the result
+     * read from the response, on the selector thread, or exceptionally
+     * with an SnmpException if there is no response
+     */
+    <T> CompletableFuture<T> send(final int id, final ByteBuffer msg,
+				final InetSocketAddress target,
+				final Reader<T> reader) {
+	msg.flip();
+	Request<T> r = new Request<>(id, msg, target,
+		channels[Math.floorMod(target.hashCode(), CHANNELS)], reader);
+	submitted.add(r);
+	if (stopped) {
+	    failAll(submitted, new SnmpException("SnmpSelector stopped"));
+	} else {
+	    selector.wakeup();
+	}
+	return r.future;
+    }
+
+    /*
+     * The loop carries on after an error, as everything using the
+     * selector depends on this thread, but there's no telling which
+     * requests the error affected, so all those in progress are failed
+     * with it. If the loop does stop, everything outstanding is failed,
+     * and the next getInstance() starts afresh.
+     */
+    @Override
+    public void run() {
+	try {
+	    while (true) {
+		try {
+		    select();
+		} catch (ClosedSelectorException cse) {
+		    return;
+		} catch (IOException | RuntimeException e) {
+		    failInProgress(new SnmpException("SnmpSelector: " + e));
+		}
+	    }
+	} finally {
+	    stopped = true;
+	    SnmpException sne = new SnmpException("SnmpSelector stopped");
+	    failAll(submitted, sne);
+	    failInProgress(sne);
+	    try {
+		selector.close();
+		for (DatagramChannel channel : channels) {
+		    channel.close();
+		}
+	    } catch (IOException ioe) { }
+	}
+    }
+
+    private void select() throws IOException {
+	long timeout = 0;
+	Request<?> first = deadlines.peek();
+	if (first != null) {
+	    timeout = Math.max(1L, first.deadline - System.currentTimeMillis());
+	}
+	selector.select(timeout);
+	for (SelectionKey key : selector.selectedKeys()) {
+	    try {
+		if (key.isReadable()) {
+		    receive((DatagramChannel) key.channel());
+		}
+		if (key.isValid() && key.isWritable()) {
+		    key.interestOps(SelectionKey.OP_READ);
+		}
+	    } catch (RuntimeException e) {
+		failInProgress(new SnmpException("SnmpSelector: " + e));
+	    }
+	}
+	selector.selectedKeys().clear();
+	flush();
+	expire();
+    }
+
+    private static void failAll(final Iterable<Request<?>> requests,
+				final SnmpException sne) {
+	for (Request<?> r : requests) {
+	    r.future.completeExceptionally(sne);
+	}
+    }
+
+    /*
+     * Fail every request that has been queued for its server, leaving
+     * only those just submitted, and forget the servers.
+     */
+    private void failInProgress(final SnmpException sne) {
+	failAll(backlog, sne);
+	backlog.clear();
+	failAll(pending.values(), sne);
+	pending.clear();
+	deadlines.clear();
+	for (Map.Entry<InetSocketAddress, Server> entry
+		 : servers.entrySet()) {
+	    failAll(entry.getValue().waiting, sne);
+	    SnmpRtt.release(entry.getKey());
+	}
+	servers.clear();
+    }
+
+    /*
+     * Send any queued requests, as long as their server has room for them.
+     * If a channel can't take any more, wait until it can.
+     */
+    private void flush() throws IOException {
+	Request<?> r = submitted.poll();
+	while (r != null) {
+	    Server server = servers.computeIfAbsent(r.target, Server::new);
+	    r.rtt = server.rtt;
+	    if (server.inFlight < MAX_IN_FLIGHT) {
+		server.inFlight++;
+		backlog.add(r);
+	    } else {
+		server.waiting.add(r);
+	    }
+	    r = submitted.poll();
+	}
+	r = backlog.poll();
+	while (r != null) {
+	    if (!transmit(r)) {
+		backlog.add(r);
+		r.channel.keyFor(selector).interestOps(
+			SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		return;
+	    }
+	    r = backlog.poll();
+	}
+    }
+
+    /*
+     * A request to the given server has finished, so let the next one
+     * waiting take its place.
+     */
+    private void release(final InetSocketAddress target) {
+	Server server = servers.get(target);
+	Request<?> next = server.waiting.poll();
+	if (next != null) {
+	    backlog.add(next);
+	} else if (--server.inFlight == 0) {
+	    servers.remove(target);
+	    SnmpRtt.release(target);
+	}
+    }
+
+    private boolean transmit(final Request<?> r) throws IOException {
+	if (r.future.isDone()) {
+	    release(r.target);
+	    return true;
+	}
+	r.msg.rewind();
+	if (r.channel.send(r.msg, r.target) == 0) {
+	    return false;
+	}
+	r.sent = System.nanoTime();
+	r.deadline = System.currentTimeMillis()
+	    + r.rtt.getTimeout(r.retries);
+	pending.put(r.id, r);
+	deadlines.add(r);
+	return true;
+    }
+
+    private void receive(final DatagramChannel channel) throws IOException {
+	rbuf.clear();
+	SocketAddress from = channel.receive(rbuf);
+	while (from != null) {
+	    try {
+		rbuf.flip();
+		response.decode(rbuf);
+		Request<?> r = pending.get(response.getRequestID());
+		if (r != null && r.target.equals(from)) {
+		    pending.remove(r.id);
+		    r.rtt.response(System.nanoTime() - r.sent, r.retries);
+		    release(r.target);
+		    r.complete(response);
+		}
+	    } catch (SnmpException | RuntimeException e) {
+		// ignore anything we can't decode
+	    }
+	    rbuf.clear();
+	    from = channel.receive(rbuf);
+	}
+    }
+
+    /*
+     * Retry or fail any requests that have passed their deadline.
+     */
+    private void expire() throws IOException {
+	long now = System.currentTimeMillis();
+	Request<?> r = deadlines.peek();
+	while (r != null && r.deadline <= now) {
+	    deadlines.poll();
+	    if (pending.get(r.id) == r) {
+		if (r.rtt.retry(r.retries, r.sent)) {
+		    r.retries++;
+		    pending.remove(r.id);
+		    backlog.add(r);
+		} else {
+		    pending.remove(r.id);
+		    release(r.target);
+		    r.future.completeExceptionally(new SnmpException(
+			"Timeout waiting for " + r.target));
+		}
+	    }
+	    r = deadlines.peek();
+	}
+	flush();
+    }
+}
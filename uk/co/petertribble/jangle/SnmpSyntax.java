@@ -0,0 +1,183 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.util.Arrays;
+
+/**
+ * The syntax of a MIB object, as declared in its MIB, which says how the
+ * values of the object should be interpreted. This is the underlying type
+ * of the values, the textual conventions such as DisplayString or
+ * DateAndTime that refine it, and the names of the values of an
+ * enumeration. An SnmpSyntax is immutable.
+ *
+ * Syntaxes are read from the MIBs that SnmpMibManager loads, so there is
+ * only a syntax for an object whose MIB is available. Anything that uses
+ * one must allow for there being none.
+ *
+ * @author Peter Tribble
+ */
+public final class SnmpSyntax {
+
+    /*
+     * The BER tag of the underlying type, as used in SnmpMessage.
+     */
+    private final byte tag;
+    // the textual conventions, outermost first
+    private final String[] conventions;
+    private final boolean index;
+    // the enumerated values, in ascending order, and their names
+    private final long[] values;
+    private final String[] labels;
+
+    /*
+     * Create a new SnmpSyntax. The enumerated values must be in ascending
+     * order.
+     */
+    SnmpSyntax(final byte ntag, final String[] nconventions,
+	       final boolean nindex, final long[] nvalues,
+	       final String[] nlabels) {
+	tag = ntag;
+	conventions = nconventions;
+	index = nindex;
+	values = nvalues;
+	labels = nlabels;
+    }
+
+    /*
+     * Return a copy of this syntax for an object that indexes a table.
+     */
+    SnmpSyntax asIndex() {
+	return new SnmpSyntax(tag, conventions, true, values, labels);
+    }
+
+    /*
+     * Return the BER tag of the underlying type.
+     */
+    byte getTag() {
+	return tag;
+    }
+
+    /*
+     * These return the arrays themselves, so they mustn't be modified.
+     */
+    String[] getConventions() {
+	return conventions;
+    }
+
+    long[] getEnumValues() {
+	return values;
+    }
+
+    String[] getEnumLabels() {
+	return labels;
+    }
+
+    /**
+     * Return whether the values of this syntax are integers, including
+     * counters, gauges, and timeticks.
+     *
+     * @return true if the values are integers
+     */
+    public boolean isNumeric() {
+	return tag == SnmpMessage.INTEGER || tag == SnmpMessage.COUNTER32
+	    || tag == SnmpMessage.GAUGE32 || tag == SnmpMessage.TIMETICKS
+	    || tag == SnmpMessage.COUNTER64 || tag == SnmpMessage.UINTEGER32;
+    }
+
+    /**
+     * Return whether the values of this syntax are counters, which only
+     * go up and are best shown as a rate.
+     *
+     * @return true if the values are counters
+     */
+    public boolean isCounter() {
+	return tag == SnmpMessage.COUNTER32 || tag == SnmpMessage.COUNTER64;
+    }
+
+    /**
+     * Return whether the values of this syntax are an enumeration.
+     *
+     * @return true if the values are an enumeration
+     */
+    public boolean isEnumerated() {
+	return values.length > 0;
+    }
+
+    /**
+     * Return whether this object is used to index the rows of its table.
+     *
+     * @return true if this object is an index of its table
+     */
+    public boolean isIndex() {
+	return index;
+    }
+
+    /**
+     * Return whether the values of an object with this syntax are worth
+     * charting. That's numbers that aren't enumerations or table indexes.
+     *
+     * @return true if the values of this syntax can be charted
+     */
+    public boolean isChartable() {
+	return isNumeric() && !isEnumerated() && !index;
+    }
+
+    /**
+     * Return the name of the textual convention that this syntax is
+     * declared as, such as DisplayString.
+     *
+     * @return the name of the textual convention, or null if there is none
+     */
+    public String getConvention() {
+	return conventions.length == 0 ? null : conventions[0];
+    }
+
+    /**
+     * Return whether this syntax is, or is derived from, the given textual
+     * convention. For example, a convention declared with a syntax of
+     * DateAndTime is derived from DateAndTime.
+     *
+     * @param name the name of the textual convention
+     *
+     * @return true if this syntax is derived from the textual convention
+     */
+    public boolean hasConvention(final String name) {
+	for (String s : conventions) {
+	    if (s.equals(name)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Return the name of the given value of an enumeration.
+     *
+     * @param value the value to find the name of
+     *
+     * @return the name of the value, or null if it isn't named
+     */
+    public String getLabel(final long value) {
+	int i = Arrays.binarySearch(values, value);
+	return i < 0 ? null : labels[i];
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import snmp.SNMPObject;
+
+/**
+ * Hold a conceptual snmp table, such as ifTable, by column. The OID of
+ * each entry in the table is the OID of the table entry, then the column,
+ * then the index of the row, which may be several arcs long.
+ *
+ * Each column is held as arrays indexed by row. Integer values are held
+ * as a primitive long and their type, and only other values are kept as
+ * snmp library objects, so a table takes far less memory than the
+ * SnmpObjects it was built from. SnmpObjects are created as they're asked
+ * for.
+ *
+ * @author Peter Tribble
+ */
+public final class SnmpTable {
+
+    private final SnmpOid entry;
+    // the row indexes, in ascending order
+    private final List<SnmpOid> rows = new ArrayList<>();
+    private final Map<SnmpOid, Integer> rowMap = new HashMap<>();
+    // the column arcs, in ascending order
+    private final long[] columns;
+    private final Column[] data;
+
+    /*
+     * The cells of a column. A tag of zero means the value is held in the
+     * values array, if present at all.
+     */
+    private static final class Column {
+	final byte[] tags;
+	final long[] numbers;
+	final long[] timestamps;
+	SNMPObject[] values;
+
+	Column(final int nrows) {
+	    tags = new byte[nrows];
+	    numbers = new long[nrows];
+	    timestamps = new long[nrows];
+	}
+
+	boolean isPresent(final int row) {
+	    return tags[row] != 0 || values != null && values[row] != null;
+	}
+    }
+
+    /**
+     * Create a new SnmpTable from the entries of the given table.
+     * Anything in the list that isn't under the table entry with an
+     * index, such as the table entry itself, is ignored.
+     *
+     * @param nentry the OID of the table entry
+     * @param lso the entries of the table, in walk order
+     */
+    public SnmpTable(final SnmpOid nentry, final List<SnmpObject> lso) {
+	entry = nentry;
+	int depth = entry.size();
+	// find the columns and rows
+	List<Long> lcols = new ArrayList<>();
+	for (SnmpObject sno : lso) {
+	    SnmpOid oid = sno.getSnmpOid();
+	    if (oid.size() < depth + 2 || !oid.isInSubtree(entry)) {
+		continue;
+	    }
+	    long col = oid.getArc(depth);
+	    if (lcols.isEmpty() || lcols.get(lcols.size() - 1) != col) {
+		lcols.add(col);
+	    }
+	    SnmpOid index = oid.getSuffix(depth + 1);
+	    if (!rowMap.containsKey(index)) {
+		rowMap.put(index, rowMap.size());
+		rows.add(index);
+	    }
+	}
+	// the first column may not have every row
+	Collections.sort(rows);
+	for (int i = 0; i < rows.size(); i++) {
+	    rowMap.put(rows.get(i), i);
+	}
+	columns = new long[lcols.size()];
+	data = new Column[lcols.size()];
+	for (int i = 0; i < columns.length; i++) {
+	    columns[i] = lcols.get(i);
+	    data[i] = new Column(rows.size());
+	}
+	// and fill in the cells
+	int c = -1;
+	for (SnmpObject sno : lso) {
+	    SnmpOid oid = sno.getSnmpOid();
+	    if (oid.size() < depth + 2 || !oid.isInSubtree(entry)) {
+		continue;
+	    }
+	    if (c < 0 || columns[c] != oid.getArc(depth)) {
+		c = findColumn(oid.getArc(depth));
+	    }
+	    Column column = data[c];
+	    int row = rowMap.get(oid.getSuffix(depth + 1));
+	    column.timestamps[row] = sno.getTimestamp();
+	    if (sno.isLong()) {
+		column.tags[row] = sno.getTag();
+		column.numbers[row] = sno.getLong();
+	    } else {
+		if (column.values == null) {
+		    column.values = new SNMPObject[rows.size()];
+		}
+		column.values[row] = sno.getValue();
+	    }
+	}
+    }
+
+    /**
+     * Return the OID of the table entry.
+     *
+     * @return the OID of the table entry
+     */
+    public SnmpOid getEntry() {
+	return entry;
+    }
+
+    /**
+     * Return the number of rows in this table.
+     *
+     * @return the number of rows
+     */
+    public int getRowCount() {
+	return rows.size();
+    }
+
+    /**
+     * Return the number of columns in this table.
+     *
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+	return columns.length;
+    }
+
+    /**
+     * Return the indexes of the rows of this table, in ascending order,
+     * which is the order in which a walk of any one column returns them.
+     * An index is the part of an OID after the column.
+     *
+     * @return the List of row indexes
+     */
+    public List<SnmpOid> getRowIndexes() {
+	return Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * Return the arc identifying the given column.
+     *
+     * @param column the position of the column, starting from zero
+     *
+     * @return the arc of the column, as it appears in the OIDs of its
+     * entries
+     */
+    public long getColumnArc(final int column) {
+	return columns[column];
+    }
+
+    /**
+     * Return the position of the row with the given index.
+     *
+     * @param index the index of the row
+     *
+     * @return the position of the row, or -1 if there is no such row
+     */
+    public int findRow(final SnmpOid index) {
+	Integer row = rowMap.get(index);
+	return row == null ? -1 : row;
+    }
+
+    /**
+     * Return the position of the column with the given arc.
+     *
+     * @param arc the arc of the column
+     *
+     * @return the position of the column, or -1 if there is no such column
+     */
+    public int findColumn(final long arc) {
+	int lo = 0;
+	int hi = columns.length - 1;
+	while (lo <= hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (columns[mid] < arc) {
+		lo = mid + 1;
+	    } else if (columns[mid] > arc) {
+		hi = mid - 1;
+	    } else {
+		return mid;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Return the entry in the given cell of this table.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     *
+     * @return a new SnmpObject for the cell, or null if the cell is empty
+     */
+    public SnmpObject get(final int row, final int column) {
+	Column col = data[column];
+	if (!col.isPresent(row)) {
+	    return null;
+	}
+	SnmpOid oid = entry.getChild(columns[column]).append(rows.get(row));
+	return col.tags[row] != 0
+	    ? new SnmpObject(oid, col.tags[row], col.numbers[row],
+			col.timestamps[row])
+	    : new SnmpObject(oid, col.values[row], col.timestamps[row]);
+    }
+
+    /**
+     * Return whether the given cell holds an integer value that can be
+     * read as a long.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     *
+     * @return true if the cell holds an integer value
+     */
+    public boolean isLong(final int row, final int column) {
+	return data[column].tags[row] != 0;
+    }
+
+    /**
+     * Return the value of the given cell as a long, without creating an
+     * SnmpObject. A Counter64 larger than Long.MAX_VALUE is returned as
+     * its unsigned bit pattern. If the cell doesn't hold an integer
+     * value, return zero.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     *
+     * @return the value of the cell
+     */
+    public long getLong(final int row, final int column) {
+	return data[column].numbers[row];
+    }
+
+    /**
+     * Return all the entries in the row with the given index, in column
+     * order.
+     *
+     * @param index the index of the row
+     *
+     * @return the List of entries in the row, empty if there is no such row
+     */
+    public List<SnmpObject> getRow(final SnmpOid index) {
+	List<SnmpObject> lso = new ArrayList<>();
+	int row = findRow(index);
+	if (row >= 0) {
+	    for (int c = 0; c < columns.length; c++) {
+		SnmpObject sno = get(row, c);
+		if (sno != null) {
+		    lso.add(sno);
+		}
+	    }
+	}
+	return lso;
+    }
+
+    /**
+     * Return all the entries in the given column, in row order.
+     *
+     * @param arc the arc of the column
+     *
+     * @return the List of entries in the column, empty if there is no such
+     * column
+     */
+    public List<SnmpObject> getColumn(final long arc) {
+	List<SnmpObject> lso = new ArrayList<>();
+	int c = findColumn(arc);
+	if (c >= 0) {
+	    for (int row = 0; row < rows.size(); row++) {
+		SnmpObject sno = get(row, c);
+		if (sno != null) {
+		    lso.add(sno);
+		}
+	    }
+	}
+	return lso;
+    }
+}
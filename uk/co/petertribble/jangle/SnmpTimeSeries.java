@@ -0,0 +1,135 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+/**
+ * A series of timestamped values for a chart, held in a ring buffer of
+ * primitive times and values. The buffer has a fixed capacity, so once
+ * it's full each new sample replaces the oldest, and samples older than
+ * the maximum age are dropped from the start as new ones are added.
+ * Adding a sample allocates nothing.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpTimeSeries {
+
+    private final String key;
+    private long[] times;
+    private double[] values;
+    // where the oldest sample is, and how many there are
+    private int head;
+    private int size;
+    private long maxage;
+
+    /*
+     * Create a new series with the given key, holding at most capacity
+     * samples, none older than maxage milliseconds.
+     */
+    SnmpTimeSeries(final String nkey, final int capacity, final long nmaxage) {
+	key = nkey;
+	times = new long[Math.max(1, capacity)];
+	values = new double[times.length];
+	maxage = nmaxage;
+    }
+
+    String getKey() {
+	return key;
+    }
+
+    int size() {
+	return size;
+    }
+
+    /*
+     * The samples are numbered from the oldest.
+     */
+    long getTime(final int i) {
+	return times[(head + i) % times.length];
+    }
+
+    double getValue(final int i) {
+	return values[(head + i) % values.length];
+    }
+
+    /*
+     * Add a sample. A sample at the same time as the newest replaces it,
+     * and one older than the newest is ignored, so the times always
+     * ascend.
+     */
+    void add(final long time, final double value) {
+	if (size > 0) {
+	    int last = (head + size - 1) % times.length;
+	    if (time == times[last]) {
+		values[last] = value;
+		return;
+	    } else if (time < times[last]) {
+		return;
+	    }
+	}
+	if (size == times.length) {
+	    head = (head + 1) % times.length;
+	    size--;
+	}
+	int i = (head + size) % times.length;
+	times[i] = time;
+	values[i] = value;
+	size++;
+	while (size > 1 && times[head] < time - maxage) {
+	    head = (head + 1) % times.length;
+	    size--;
+	}
+    }
+
+    /*
+     * Set the maximum age, dropping any samples now too old.
+     */
+    void setMaxAge(final long nmaxage) {
+	maxage = nmaxage;
+	if (size > 0) {
+	    long newest = getTime(size - 1);
+	    while (size > 1 && times[head] < newest - maxage) {
+		head = (head + 1) % times.length;
+		size--;
+	    }
+	}
+    }
+
+    /*
+     * Change the capacity, keeping as many of the newest samples as fit.
+     */
+    void setCapacity(final int capacity) {
+	int ncapacity = Math.max(1, capacity);
+	if (ncapacity == times.length) {
+	    return;
+	}
+	int keep = Math.min(size, ncapacity);
+	long[] ntimes = new long[ncapacity];
+	double[] nvalues = new double[ncapacity];
+	for (int i = 0; i < keep; i++) {
+	    ntimes[i] = getTime(size - keep + i);
+	    nvalues[i] = getValue(size - keep + i);
+	}
+	times = ntimes;
+	values = nvalues;
+	head = 0;
+	size = keep;
+    }
+}
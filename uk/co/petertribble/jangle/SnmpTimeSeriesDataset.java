@@ -0,0 +1,119 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2026 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jangle;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * Present SnmpTimeSeries to JFreeChart, with the x values being times in
+ * milliseconds, as a DateAxis expects. The values are read straight from
+ * the series, so nothing is copied or boxed unless the chart asks for
+ * objects rather than primitives.
+ *
+ * Adding samples to the series doesn't tell the chart, so that a poll
+ * that updates many series redraws the chart once, by calling
+ * seriesUpdated() when they've all been added.
+ *
+ * @author Peter Tribble
+ */
+final class SnmpTimeSeriesDataset extends AbstractXYDataset {
+
+    private static final long serialVersionUID = 1L;
+
+    // the series shown
+    private final transient List<SnmpTimeSeries> series = new ArrayList<>();
+
+    /*
+     * Show a series, if it isn't already shown.
+     */
+    void addSeries(final SnmpTimeSeries ts) {
+	if (!series.contains(ts)) {
+	    series.add(ts);
+	    fireDatasetChanged();
+	}
+    }
+
+    /*
+     * Stop showing a series.
+     */
+    void removeSeries(final SnmpTimeSeries ts) {
+	if (series.remove(ts)) {
+	    fireDatasetChanged();
+	}
+    }
+
+    /*
+     * Return whether a series is shown.
+     */
+    boolean isShown(final SnmpTimeSeries ts) {
+	return series.contains(ts);
+    }
+
+    /*
+     * Tell the chart that samples have been added to the series.
+     */
+    void seriesUpdated() {
+	fireDatasetChanged();
+    }
+
+    @Override
+    public int getSeriesCount() {
+	return series.size();
+    }
+
+    @Override
+    public Comparable<String> getSeriesKey(final int s) {
+	return series.get(s).getKey();
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+	return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getItemCount(final int s) {
+	return series.get(s).size();
+    }
+
+    @Override
+    public Number getX(final int s, final int item) {
+	return series.get(s).getTime(item);
+    }
+
+    @Override
+    public double getXValue(final int s, final int item) {
+	return series.get(s).getTime(item);
+    }
+
+    @Override
+    public Number getY(final int s, final int item) {
+	return series.get(s).getValue(item);
+    }
+
+    @Override
+    public double getYValue(final int s, final int item) {
+	return series.get(s).getValue(item);
+    }
+}
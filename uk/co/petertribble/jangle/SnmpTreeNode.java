@@ -14,7 +14,7 @@
  *
  * CDDL HEADER END
  *
- * Copyright 2025 Peter Tribble
+ * Copyright 2026 Peter Tribble
  *
  */
 
@@ -40,9 +40,29 @@ public final class SnmpTreeNode extends DefaultMutableTreeNode {
 	super(o);
     }
 
+    /**
+     * Return the OID this SnmpTreeNode represents.
+     *
+     * @return the OID of this node, or null if it doesn't represent an OID
+     */
+    public SnmpOid getSnmpOid() {
+	if (userObject instanceof SnmpObject) {
+	    return ((SnmpObject) userObject).getSnmpOid();
+	} else if (userObject instanceof SnmpOid) {
+	    return (SnmpOid) userObject;
+	}
+	return null;
+    }
+
     @Override
     public String toString() {
-	return (userObject == null) ? null
-	    : SnmpMibManager.getInstance().prettifyOID(userObject.toString());
+	if (userObject instanceof SnmpObject) {
+	    return SnmpMibManager.getInstance().prettifyOID(
+			(SnmpObject) userObject);
+	} else if (userObject instanceof SnmpOid) {
+	    return SnmpMibManager.getInstance().prettifyOID(
+			(SnmpOid) userObject);
+	}
+	return (userObject == null) ? null : userObject.toString();
     }
 }
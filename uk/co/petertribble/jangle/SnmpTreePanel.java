@@ -21,9 +21,8 @@
 package uk.co.petertribble.jangle;
 
 import java.awt.BorderLayout;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,8 +37,8 @@ import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.JTree;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
-import javax.swing.Timer;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.event.TreeSelectionEvent;
@@ -47,6 +46,7 @@ import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import org.jfree.chart.ChartPanel;
+import snmp.SNMPObjectIdentifier;
 import uk.co.petertribble.jingle.JingleTextPane;
 
 /**
@@ -57,7 +57,7 @@ import uk.co.petertribble.jingle.JingleTextPane;
  * @author Peter Tribble
  */
 public final class SnmpTreePanel extends JPanel implements
-        TreeSelectionListener, ListSelectionListener, ActionListener {
+        TreeSelectionListener, ListSelectionListener {
 
     private static final long serialVersionUID = 1L;
     private static final int TAB_D = 0;
@@ -159,11 +159,20 @@ public final class SnmpTreePanel extends JPanel implements
     private transient SnmpList snl;
     private transient SnmpMibManager smm;
     private transient List<SnmpObject> oidList;
+    /**
+     * Redraws the display when MIBs are loaded in the background.
+     */
+    private final transient Runnable mibListener =
+	() -> SwingUtilities.invokeLater(this::mibsLoaded);
 
     /**
-     * A Timer to update the display in a loop.
+     * The subscription that updates the current OID in a loop.
+     */
+    private transient SnmpPoller.Subscription subscription;
+    /**
+     * Whether the display should be updated.
      */
-    private Timer timer;
+    private boolean looping;
     /**
      * The interval at which the display is updated.
      */
@@ -175,10 +184,11 @@ public final class SnmpTreePanel extends JPanel implements
 
     /**
      * Create a new SnmpTreePanel, starting exploration at the default OID
-     * of 1.3.6.1.2.1.
+     * of 1.3.6.1, so that both the standard MIB-2 objects and any
+     * enterprise objects are shown.
      */
     public SnmpTreePanel() {
-	this("1.3.6.1.2.1");
+	this("1.3.6.1");
     }
 
     /**
@@ -248,6 +258,7 @@ public final class SnmpTreePanel extends JPanel implements
 	psplit.setOneTouchExpandable(true);
 	psplit.setDividerLocation(200);
 	add(psplit);
+	SnmpMibManager.getInstance().addLoadListener(mibListener);
     }
 
     /**
@@ -256,42 +267,69 @@ public final class SnmpTreePanel extends JPanel implements
      * @param params details of the snmp server to query
      */
     public void exploreServer(final SnmpParams params) {
-	sc = new SnmpController(params);
-	snl = new SnmpList(sc);
 	jpb = new JProgressBar(0, 1);
 	jpb.setValue(0);
 	jpb.setIndeterminate(true);
 	jp2.add(jpb, BorderLayout.SOUTH);
 	jp2.validate();
 	// load data in background
-	new ExploreWorker().execute();
+	new ExploreWorker(params).execute();
+    }
+
+    /*
+     * Switch to a new server, once it's been walked.
+     */
+    private void setServer(final SnmpController nsc, final SnmpList nsnl) {
+	clearCharts();
+	if (sc != null) {
+	    SnmpControllerPool.getInstance().release(sc);
+	}
+	sc = nsc;
+	snl = nsnl;
+	// nothing from the old server is related to the new one
+	currentOID = null;
+	watchCurrent();
     }
 
     /*
      * This is where the tree is walked and the data loaded. We do the snmp
      * tree walk in the background and update the gui when we're done - that
      * means building the model for the list and finishing off the progress
-     * bar.
+     * bar. Finding the server may mean looking up its name, so that's done
+     * in the background too, and the old server is kept until the new one
+     * is ready.
      *
      * One possibly bad consequence of this method is that we have to expose
      * the data structures as class variables so that they can be accessed
      * from multiple contexts.
      */
     class ExploreWorker extends SwingWorker<String, Object> {
+	private final SnmpParams params;
+	private SnmpController nsc;
+	private SnmpList nsnl;
+
+	ExploreWorker(final SnmpParams nparams) {
+	    params = nparams;
+	}
+
 	@Override
 	public String doInBackground() {
-	    buildData();
+	    nsc = SnmpControllerPool.getInstance().acquire(params);
+	    nsnl = new SnmpList(nsc);
+	    buildData(nsnl);
 	    return "done";
 	}
 
 	@Override
 	protected void done() {
 	    try {
+		setServer(nsc, nsnl);
 		jpb.setIndeterminate(false);
 		jpb.setValue(1);
 		if (savederror == null) {
 		    buildUI();
 		    startLoop();
+		    showWalkError(nsnl);
 		} else {
 		    showError();
 		}
@@ -303,21 +341,53 @@ public final class SnmpTreePanel extends JPanel implements
     }
 
     /**
-     * Start the timer, so the display will continually update.
+     * Start polling, so the display will continually update.
      */
     public void startLoop() {
-	if (timer == null) {
-	    timer = new Timer(interval * 1000, this);
+	looping = true;
+	watchCurrent();
+    }
+
+    /*
+     * Poll for the value of the current OID, so that its details are kept
+     * up to date. It's polled along with anything else wanted from the
+     * same server, including any chart of it.
+     */
+    private void watchCurrent() {
+	if (subscription != null) {
+	    subscription.cancel();
+	    subscription = null;
+	}
+	if (looping && currentOID != null) {
+	    subscription = SnmpControllerPool.getInstance().getPoller(sc)
+		.subscribe(Collections.singletonList(currentOID.getSnmpOid()),
+			interval,
+			snos -> SwingUtilities.invokeLater(
+				() -> updateCurrent(snos.get(0))));
+	}
+    }
+
+    /**
+     * Stop updating the display, and release the connection to the server.
+     * Should be called when this SnmpTreePanel is no longer needed.
+     */
+    public void close() {
+	SnmpMibManager.getInstance().removeLoadListener(mibListener);
+	looping = false;
+	watchCurrent();
+	clearCharts();
+	if (sc != null) {
+	    SnmpControllerPool.getInstance().release(sc);
+	    sc = null;
 	}
-	timer.start();
     }
 
     private void setPanel(final SnmpTreeNode node) {
 	if (node != null) {
 	    if (node.getUserObject() instanceof SnmpObject) {
 		showObject((SnmpObject) node.getUserObject());
-	    } else if (node.getUserObject() instanceof String) {
-		showObject((String) node.getUserObject());
+	    } else if (node.getUserObject() instanceof SnmpOid) {
+		showObject((SnmpOid) node.getUserObject());
 	    }
 	}
     }
@@ -327,7 +397,7 @@ public final class SnmpTreePanel extends JPanel implements
      * We only do any work if it exists - if we can't find a MIB entry
      * then we leave the display unchanged.
      */
-    private void showObject(final String oid) {
+    private void showObject(final SnmpOid oid) {
 	if (smm == null) {
 	    smm = SnmpMibManager.getInstance();
 	}
@@ -358,11 +428,13 @@ public final class SnmpTreePanel extends JPanel implements
 	clearChart();
 	SnmpObject prevOID = currentOID;
 	currentOID = sno;
+	watchCurrent();
 	setText(sno);
-	String oid = sno.toString();
+	SnmpOid oid = sno.getSnmpOid();
 	// show a chart if it looks like a number
 	if (canChart(sno)) {
-	    chart = new SnmpChart(sc, oid, smm.prettifyOID(oid), interval, age);
+	    chart = new SnmpChart(sc, oid.toString(), smm.prettifyOID(oid),
+				interval, age);
 	    jp2.add(new ChartPanel(chart.getChart()));
 	}
 	jp2.validate();
@@ -386,7 +458,8 @@ public final class SnmpTreePanel extends JPanel implements
 	if (sn1 == null || sn2 == null) {
 	    return false;
 	}
-	return snl.getSiblings(sn1.toString()).contains(sn2);
+	SnmpOid p1 = sn1.getSnmpOid().getParent();
+	return p1 != null && p1.equals(sn2.getSnmpOid().getParent());
     }
 
     /*
@@ -396,28 +469,22 @@ public final class SnmpTreePanel extends JPanel implements
 	if (sn1 == null || sn2 == null) {
 	    return false;
 	}
-	return snl.getCousins(sn1.toString()).contains(sn2);
+	SnmpOid o1 = sn1.getSnmpOid();
+	SnmpOid o2 = sn2.getSnmpOid();
+	int n = o1.size();
+	return n >= 3 && o2.size() == n && o1.getInstance() == o2.getInstance()
+	    && o1.getPrefix(n - 2).equals(o2.getPrefix(n - 2));
     }
 
     private boolean canChart(final SnmpObject sno) {
 	/*
 	 * This is only called from showObject, so we can assume that smm has
-	 * been initialized. We manually refuse to chart certain names that
-	 * simply wouldn't make sense.
+	 * been initialized. If the MIB gives the syntax, only chart numbers
+	 * that aren't enumerations or table indexes. Otherwise, chart
+	 * anything that holds a number.
 	 */
-	String sp = smm.prettifyOID(sno);
-	if (sp.startsWith("hrSWInstalled")
-		|| sp.startsWith("hrSWRun")) {
-	    return false;
-	}
-	String typeString = sno.getTypeString();
-	if (!"OctetString".equals(typeString)
-		&& !"IPAddress".equals(typeString)
-		&& !"Null".equals(typeString)
-		&& !"ObjectIdentifier".equals(typeString)) {
-	    return true;
-	}
-	return false;
+	SnmpSyntax syntax = smm.getSyntax(sno.getSnmpOid());
+	return sno.isLong() && (syntax == null || syntax.isChartable());
     }
 
     private void clearCharts() {
@@ -460,12 +527,12 @@ public final class SnmpTreePanel extends JPanel implements
     }
 
     private void showSiblings(final SnmpObject sno) {
-	String oid = sno.toString();
+	SnmpOid oid = sno.getSnmpOid();
 	List<SnmpObject> ls = snl.getSiblings(oid);
 	if (ls.size() > 1) {
 	    if (canChart(sno)) {
 		schart = new SnmpChart(sc, ls,
-			smm.prettifyOID(SnmpUtil.getParentOID(oid)),
+			smm.prettifyOID(oid.getParent()),
 			interval, age);
 		jp3.add(new ChartPanel(schart.getChart()));
 		jp3t.add(new JScrollPane(new JTable(schart)));
@@ -473,7 +540,7 @@ public final class SnmpTreePanel extends JPanel implements
 		StringBuilder sb = new StringBuilder();
 		for (SnmpObject so : ls) {
 		    sb.append(smm.prettifyOID(so)).append('=')
-			.append(SnmpUtil.niceString(so)).append('\n');
+			.append(SnmpUtil.niceString(so, snl)).append('\n');
 		}
 		tpsiblings.setText(sb.toString());
 		jp3t.add(new JScrollPane(tpsiblings));
@@ -486,23 +553,28 @@ public final class SnmpTreePanel extends JPanel implements
     }
 
     private void showCousins(final SnmpObject sno) {
-	String oid = sno.toString();
-	List<SnmpObject> alloids = snl.getCousins(oid);
+	SnmpOid oid = sno.getSnmpOid();
+	/*
+	 * The cousins are the row of the table formed by the grandparent,
+	 * indexed by the instance.
+	 */
+	List<SnmpObject> alloids = oid.size() < 3 ? new ArrayList<>()
+	    : snl.getTable(oid.getPrefix(oid.size() - 2))
+		.getRow(oid.getSuffix(oid.size() - 1));
 	if (alloids.size() > 1) {
 	    StringBuilder sb = new StringBuilder();
 	    // a list to hold those that can be charted
 	    List<SnmpObject> lc = new ArrayList<>();
 	    for (SnmpObject so : alloids) {
 		sb.append(smm.prettifyOID(so)).append('=')
-		    .append(SnmpUtil.niceString(so)).append('\n');
+		    .append(SnmpUtil.niceString(so, snl)).append('\n');
 		if (canChart(so)) {
 		    lc.add(so);
 		}
 	    }
 	    if (lc.size() > 1) {
 		cchart = new SnmpChart(sc, lc, alloids,
-		    smm.prettifyOID(
-			SnmpUtil.getParentOID(SnmpUtil.getParentOID(oid))),
+		    smm.prettifyOID(oid.getPrefix(oid.size() - 2)),
 			    interval, age);
 		jp4.add(new ChartPanel(cchart.getChart()));
 		jp4t.add(new JScrollPane(new JTable(cchart)));
@@ -517,13 +589,32 @@ public final class SnmpTreePanel extends JPanel implements
 	}
     }
 
+    /*
+     * MIBs have been loaded, so names and values that were shown in raw
+     * form may now be decoded. Redraw the list and the visible rows of the
+     * tree, and the details of the current OID.
+     */
+    private void mibsLoaded() {
+	slist.repaint();
+	if (stree != null) {
+	    DefaultTreeModel tmodel = (DefaultTreeModel) stree.getModel();
+	    for (int i = 0; i < stree.getRowCount(); i++) {
+		tmodel.nodeChanged((SnmpTreeNode) stree.getPathForRow(i)
+				.getLastPathComponent());
+	    }
+	}
+	if (currentOID != null) {
+	    setText(currentOID);
+	}
+    }
+
     private void setText(final SnmpObject sno) {
 	StringBuilder sb = new StringBuilder(32);
 	sb.append("OID: ").append(smm.prettifyOID(sno));
 	String typeString = sno.getTypeString();
 	sb.append("\nType: ").append(typeString)
-	    .append("\nValue: ").append(SnmpUtil.niceString(sno));
-	if ("ObjectIdentifier".equals(typeString)) {
+	    .append("\nValue: ").append(SnmpUtil.niceString(sno, snl));
+	if (sno.getValue() instanceof SNMPObjectIdentifier) {
 	    sb.append(" = ").append(smm.prettifyOID(sno.getValue().toString()));
 	}
 	sb.append('\n');
@@ -537,8 +628,8 @@ public final class SnmpTreePanel extends JPanel implements
      */
     public void setDelay(final int ninterval) {
 	interval = ninterval;
-	if (timer != null) {
-	    timer.setDelay(interval * 1000);
+	if (subscription != null) {
+	    subscription.setInterval(interval);
 	}
 	if (chart != null) {
 	    chart.setDelay(interval);
@@ -569,27 +660,43 @@ public final class SnmpTreePanel extends JPanel implements
 	}
     }
 
-    private void updateCurrent() {
-	if (currentOID != null) {
-	    try {
-		currentOID.setValue(sc.getValue(currentOID.toString())
-				    .getValue());
-	    } catch (SnmpException sne) {
-		// FIXME do summat
-	    }
+    /*
+     * Show a new value of the current OID, if it's still the current one.
+     * The object from the walk is shared with the list, tree and tables,
+     * so rather than changing it, the new object replaces it as the
+     * current one.
+     */
+    private void updateCurrent(final SnmpObject nsno) {
+	if (nsno != null && currentOID != null
+		&& currentOID.getSnmpOid().equals(nsno.getSnmpOid())) {
+	    currentOID = nsno;
 	    setText(currentOID);
 	}
     }
 
     // retrieve the data via an snmp walk of the tree
-    void buildData() {
+    void buildData(final SnmpList nsnl) {
 	try {
-	    oidList = snl.getList(startOID);
+	    oidList = nsnl.getList(startOID);
 	} catch (SnmpException sne) {
 	    savederror = sne;
 	}
     }
 
+    /*
+     * The walk may have stopped early, with the data up to that point
+     * still worth showing, so this is a warning rather than an error.
+     */
+    void showWalkError(final SnmpList nsnl) {
+	SnmpException sne = nsnl.getWalkError();
+	if (sne != null) {
+	    JOptionPane.showMessageDialog(this,
+					"Walk incomplete: " + sne.getMessage(),
+					"SNMP warning",
+					JOptionPane.WARNING_MESSAGE);
+	}
+    }
+
     void showError() {
 	if (savederror != null) {
 	    System.out.println(savederror.getMessage());
@@ -610,23 +717,25 @@ public final class SnmpTreePanel extends JPanel implements
 	}
 	/*
 	 * We create a SnmpTreeNode for each element in the list and add it to
-	 * a Hash with the name as the key. Then we walk the list - if a node
+	 * a Hash with the oid as the key. Then we walk the list - if a node
 	 * has a parent, we add it to the parent, else we need to create
-	 * intermediate nodes to fill in the tree.
+	 * intermediate nodes to fill in the tree. As the list is in order, a
+	 * parent that already exists is already in the tree, so we can stop
+	 * there.
 	 */
 	// root node
 	SnmpTreeNode rootNode = new SnmpTreeNode("SNMP");
 	// real nodes
-	Map<String, SnmpTreeNode> m = new HashMap<>();
+	Map<SnmpOid, SnmpTreeNode> m = new HashMap<>();
 	// intermediate nodes
-	Map<String, SnmpTreeNode> m2 = new HashMap<>();
+	Map<SnmpOid, SnmpTreeNode> m2 = new HashMap<>();
 	for (SnmpObject sno : oidList) {
-	    m.put(sno.toString(), new SnmpTreeNode(sno));
+	    m.put(sno.getSnmpOid(), new SnmpTreeNode(sno));
 	}
 	for (SnmpObject sno : oidList) {
-	    String s = sno.toString();
+	    SnmpOid s = sno.getSnmpOid();
 	    SnmpTreeNode mynode = m.get(s);
-	    String parent = SnmpUtil.getParentOID(s);
+	    SnmpOid parent = s.getParent();
 	    while (parent != null) {
 		if (m.containsKey(parent)) {
 		    /*
@@ -634,14 +743,16 @@ public final class SnmpTreePanel extends JPanel implements
 		     * This almost never happens.
 		     */
 		    m.get(parent).add(mynode);
-		    mynode = m.get(parent);
+		    mynode = null;
+		    break;
 		} else if (m2.containsKey(parent)) {
 		    /*
 		     * If we've already created a parent node, add this node
 		     * to that.
 		     */
 		    m2.get(parent).add(mynode);
-		    mynode = m2.get(parent);
+		    mynode = null;
+		    break;
 		} else {
 		    /*
 		     * Need to create a new node
@@ -651,9 +762,11 @@ public final class SnmpTreePanel extends JPanel implements
 		    m2.put(parent, pnode);
 		    mynode = pnode;
 		}
-		parent = SnmpUtil.getParentOID(parent);
+		parent = parent.getParent();
+	    }
+	    if (mynode != null) {
+		rootNode.add(mynode);
 	    }
-	    rootNode.add(mynode);
 	}
 	if (stree == null) {
 	    stree = new JTree(rootNode);
@@ -665,6 +778,49 @@ public final class SnmpTreePanel extends JPanel implements
 	}
     }
 
+    /**
+     * Select the given OID in the tree, and show it. If the OID isn't in
+     * the tree, select the nearest thing above it that is.
+     *
+     * @param oid the OID to select
+     *
+     * @return false if the tree hasn't been built yet, or nothing in it
+     * lies above the given OID
+     */
+    public boolean selectOID(final SnmpOid oid) {
+	if (stree == null) {
+	    return false;
+	}
+	/*
+	 * Every prefix of a walked OID has a node, so go down the tree
+	 * through the children that hold the OID in their subtree.
+	 */
+	SnmpTreeNode node = (SnmpTreeNode) stree.getModel().getRoot();
+	SnmpTreeNode found = null;
+	while (node != null) {
+	    SnmpTreeNode next = null;
+	    for (int i = 0; i < node.getChildCount(); i++) {
+		SnmpTreeNode child = (SnmpTreeNode) node.getChildAt(i);
+		SnmpOid coid = child.getSnmpOid();
+		if (coid != null && oid.isInSubtree(coid)) {
+		    next = child;
+		    found = child;
+		    break;
+		}
+	    }
+	    node = next;
+	}
+	if (found == null) {
+	    return false;
+	}
+	TreePath tpth = new TreePath(found.getPath());
+	jtpl.setSelectedIndex(jtpl.indexOfTab(
+				SnmpResources.getString("SNMP.TREE.TEXT")));
+	stree.setSelectionPath(tpth);
+	stree.scrollPathToVisible(tpth);
+	return true;
+    }
+
     // handle ListSelectionListener events
     @Override
     public void valueChanged(final ListSelectionEvent e) {
@@ -684,10 +840,4 @@ public final class SnmpTreePanel extends JPanel implements
 	    setPanel((SnmpTreeNode) tpth.getLastPathComponent());
 	}
     }
-
-    // handle timer events
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-	updateCurrent();
-    }
 }
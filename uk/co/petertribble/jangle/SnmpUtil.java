@@ -29,6 +29,29 @@ import snmp.SNMPOctetString;
  */
 public final class SnmpUtil {
 
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /*
+     * The values of an InetAddressType that aren't addresses, and the
+     * length of an address of each type from ipv4(1) to ipv6z(4).
+     */
+    private static final long ADDR_UNKNOWN = -1;
+    private static final long ADDR_DNS = 16;
+    private static final int[] ADDR_LENGTH = {0, 4, 16, 8, 20};
+
+    /*
+     * The HOST-RESOURCES-MIB objects that are dates: hrSystemDate,
+     * hrSWInstalledDate, hrFSLastFullBackupDate, and
+     * hrFSLastPartialBackupDate. These were always shown as dates, so
+     * still are if there's no MIB to say so.
+     */
+    private static final SnmpOid[] HR_DATES = {
+	SnmpOid.of(new int[] {1, 3, 6, 1, 2, 1, 25, 1, 2}),
+	SnmpOid.of(new int[] {1, 3, 6, 1, 2, 1, 25, 6, 3, 1, 5}),
+	SnmpOid.of(new int[] {1, 3, 6, 1, 2, 1, 25, 3, 8, 1, 8}),
+	SnmpOid.of(new int[] {1, 3, 6, 1, 2, 1, 25, 3, 8, 1, 9})
+    };
+
     private SnmpUtil() {
     }
 
@@ -45,9 +68,9 @@ public final class SnmpUtil {
     }
 
     /**
-     * Return the date associated with dates encoded in OctetStrings, as used
-     * in hrSWInstalledDate, hrSystemDate, hrFSLastFullBackupDate, and
-     * hrFSLastPartialBackupDate.
+     * Return the date associated with dates encoded in OctetStrings, using
+     * the DateAndTime textual convention, as used in hrSWInstalledDate and
+     * hrSystemDate.
      *
      * @param s the String to parse for a date
      *
@@ -72,47 +95,285 @@ public final class SnmpUtil {
 	return "";
     }
 
+    /**
+     * Return the date held in the bytes of a DateAndTime, as used in
+     * hrSWInstalledDate and hrSystemDate. A DateAndTime is 8 bytes, being
+     * the year in two bytes, then the month, day, hour, minutes, seconds,
+     * and tenths of a second, optionally followed by 3 bytes giving the
+     * direction ('+' or '-'), hours, and minutes from UTC.
+     *
+     * @param b the bytes of the DateAndTime
+     *
+     * @return a String representation of the date, or null if the bytes
+     * aren't a DateAndTime
+     */
+    public static String getDate(final byte[] b) {
+	if (b.length != 8 && b.length != 11) {
+	    return null;
+	}
+	StringBuilder sb = new StringBuilder(26);
+	pad(sb, ((b[0] & 0xff) << 8) | (b[1] & 0xff), 4).append('-');
+	pad(sb, b[2] & 0xff, 2).append('-');
+	pad(sb, b[3] & 0xff, 2).append(' ');
+	pad(sb, b[4] & 0xff, 2).append(':');
+	pad(sb, b[5] & 0xff, 2).append(':');
+	pad(sb, b[6] & 0xff, 2);
+	if (b.length == 11) {
+	    sb.append(' ').append(b[8] == '-' ? '-' : '+');
+	    pad(sb, b[9] & 0xff, 2).append(':');
+	    pad(sb, b[10] & 0xff, 2);
+	}
+	return sb.toString();
+    }
+
+    private static StringBuilder pad(final StringBuilder sb, final int n,
+				     final int width) {
+	for (int i = width - 1, p = 10; i > 0; i--, p *= 10) {
+	    if (n < p) {
+		sb.append('0');
+	    }
+	}
+	return sb.append(n);
+    }
+
+    /**
+     * Return the bytes of a MacAddress or PhysAddress as hexadecimal pairs
+     * separated by colons, such as 00:1b:21:3c:4d:5e.
+     *
+     * @param b the bytes of the address
+     *
+     * @return a String representation of the address
+     */
+    public static String getMacAddress(final byte[] b) {
+	char[] c = new char[Math.max(0, b.length * 3 - 1)];
+	for (int i = 0; i < b.length; i++) {
+	    if (i > 0) {
+		c[i * 3 - 1] = ':';
+	    }
+	    c[i * 3] = HEX[(b[i] >> 4) & 0xf];
+	    c[i * 3 + 1] = HEX[b[i] & 0xf];
+	}
+	return new String(c);
+    }
+
+    /**
+     * Return the bytes of an InetAddress as an IPv4 or IPv6 address. An
+     * address of 4 bytes is IPv4, and of 16 bytes is IPv6. Addresses of 8
+     * or 20 bytes have a 4 byte zone index appended, which is shown after
+     * a '%'. An IPv6 address is shown in its shortest form, with the
+     * longest run of zeroes replaced by "::".
+     *
+     * @param b the bytes of the address
+     *
+     * @return a String representation of the address, or null if the
+     * bytes aren't an address
+     */
+    public static String getInetAddress(final byte[] b) {
+	int n = b.length == 8 || b.length == 20 ? b.length - 4 : b.length;
+	StringBuilder sb = new StringBuilder(46);
+	if (n == 4) {
+	    for (int i = 0; i < 4; i++) {
+		if (i > 0) {
+		    sb.append('.');
+		}
+		sb.append(b[i] & 0xff);
+	    }
+	} else if (n == 16) {
+	    // find the longest run of zero groups, if longer than one
+	    int zstart = -1;
+	    int zlen = 1;
+	    for (int i = 0; i < 8; i++) {
+		int j = i;
+		while (j < 8 && b[2 * j] == 0 && b[2 * j + 1] == 0) {
+		    j++;
+		}
+		if (j - i > zlen) {
+		    zstart = i;
+		    zlen = j - i;
+		}
+		i = j;
+	    }
+	    for (int i = 0; i < 8; i++) {
+		if (i == zstart) {
+		    sb.append("::");
+		    i += zlen - 1;
+		    continue;
+		}
+		if (i > 0 && i != zstart + zlen) {
+		    sb.append(':');
+		}
+		sb.append(Integer.toHexString(((b[2 * i] & 0xff) << 8)
+					| (b[2 * i + 1] & 0xff)));
+	    }
+	} else {
+	    return null;
+	}
+	if (n != b.length) {
+	    sb.append('%').append(((b[n] & 0xffL) << 24)
+				| ((b[n + 1] & 0xff) << 16)
+				| ((b[n + 2] & 0xff) << 8) | (b[n + 3] & 0xff));
+	}
+	return sb.toString();
+    }
+
+    /**
+     * Return the bytes of a DisplayString as text, stopping at the first
+     * null byte, as some agents pad strings with nulls.
+     *
+     * @param b the bytes of the string
+     *
+     * @return the text of the string
+     */
+    public static String getDisplayString(final byte[] b) {
+	int n = 0;
+	while (n < b.length && b[n] != 0) {
+	    n++;
+	}
+	return new String(b, 0, n);
+    }
+
     /**
      * Determine whether the OID represents a date, which has a specific
-     * hex encoding.
+     * hex encoding. That's an OctetString whose MIB declares it to be a
+     * DateAndTime. If the MIB isn't loaded, only the dates in the
+     * HOST-RESOURCES-MIB are recognised.
      *
      * @param sno the SnmpObject to test
      *
      * @return true if the value represents a date
      */
     public static boolean isDate(final SnmpObject sno) {
-	String sp = getParentOID(sno.toString());
-	// hrSWInstalledDate
-	if ("1.3.6.1.2.1.25.6.3.1.5".equals(sp)) {
-	    return true;
+	if (!(sno.getValue() instanceof SNMPOctetString)) {
+	    return false;
 	}
-	// hrSystemDate
-	if ("1.3.6.1.2.1.25.1.2".equals(sp)) {
-	    return true;
-	}
-	// hrFSLastFullBackupDate
-	if ("1.3.6.1.2.1.25.3.8.1.8".equals(sp)) {
-	    return true;
-	}
-	// hrFSLastPartialBackupDate
-	if ("1.3.6.1.2.1.25.3.8.1.9".equals(sp)) {
-	    return true;
+	SnmpSyntax syntax = getSyntax(sno);
+	return syntax == null ? isHostDate(sno.getSnmpOid())
+	    : syntax.hasConvention("DateAndTime");
+    }
+
+    private static boolean isHostDate(final SnmpOid oid) {
+	SnmpOid parent = oid.getParent();
+	for (SnmpOid date : HR_DATES) {
+	    if (date.equals(parent)) {
+		return true;
+	    }
 	}
 	return false;
     }
 
+    private static SnmpSyntax getSyntax(final SnmpObject sno) {
+	return SnmpMibManager.getInstance().getSyntax(sno.getSnmpOid());
+    }
+
     /**
-     * Show the value in a reasonable representation.
+     * Show the value in a reasonable representation, as given by the
+     * syntax of the object in its MIB. Dates and addresses are decoded,
+     * and values of an enumeration are shown with their names, as
+     * name(value).
+     *
+     * The syntax comes from the MIBs that SnmpMibManager has loaded, so
+     * if the MIB defining the object isn't available, the value is shown
+     * as a plain string, apart from the HOST-RESOURCES-MIB dates, which
+     * are always decoded.
      *
      * @param sno the SnmpObject to display
      *
      * @return the value as a nicely formatted String
      */
     public static String niceString(final SnmpObject sno) {
-	if (isDate(sno)) {
-	    return getOctetDate(
-			((SNMPOctetString) sno.getValue()).toHexString());
+	return niceString(sno, null);
+    }
+
+    /**
+     * Show the value in a reasonable representation, as given by the
+     * syntax of the object in its MIB, using the list the object was
+     * retrieved in to find the objects that describe it. The type of an
+     * InetAddress is given by its InetAddressType column, so an address
+     * is shown in the right form, and a DNS name isn't mistaken for an
+     * address. Without the list, or if the type isn't in it, the type is
+     * guessed from the length of the address.
+     *
+     * @param sno the SnmpObject to display
+     * @param snl the SnmpList the object was retrieved in, or null
+     *
+     * @return the value as a nicely formatted String
+     */
+    public static String niceString(final SnmpObject sno,
+				    final SnmpList snl) {
+	SnmpSyntax syntax = getSyntax(sno);
+	if (syntax == null) {
+	    String s = isHostDate(sno.getSnmpOid())
+		&& sno.getValue() instanceof SNMPOctetString
+		? getDate((byte[]) sno.getValue().getValue()) : null;
+	    return s == null ? sno.valueString() : s;
+	}
+	if (sno.getValue() instanceof SNMPOctetString) {
+	    byte[] b = (byte[]) sno.getValue().getValue();
+	    String s = syntax.hasConvention("InetAddress")
+		? getInetAddress(b, getAddressType(sno, snl))
+		: decode(syntax, b);
+	    if (s != null) {
+		return s;
+	    }
+	} else if (syntax.isEnumerated() && sno.isLong()) {
+	    String label = syntax.getLabel(sno.getLong());
+	    if (label != null) {
+		return label + "(" + sno.getLong() + ")";
+	    }
 	}
 	return sno.valueString();
     }
+
+    /*
+     * Return the InetAddressType of the given InetAddress, from the list
+     * it was retrieved in, or ADDR_UNKNOWN if it can't be found.
+     */
+    private static long getAddressType(final SnmpObject sno,
+				       final SnmpList snl) {
+	if (snl == null) {
+	    return ADDR_UNKNOWN;
+	}
+	SnmpOid toid = SnmpMibManager.getInstance()
+	    .getAddressTypeOid(sno.getSnmpOid());
+	SnmpObject type = toid == null ? null : snl.get(toid);
+	return type != null && type.isLong() ? type.getLong() : ADDR_UNKNOWN;
+    }
+
+    /*
+     * Return the bytes of an InetAddress of the given InetAddressType, or
+     * null if they don't fit the type. If the type isn't known, it's
+     * guessed from the length, so a DNS name may be taken for an address
+     * if its length happens to match one.
+     */
+    private static String getInetAddress(final byte[] b, final long type) {
+	if (type == ADDR_UNKNOWN) {
+	    return getInetAddress(b);
+	} else if (type == ADDR_DNS) {
+	    return getDisplayString(b);
+	} else if (type > 0 && type < ADDR_LENGTH.length
+		&& b.length == ADDR_LENGTH[(int) type]) {
+	    return getInetAddress(b);
+	}
+	return null;
+    }
+
+    /*
+     * Decode the bytes of an OctetString according to its textual
+     * convention, returning null if there's no decoder for it or the
+     * bytes don't fit.
+     */
+    private static String decode(final SnmpSyntax syntax, final byte[] b) {
+	if (syntax.hasConvention("DateAndTime")) {
+	    return getDate(b);
+	} else if (syntax.hasConvention("MacAddress")
+		|| syntax.hasConvention("PhysAddress")) {
+	    return getMacAddress(b);
+	} else if (syntax.hasConvention("InetAddressIPv4")
+		|| syntax.hasConvention("InetAddressIPv6")
+		|| syntax.hasConvention("InetAddressIPv4z")
+		|| syntax.hasConvention("InetAddressIPv6z")) {
+	    return getInetAddress(b);
+	}
+	return null;
+    }
 }
@@ -14,7 +14,7 @@
  *
  * CDDL HEADER END
  *
- * Copyright 2025 Peter Tribble
+ * Copyright 2026 Peter Tribble
  *
  */
 
@@ -34,6 +34,7 @@ public final class SnmpWalk {
     private static String community = "public";
     private static String host = "localhost";
     private static boolean debug;
+    private static int parallelism = 1;
 
     private SnmpWalk() {
     }
@@ -54,8 +55,21 @@ public final class SnmpWalk {
 		} else {
 		    usage("missing argument to -c flag");
 		}
+	    } else if ("-p".equals(args[i])) {
+		if (i + 1 < args.length) {
+		    i++;
+		    try {
+			parallelism = Integer.parseInt(args[i]);
+		    } catch (NumberFormatException nfe) {
+			usage("invalid argument to -p flag");
+		    }
+		} else {
+		    usage("missing argument to -p flag");
+		}
 	    } else if ("-d".equals(args[i])) {
 		debug = true;
+	    } else if ("-l".equals(args[i])) {
+		SnmpMibManager.setLazyLoading(true);
 	    } else {
 		if (gothosts) {
 		    usage("can only specify a single host");
@@ -73,35 +87,39 @@ public final class SnmpWalk {
 	try {
 	    SnmpParams snp = new SnmpParams(host, community);
 	    SnmpController sc = new SnmpController(snp);
-	    SnmpObject sno = sc.getNext("1.3.6.1.2.1");
-	    while (sno != null) {
-		printout(sno);
-		sno = sc.getNext(sno);
+	    SnmpList snl = new SnmpList(sc);
+	    snl.setParallelism(parallelism);
+	    // walks stop at the end of the subtree, so include enterprises
+	    for (SnmpObject sno : snl.getList("1.3.6.1")) {
+		printout(sno, snl);
+	    }
+	    if (snl.getWalkError() != null) {
+		System.err.println("Walk incomplete: "
+				+ snl.getWalkError().getMessage());
 	    }
 	} catch (Exception e) {
 	    System.err.println("Oops!");
 	}
     }
 
-    private static void printout(final SnmpObject sno) {
+    private static void printout(final SnmpObject sno,
+				 final SnmpList snl) {
+	// lookups don't wait for lazily loaded MIBs, so load them first
+	smm.loadFor(sno.getSnmpOid());
 	String type = sno.getTypeString();
-	String oid = smm.prettifyOID(sno.toString());
+	String oid = smm.prettifyOID(sno);
 	System.out.print(oid + " = " + type + ":");
-	if ("OctetString".equals(type)) {
-	    System.out.println(SnmpUtil.niceString(sno));
-	    if (debug) {
-		System.out.println("  (hex: "
-		    + ((SNMPOctetString) sno.getValue()).toHexString() + ")");
-	    }
-	} else {
-	    System.out.println(sno.getValue());
+	System.out.println(SnmpUtil.niceString(sno, snl));
+	if (debug && sno.getValue() instanceof SNMPOctetString) {
+	    System.out.println("  (hex: "
+		+ ((SNMPOctetString) sno.getValue()).toHexString() + ")");
 	}
     }
 
     private static void usage(final String s) {
 	System.err.println("Error: " + s);
 	System.err.println(
-	    "Usage: snmpwalk [-c community] host");
+	    "Usage: snmpwalk [-c community] [-p parallelism] [-l] host");
 	System.exit(1);
     }
 }